@@ -4,4 +4,7 @@ CREATE TABLE entry
   content character varying(1024) NOT NULL,
   creationdate timestamp without time zone NOT NULL,
   CONSTRAINT entry_pkey PRIMARY KEY (id)
-)
\ No newline at end of file
+);
+
+-- Identifiers are reserved by blocks, increment is the block size (db.id.block_size)
+CREATE SEQUENCE entry_id_seq INCREMENT BY 50 START WITH 1 OWNED BY entry.id;
\ No newline at end of file
@@ -0,0 +1,70 @@
+package org.terehpp.crawler.component.analyzer;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.terehpp.crawler.model.Entry;
+import org.xml.sax.SAXException;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.stream.Stream;
+
+/**
+ * Analysis of one entry file by JAXB and by StAX, files per second of single thread.
+ * Run with {@code gradle jmh}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+public class AnalyzerBenchmark {
+    private final static String ENTRY = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n<Entry>\n"
+            + "    <content>Test content of entry, which is long enough to look like real content of file</content>\n"
+            + "    <creationDate>2019-04-05 21:21:33</creationDate>\n</Entry>\n";
+    @Param({"jaxb", "stax", "stax_validating"})
+    private String mode;
+    private Path tempDir;
+    private String file;
+    private Analyzer<Entry> analyzer;
+
+    @Setup
+    public void setUp() throws IOException, SAXException {
+        tempDir = Files.createTempDirectory("crawler-analyzer-benchmark");
+        Path xsd = tempDir.resolve("entry.xsd");
+        try (InputStream in = getClass().getClassLoader().getResourceAsStream("entry.xsd")) {
+            Files.copy(in, xsd);
+        }
+        file = Files.write(tempDir.resolve("entry.xml"), ENTRY.getBytes(StandardCharsets.UTF_8)).toString();
+        switch (mode) {
+            case "stax":
+                analyzer = new StaxEntryAnalyzer();
+                break;
+            case "stax_validating":
+                analyzer = new StaxEntryAnalyzer(xsd.toString());
+                break;
+            default:
+                analyzer = new XMLAnalyzerImpl<>(Entry.class, xsd.toString());
+        }
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        try (Stream<Path> files = Files.list(tempDir)) {
+            files.forEach(path -> path.toFile().delete());
+        }
+        Files.deleteIfExists(tempDir);
+    }
+
+    @Benchmark
+    public AnalyzerResult<Entry> analyze() {
+        return analyzer.analyze(file, 1L);
+    }
+}
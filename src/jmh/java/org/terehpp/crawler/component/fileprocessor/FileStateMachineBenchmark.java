@@ -0,0 +1,140 @@
+package org.terehpp.crawler.component.fileprocessor;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.terehpp.crawler.component.analyzer.Analyzer;
+import org.terehpp.crawler.component.analyzer.AnalyzerResult;
+import org.terehpp.crawler.component.transaction.TransactionManager;
+import org.terehpp.crawler.component.transaction.TransactionManagerImpl;
+import org.terehpp.crawler.model.Entry;
+import org.terehpp.crawler.service.db.DbService;
+import org.terehpp.crawler.service.file.FileService;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Allocation of state machine per processed file and cost of latency metrics.
+ * Db, analyzer and file moves are stubbed, transaction log is written to temp directory.
+ * Run with {@code gradle jmh}, bytes allocated per file are reported by gc profiler as gc.alloc.rate.norm.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class FileStateMachineBenchmark {
+    private final static List<FileStateMachineCommand> COMMANDS = Arrays.asList(FileStateMachineCommand.ANALYZE,
+            FileStateMachineCommand.INSERT, FileStateMachineCommand.MOVE);
+    private final static String SUCCESS_DIR = "success";
+    private final static String FAIL_DIR = "fail";
+    private final static String FILE = String.join(File.separator, "", "data", "monitor", "incoming", "entry-000001.xml");
+    private Path tempDir;
+    private TransactionManager tx;
+    private Analyzer<Entry> analyzer;
+    private DbService<Entry> dbService;
+    private FileService fileService;
+    private FileStateMetrics metrics;
+
+    @Setup
+    public void setUp() throws IOException {
+        tempDir = Files.createTempDirectory("crawler-benchmark");
+        tx = new TransactionManagerImpl(tempDir.toString());
+        AnalyzerResult<Entry> result = new AnalyzerResult<>(false, null, new Entry(1L, "content", new Date()));
+        analyzer = (file, id) -> result;
+        AtomicLong seq = new AtomicLong();
+        dbService = new DbService<Entry>() {
+            @Override
+            public Entry insert(Entry entity) {
+                return entity;
+            }
+
+            @Override
+            public void insertAll(Collection<Entry> entities) {
+            }
+
+            @Override
+            public boolean exist(long id) {
+                return true;
+            }
+
+            @Override
+            public Set<Long> existing(Collection<Long> ids) {
+                return new HashSet<>(ids);
+            }
+
+            @Override
+            public long getNextId() {
+                return seq.incrementAndGet();
+            }
+        };
+        fileService = new FileService() {
+            @Override
+            public boolean isFileClosed(String file) {
+                return true;
+            }
+
+            @Override
+            public boolean removeFileTo(String sourceFile, String destDir) {
+                return true;
+            }
+
+            @Override
+            public boolean exist(String fileName) {
+                return true;
+            }
+        };
+        metrics = new FileStateMetrics();
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        for (String txFile : tx.getTransactionFiles()) {
+            Files.deleteIfExists(new File(txFile).toPath());
+        }
+        Files.deleteIfExists(tempDir);
+    }
+
+    /**
+     * State machine and its data are created for each file.
+     *
+     * @return Outcome.
+     */
+    @Benchmark
+    public FileOutcome allocating() {
+        return createMachine().init(new FileData(FILE, 0, null, null), COMMANDS).execute();
+    }
+
+    /**
+     * State machine and its data are created for each file, latency of steps is recorded.
+     *
+     * @return Outcome.
+     */
+    @Benchmark
+    public FileOutcome instrumented() {
+        return createMachine(metrics).init(new FileData(FILE, 0, null, null), COMMANDS).execute();
+    }
+
+    private FileState createMachine() {
+        return createMachine(FileStateMetrics.DISABLED);
+    }
+
+    private FileState createMachine(FileStateMetrics metrics) {
+        return new FileStateMachine(SUCCESS_DIR, FAIL_DIR, analyzer, dbService, fileService, tx, null, null, metrics,
+                FileStateMachine.DEFAULT_CONTAINER_BATCH_SIZE);
+    }
+}
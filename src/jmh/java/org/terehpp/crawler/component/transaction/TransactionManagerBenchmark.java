@@ -0,0 +1,63 @@
+package org.terehpp.crawler.component.transaction;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+/**
+ * Transaction of one file: OPEN and CLOSE records and removal of log, by per-file logs and by write-ahead log.
+ * Run with {@code gradle jmh}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Threads(4)
+public class TransactionManagerBenchmark {
+    private final AtomicLong sequence = new AtomicLong();
+    @Param({"file", "wal"})
+    private String mode;
+    private Path tempDir;
+    private TransactionManager tx;
+
+    @Setup
+    public void setUp() throws IOException {
+        tempDir = Files.createTempDirectory("crawler-tx-benchmark");
+        tx = "wal".equals(mode)
+                ? new WalTransactionManager(tempDir.toString(), 64 * 1024 * 1024, FsyncPolicy.NONE, 100, 1000)
+                : new TransactionManagerImpl(tempDir.toString());
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        if (tx instanceof WalTransactionManager) {
+            ((WalTransactionManager) tx).close();
+        }
+        try (Stream<Path> files = Files.list(tempDir)) {
+            files.forEach(file -> file.toFile().delete());
+        }
+        Files.deleteIfExists(tempDir);
+    }
+
+    @Benchmark
+    public boolean transaction() {
+        long id = sequence.incrementAndGet();
+        String file = String.join(File.separator, "", "data", "monitor", "entry-" + id + ".xml");
+        tx.execInTransaction(file, "INSERT " + id + " " + file, (Void) -> true);
+        return tx.removeLog(file);
+    }
+}
@@ -0,0 +1,178 @@
+package org.terehpp.crawler.service.db;
+
+import com.zaxxer.hikari.HikariConfig;
+import com.zaxxer.hikari.HikariDataSource;
+import io.zonky.test.db.postgres.embedded.EmbeddedPostgres;
+import org.apache.log4j.LogManager;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.terehpp.crawler.model.Entry;
+import org.terehpp.crawler.utils.DbHelper;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Write of entries by db insert modes: row per transaction (single), JDBC batch in one transaction (batch) and
+ * COPY in one transaction (copy). Batches are written as batching service writes collected batch, time of waiting
+ * for batch to fill (db.insert.batch.max_wait) is not included.
+ * Each operation inserts {@link #ROWS} entries.
+ * Db is PostgreSQL given by system properties {@code benchmark.db.url}, {@code benchmark.db.login} and
+ * {@code benchmark.db.password}, otherwise embedded PostgreSQL is started (it could not be run by root).
+ * Table is created by scripts/init.sql and truncated before each iteration.
+ * Run with {@code gradle jmh}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class EntryInsertBenchmark {
+    private final static int ROWS = 1000;
+    private final static String CONTENT = "Entry content of benchmark, \"quoted\" part and some more text to look like real entry";
+    private final AtomicLong ids = new AtomicLong();
+    @Param({"50", "500"})
+    private int batchSize;
+    private EmbeddedPostgres postgres;
+    private HikariDataSource dataSource;
+    private EntryService entryService;
+    private CopyEntryService copyService;
+
+    @Setup
+    public void setUp() throws IOException, SQLException {
+        // Default configuration logs SQL of each insert
+        LogManager.getRootLogger().setLevel(org.apache.log4j.Level.WARN);
+        HikariConfig config = new HikariConfig();
+        String url = System.getProperty("benchmark.db.url");
+        if (url == null) {
+            postgres = EmbeddedPostgres.start();
+            config.setJdbcUrl(postgres.getJdbcUrl("postgres", "postgres"));
+        } else {
+            config.setJdbcUrl(url);
+            config.setUsername(System.getProperty("benchmark.db.login"));
+            config.setPassword(System.getProperty("benchmark.db.password"));
+        }
+        config.setMaximumPoolSize(2);
+        config.setAutoCommit(false);
+        dataSource = new HikariDataSource(config);
+        String initSql = new String(Files.readAllBytes(Paths.get("scripts", "init.sql")), StandardCharsets.UTF_8);
+        try (Connection connection = dataSource.getConnection(); Statement statement = connection.createStatement()) {
+            statement.execute("drop table if exists entry cascade");
+            statement.execute(initSql);
+            connection.commit();
+        }
+        DbHelper.initSessionFactory(dataSource);
+        // Identifiers are given by benchmark, sequence is not used
+        BlockIdAllocator idAllocator = new BlockIdAllocator(ids::incrementAndGet, 1);
+        entryService = new EntryService(idAllocator);
+        copyService = new CopyEntryService(idAllocator);
+    }
+
+    @Setup(Level.Iteration)
+    public void truncate() throws SQLException {
+        try (Connection connection = dataSource.getConnection(); Statement statement = connection.createStatement()) {
+            statement.execute("truncate table entry");
+            connection.commit();
+        }
+    }
+
+    /**
+     * Check that entries are stored, as single insert only logs its error.
+     *
+     * @throws SQLException
+     */
+    @TearDown(Level.Iteration)
+    public void check() throws SQLException {
+        try (Connection connection = dataSource.getConnection(); Statement statement = connection.createStatement();
+             ResultSet count = statement.executeQuery("select count(*) from entry")) {
+            count.next();
+            if (count.getLong(1) == 0) {
+                throw new IllegalStateException("Entries were not inserted");
+            }
+            connection.commit();
+        }
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        DbHelper.closeSessionFactory();
+        if (postgres != null) {
+            postgres.close();
+        }
+    }
+
+    /**
+     * Each entry is inserted in its own transaction, db.insert.mode=single. Batch size is not used.
+     */
+    @Benchmark
+    public void single() {
+        for (Entry entry : nextEntries()) {
+            entryService.insert(entry);
+        }
+    }
+
+    /**
+     * Batch is inserted by JDBC batch in one transaction, db.insert.mode=batch.
+     */
+    @Benchmark
+    public void batch() {
+        for (List<Entry> batch : nextBatches()) {
+            entryService.insertAll(batch);
+        }
+    }
+
+    /**
+     * Batch is loaded by COPY in one transaction, db.insert.mode=copy.
+     */
+    @Benchmark
+    public void copy() {
+        for (List<Entry> batch : nextBatches()) {
+            copyService.insertAll(batch);
+        }
+    }
+
+    /**
+     * Create entries with new identifiers.
+     *
+     * @return Entries.
+     */
+    private List<Entry> nextEntries() {
+        List<Entry> entries = new ArrayList<>(ROWS);
+        Date date = new Date();
+        for (int i = 0; i < ROWS; i++) {
+            entries.add(new Entry(ids.incrementAndGet(), CONTENT, date));
+        }
+        return entries;
+    }
+
+    /**
+     * Create entries with new identifiers split to batches.
+     *
+     * @return Batches.
+     */
+    private List<List<Entry>> nextBatches() {
+        List<Entry> entries = nextEntries();
+        List<List<Entry>> batches = new ArrayList<>();
+        for (int from = 0; from < ROWS; from += batchSize) {
+            batches.add(entries.subList(from, Math.min(ROWS, from + batchSize)));
+        }
+        return batches;
+    }
+}
@@ -1,32 +1,92 @@
 package org.terehpp.crawler;
 
+import com.zaxxer.hikari.HikariConfig;
+import com.zaxxer.hikari.HikariDataSource;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.terehpp.crawler.component.analyzer.Analyzer;
+import org.terehpp.crawler.component.analyzer.AnalyzerMode;
+import org.terehpp.crawler.component.analyzer.SchemaRegistry;
+import org.terehpp.crawler.component.analyzer.StaxEntryAnalyzer;
 import org.terehpp.crawler.component.analyzer.XMLAnalyzerImpl;
+import org.terehpp.crawler.component.cluster.ClusterNode;
+import org.terehpp.crawler.component.cluster.FileClaimer;
+import org.terehpp.crawler.component.cluster.LocalFileClaimer;
+import org.terehpp.crawler.component.dedup.ContentHashIndex;
+import org.terehpp.crawler.component.dedup.Deduplicator;
 import org.terehpp.crawler.component.fileprocessor.FileData;
 import org.terehpp.crawler.component.fileprocessor.FileState;
 import org.terehpp.crawler.component.fileprocessor.FileStateMachine;
+import org.terehpp.crawler.component.fileprocessor.DirectFileStateExecutor;
+import org.terehpp.crawler.component.fileprocessor.FileStateExecutor;
 import org.terehpp.crawler.component.fileprocessor.FileStateMachineCommand;
+import org.terehpp.crawler.component.fileprocessor.FileStateMetrics;
+import org.terehpp.crawler.component.fileprocessor.PipelineStage;
+import org.terehpp.crawler.component.fileprocessor.ProcessingStep;
+import org.terehpp.crawler.component.fileprocessor.PipelineMode;
+import org.terehpp.crawler.component.fileprocessor.StagedPipeline;
+import org.terehpp.crawler.component.fileprocessor.TransactionRecovery;
+import org.terehpp.crawler.component.metrics.ConnectionPoolMetrics;
+import org.terehpp.crawler.component.metrics.JmxExporter;
+import org.terehpp.crawler.component.metrics.LatencyRecorder;
+import org.terehpp.crawler.component.monitor.DirectoryWalker;
+import org.terehpp.crawler.component.monitor.DirectoryWatcher;
+import org.terehpp.crawler.component.monitor.ConcurrencyLimiter;
+import org.terehpp.crawler.component.monitor.ConcurrencyMode;
+import org.terehpp.crawler.component.monitor.ExecutorMode;
 import org.terehpp.crawler.component.monitor.FileWorkerTask;
+import org.terehpp.crawler.component.monitor.LaneScheduler;
+import org.terehpp.crawler.component.monitor.MonitorMode;
+import org.terehpp.crawler.component.stability.LockStabilityStrategy;
+import org.terehpp.crawler.component.stability.MarkerStabilityStrategy;
+import org.terehpp.crawler.component.stability.QuiescenceStabilityStrategy;
+import org.terehpp.crawler.component.stability.RenameStabilityStrategy;
+import org.terehpp.crawler.component.stability.StabilityMode;
+import org.terehpp.crawler.component.stability.StabilityStrategy;
+import org.terehpp.crawler.component.transaction.FsyncPolicy;
 import org.terehpp.crawler.component.transaction.TransactionManager;
 import org.terehpp.crawler.component.transaction.TransactionManagerImpl;
+import org.terehpp.crawler.component.transaction.TransactionMode;
+import org.terehpp.crawler.component.transaction.WalTransactionManager;
 import org.terehpp.crawler.constants.AppPropName;
 import org.terehpp.crawler.model.Entry;
+import org.terehpp.crawler.service.db.BatchingDbService;
+import org.terehpp.crawler.service.db.BlockIdAllocator;
+import org.terehpp.crawler.service.db.CopyEntryService;
+import org.terehpp.crawler.service.db.DbService;
+import org.terehpp.crawler.service.db.EntryCodec;
 import org.terehpp.crawler.service.db.EntryService;
+import org.terehpp.crawler.service.db.InsertMode;
+import org.terehpp.crawler.service.db.SpoolingDbService;
+import org.terehpp.crawler.service.file.FileService;
 import org.terehpp.crawler.service.file.FileServiceImpl;
 import org.terehpp.crawler.utils.DbHelper;
 import org.terehpp.crawler.utils.PropertyHelper;
 import org.terehpp.crawler.utils.PropertyHelperException;
+import org.xml.sax.SAXException;
 
+import javax.xml.bind.JAXBException;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.Map;
 import java.util.Optional;
 import java.util.Properties;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
+import java.util.function.BiFunction;
 import java.util.function.Function;
+import java.util.function.LongPredicate;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 /**
  * Crawler application.
@@ -34,6 +94,37 @@ import java.util.function.Function;
 public class App {
     private final static Log logger = LogFactory.getLog(App.class);
     private final static ScheduledExecutorService executorService = Executors.newSingleThreadScheduledExecutor();
+    private final static ExecutorService watcherService = Executors.newSingleThreadExecutor();
+    private final static int DEFAULT_RECONCILE_TIMEOUT = 600000;
+    private final static int DEFAULT_QUEUE_CAPACITY = 1000;
+    private final static int DEFAULT_STAGE_QUEUE_CAPACITY = 100;
+    private final static int DEFAULT_LARGE_FILE_THRESHOLD = 1024 * 1024;
+    private final static int DEFAULT_LARGE_LANE_SHARE = 20;
+    private final static int DEFAULT_STABILITY_QUIET_PERIOD = 1000;
+    private final static int DEFAULT_STABILITY_RETRY_DELAY = 1000;
+    private final static int DEFAULT_LEASE_TIMEOUT = 30000;
+    private final static int DEFAULT_HEARTBEAT_INTERVAL = 5000;
+    private final static int DEFAULT_DEDUP_INDEX_SEGMENTS = 16;
+    private final static int DEFAULT_DEDUP_EXPECTED_COUNT = 1000000;
+    private final static int DEFAULT_DEDUP_BLOOM_BITS = 10;
+    private final static int DEFAULT_WAL_SEGMENT_SIZE = 64 * 1024 * 1024;
+    private final static int DEFAULT_WAL_FSYNC_INTERVAL = 1000;
+    private final static int DEFAULT_WAL_FSYNC_EVERY_N = 100;
+    private final static int DEFAULT_INSERT_BATCH_SIZE = 50;
+    private final static int DEFAULT_INSERT_BATCH_MAX_WAIT = 10;
+    private final static int DEFAULT_ID_BLOCK_SIZE = 50;
+    private final static String ENTRY_ID_SEQUENCE = "entry_id_seq";
+    private final static String ENTRY_TABLE = "entry";
+    private final static String CONNECTION_POOL_NAME = "crawler-db";
+    private final static int DEFAULT_POOL_IDLE_TIMEOUT = 600000;
+    private final static int DEFAULT_POOL_CONNECTION_TIMEOUT = 5000;
+    private final static int DEFAULT_POOL_LEAK_DETECTION_THRESHOLD = 60000;
+    private final static int DEFAULT_POOL_STATEMENT_CACHE_SIZE = 256;
+    private final static int DEFAULT_SPOOL_SEGMENT_SIZE = 64 * 1024 * 1024;
+    private final static int DEFAULT_SPOOL_BATCH_SIZE = 1000;
+    private final static int DEFAULT_SPOOL_RETRY_DELAY = 5000;
+    private final static int DEFAULT_SCHEMA_RELOAD_INTERVAL = 5000;
+    private final static int DEFAULT_ANALYZER_WARMUP_COUNT = 1000;
 
     public static void main(String[] args) {
         Properties properties = new Properties();
@@ -42,7 +133,7 @@ public class App {
         }
         try {
             start(properties);
-        } catch (PropertyHelperException e) {
+        } catch (PropertyHelperException | IOException e) {
             logger.error(e.getMessage(), e);
             DbHelper.closeSessionFactory();
         }
@@ -53,30 +144,92 @@ public class App {
      *
      * @param properties Properties.
      * @throws PropertyHelperException Occurred if property does not exist.
+     * @throws IOException              Occurred if cluster node could not be started.
      */
-    private static void start(final Properties properties) throws PropertyHelperException {
+    private static void start(final Properties properties) throws PropertyHelperException, IOException {
         // Initializing services and properties, all of this could be done with IOC container
-        int delay = PropertyHelper.getPositiveIntProperty(properties, AppPropName.MONITOR_SCHEDULE_TIMEOUT);
+        MonitorMode monitorMode = PropertyHelper.getEnumProperty(properties, AppPropName.MONITOR_MODE, MonitorMode.class, MonitorMode.SCHEDULE);
         int threadCount = PropertyHelper.getPositiveIntProperty(properties, AppPropName.PROCESSOR_MAX_THREAD_COUNT);
+        ExecutorMode executorMode = PropertyHelper.getEnumProperty(properties, AppPropName.PROCESSOR_EXECUTOR_MODE, ExecutorMode.class, ExecutorMode.PLATFORM);
+        int queueCapacity = PropertyHelper.getPositiveIntProperty(properties, AppPropName.PROCESSOR_QUEUE_CAPACITY, DEFAULT_QUEUE_CAPACITY);
+        ConcurrencyMode concurrencyMode = PropertyHelper.getEnumProperty(properties, AppPropName.PROCESSOR_CONCURRENCY_MODE,
+                ConcurrencyMode.class, ConcurrencyMode.FIXED);
+        int minConcurrency = PropertyHelper.getPositiveIntProperty(properties, AppPropName.PROCESSOR_CONCURRENCY_MIN_LIMIT, 1);
+        int largeFileThreshold = PropertyHelper.getPositiveIntProperty(properties, AppPropName.PROCESSOR_LANE_LARGE_THRESHOLD,
+                DEFAULT_LARGE_FILE_THRESHOLD);
+        int largeLaneShare = PropertyHelper.getPositiveIntProperty(properties, AppPropName.PROCESSOR_LANE_LARGE_SHARE,
+                DEFAULT_LARGE_LANE_SHARE);
+        int walkParallelism = PropertyHelper.getPositiveIntProperty(properties, AppPropName.MONITOR_WALK_PARALLELISM, 1);
+        int walkDepth = PropertyHelper.getPositiveIntProperty(properties, AppPropName.MONITOR_WALK_MAX_DEPTH, Integer.MAX_VALUE);
         String monitorDir = PropertyHelper.getPathProperty(properties, AppPropName.MONITOR_DIR, true, true, true);
         String xsdSchemaFile = PropertyHelper.getPathProperty(properties, AppPropName.ENTRY_XSD_SCHEMA_FILE, false, true, false);
 
-        TransactionManager tx = initTxManager(properties);
-        initSessionFactory(properties, threadCount);
-        EntryService entryService = new EntryService();
-        Analyzer<Entry> analyzer = new XMLAnalyzerImpl<>(Entry.class, xsdSchemaFile);
-        List<FileStateMachineCommand> commands = Arrays.asList(FileStateMachineCommand.ANALYZE,
-                FileStateMachineCommand.INSERT, FileStateMachineCommand.MOVE);
+        int retryDelay = PropertyHelper.getPositiveIntProperty(properties, AppPropName.PROCESSOR_STABILITY_RETRY_DELAY,
+                DEFAULT_STABILITY_RETRY_DELAY);
 
-        Function<FileData, FileState> createMachine = getCreateMachineStateFunc(properties, tx, entryService, analyzer, commands);
+        String nodeId = PropertyHelper.getStrProperty(properties, AppPropName.CLUSTER_NODE_ID, null);
 
-        Function<String, Optional<FileState>> restoreMachine = getRestoreMachineStateFunc(properties, tx, entryService, analyzer, commands);
+        StabilityStrategy stability = initStabilityStrategy(properties);
+        TransactionManager tx = initTxManager(properties, nodeId);
+        List<FileStateMachineCommand> commands = new ArrayList<>(Arrays.asList(FileStateMachineCommand.ANALYZE,
+                FileStateMachineCommand.INSERT, FileStateMachineCommand.MOVE));
+        Deduplicator deduplicator = initDeduplicator(properties);
+        if (deduplicator != null) {
+            commands.add(0, FileStateMachineCommand.DEDUPLICATE);
+        }
+        FileStateExecutor stateExecutor = initStateExecutor(properties, commands, threadCount);
+        // In staged mode files are processed by stage threads in addition to worker threads
+        int stageThreadCount = stateExecutor instanceof StagedPipeline ? ((StagedPipeline) stateExecutor).getThreadCount() : 0;
+        int maxConcurrency = threadCount + stageThreadCount;
+        ConnectionPoolMetrics poolMetrics = initSessionFactory(properties, maxConcurrency);
+        DbService<Entry> entryService = initEntryService(properties, nodeId);
+        Analyzer<Entry> analyzer = initAnalyzer(properties, xsdSchemaFile);
+        warmUpAnalyzer(properties, analyzer, threadCount);
+
+        // File service is stateless, it is shared by all state machines
+        FileService fileService = new FileServiceImpl(stability);
+        FileStateMetrics metrics = new FileStateMetrics();
+        Function<FileData, FileState> createMachine = getCreateMachineStateFunc(properties, tx, entryService, analyzer,
+                fileService, deduplicator, metrics, commands);
+
+        BiFunction<String, LongPredicate, Optional<FileState>> restoreMachine = getRestoreMachineStateFunc(properties, tx,
+                entryService, analyzer, fileService, metrics, commands);
+
+        // In cluster mode own transactions are restored by cluster node, before files are claimed
+        ClusterNode clusterNode = nodeId != null ? initClusterNode(properties, nodeId, monitorDir, tx, stability) : null;
+        FileClaimer claimer = clusterNode != null ? clusterNode : new LocalFileClaimer();
+        List<String> txFilesToRestore = clusterNode != null ? new ArrayList<>() : tx.getTransactionFiles();
 
         // Monitoring task
-        FileWorkerTask task = new FileWorkerTask(monitorDir, threadCount, tx.getTransactionFiles(), createMachine, restoreMachine);
+        DirectoryWalker walker = new DirectoryWalker(walkParallelism, walkDepth);
+        LaneScheduler scheduler = new LaneScheduler(queueCapacity, largeFileThreshold, largeLaneShare);
+        // Db pool is sized to maximum of concurrency limit
+        ConcurrencyLimiter limiter = new ConcurrencyLimiter(minConcurrency, maxConcurrency, concurrencyMode == ConcurrencyMode.ADAPTIVE);
+        TransactionRecovery recovery = new TransactionRecovery(tx, entryService, restoreMachine);
+        FileWorkerTask task = new FileWorkerTask(monitorDir, walker, threadCount, executorMode, scheduler, limiter,
+                stability, retryDelay, claimer, recovery, txFilesToRestore, createMachine, stateExecutor);
+        task.onRescanRequired(() -> executorService.execute(task));
+        registerMBeans(metrics, poolMetrics, task, limiter, stateExecutor);
+        if (clusterNode != null) {
+            if (entryService instanceof SpoolingDbService) {
+                SpoolingDbService<Entry> spool = (SpoolingDbService<Entry>) entryService;
+                // Spool of each node is a subdirectory of db.spool.dir named by node identifier
+                clusterNode.onTakeover(deadNodeId -> spool.adopt(spool.getDirectory().resolveSibling(deadNodeId)));
+            }
+            clusterNode.start(task::restore);
+            Runtime.getRuntime().addShutdownHook(new Thread(clusterNode::close));
+        }
 
-        // Schedule monitoring
-        executorService.scheduleAtFixedRate(task, 0, delay, TimeUnit.MILLISECONDS);
+        if (monitorMode == MonitorMode.WATCH) {
+            int reconcileDelay = PropertyHelper.getPositiveIntProperty(properties, AppPropName.MONITOR_RECONCILE_TIMEOUT,
+                    DEFAULT_RECONCILE_TIMEOUT);
+            watcherService.execute(new DirectoryWatcher(monitorDir, task::processFile, () -> executorService.execute(task)));
+            executorService.scheduleAtFixedRate(task, 0, reconcileDelay, TimeUnit.MILLISECONDS);
+        } else {
+            // Schedule monitoring
+            int delay = PropertyHelper.getPositiveIntProperty(properties, AppPropName.MONITOR_SCHEDULE_TIMEOUT);
+            executorService.scheduleAtFixedRate(task, 0, delay, TimeUnit.MILLISECONDS);
+        }
     }
 
     /**
@@ -86,20 +239,56 @@ public class App {
      * @param tx           Tx manager, to make all process transactional.
      * @param entryService Db entry service.
      * @param analyzer     File analyzer.
+     * @param fileService  File service.
+     * @param deduplicator Deduplicator of file content, null if deduplication is disabled.
+     * @param metrics      Latency of processing steps.
      * @return Processor.
      * @throws PropertyHelperException Occurred when property does not exist.
      */
     private static Function<FileData, FileState> getCreateMachineStateFunc(final Properties properties, final TransactionManager tx,
-                                                                           final EntryService entryService, final Analyzer<Entry> analyzer,
+                                                                           final DbService<Entry> entryService, final Analyzer<Entry> analyzer,
+                                                                           final FileService fileService, final Deduplicator deduplicator,
+                                                                           final FileStateMetrics metrics,
                                                                            List<FileStateMachineCommand> commands) throws PropertyHelperException {
         String successDir = PropertyHelper.getPathProperty(properties, AppPropName.PROCESSOR_SUCCESS_DIR, true, true, true);
         String failDir = PropertyHelper.getPathProperty(properties, AppPropName.PROCESSOR_FAIL_DIR, true, true, true);
+        String duplicateDir = deduplicator != null
+                ? PropertyHelper.getPathProperty(properties, AppPropName.PROCESSOR_DEDUP_DIR, true, true, true) : null;
+        int containerBatch = PropertyHelper.getPositiveIntProperty(properties, AppPropName.PROCESSOR_CONTAINER_BATCH_SIZE,
+                FileStateMachine.DEFAULT_CONTAINER_BATCH_SIZE);
         return (fileData) -> {
-            FileState machineState = new FileStateMachine(successDir, failDir, analyzer, entryService, new FileServiceImpl(), tx);
+            FileState machineState = new FileStateMachine(successDir, failDir, analyzer, entryService, fileService, tx,
+                    deduplicator, duplicateDir, metrics, containerBatch);
             return machineState.init(fileData, commands);
         };
     }
 
+    /**
+     * Init deduplicator of file content.
+     *
+     * @param properties Properties.
+     * @return Deduplicator, null if duplicate directory is not set.
+     * @throws PropertyHelperException Occurred when property has wrong value.
+     * @throws IOException             Occurred when index could not be opened.
+     */
+    private static Deduplicator initDeduplicator(final Properties properties) throws PropertyHelperException, IOException {
+        if (PropertyHelper.getStrProperty(properties, AppPropName.PROCESSOR_DEDUP_DIR, null) == null) {
+            return null;
+        }
+        PropertyHelper.getPathProperty(properties, AppPropName.PROCESSOR_DEDUP_DIR, true, true, true);
+        String indexDir = PropertyHelper.getStrProperty(properties, AppPropName.PROCESSOR_DEDUP_INDEX_DIR);
+        int segments = PropertyHelper.getPositiveIntProperty(properties, AppPropName.PROCESSOR_DEDUP_INDEX_SEGMENTS,
+                DEFAULT_DEDUP_INDEX_SEGMENTS);
+        int expectedCount = PropertyHelper.getPositiveIntProperty(properties, AppPropName.PROCESSOR_DEDUP_EXPECTED_COUNT,
+                DEFAULT_DEDUP_EXPECTED_COUNT);
+        int bitsPerHash = PropertyHelper.getPositiveIntProperty(properties, AppPropName.PROCESSOR_DEDUP_BLOOM_BITS,
+                DEFAULT_DEDUP_BLOOM_BITS);
+        ContentHashIndex index = new ContentHashIndex(Paths.get(indexDir), segments, expectedCount, bitsPerHash);
+        logger.info(String.format("Content hash index %s is opened with %d hashes", indexDir, index.size()));
+        Runtime.getRuntime().addShutdownHook(new Thread(index::close));
+        return new Deduplicator(index);
+    }
+
     /**
      * Get function to restore processor, to work on files.
      *
@@ -107,43 +296,352 @@ public class App {
      * @param tx           Tx manager, to make all process transactional.
      * @param entryService Db entry service.
      * @param analyzer     File analyzer.
+     * @param fileService  File service.
+     * @param metrics      Latency of processing steps.
      * @return Processor.
      * @throws PropertyHelperException Occurred when property does not exist.
      */
-    private static Function<String, Optional<FileState>> getRestoreMachineStateFunc(final Properties properties, final TransactionManager tx,
-                                                                                    final EntryService entryService, final Analyzer<Entry> analyzer,
-                                                                                    List<FileStateMachineCommand> commands) throws PropertyHelperException {
+    private static BiFunction<String, LongPredicate, Optional<FileState>> getRestoreMachineStateFunc(final Properties properties, final TransactionManager tx,
+                                                                                                     final DbService<Entry> entryService, final Analyzer<Entry> analyzer,
+                                                                                                     final FileService fileService,
+                                                                                                     final FileStateMetrics metrics,
+                                                                                                     List<FileStateMachineCommand> commands) throws PropertyHelperException {
         String successDir = PropertyHelper.getPathProperty(properties, AppPropName.PROCESSOR_SUCCESS_DIR, true, true, true);
         String failDir = PropertyHelper.getPathProperty(properties, AppPropName.PROCESSOR_FAIL_DIR, true, true, true);
-        return (txFile) -> {
-            FileState machineState = new FileStateMachine(successDir, failDir, analyzer, entryService, new FileServiceImpl(), tx);
-            return machineState.restore(txFile, commands);
+        int containerBatch = PropertyHelper.getPositiveIntProperty(properties, AppPropName.PROCESSOR_CONTAINER_BATCH_SIZE,
+                FileStateMachine.DEFAULT_CONTAINER_BATCH_SIZE);
+        return (txFile, inserted) -> {
+            FileState machineState = new FileStateMachine(successDir, failDir, analyzer, entryService, fileService, tx,
+                    null, null, metrics, containerBatch);
+            return machineState.restore(txFile, commands, inserted);
         };
     }
 
     /**
-     * Init Hibernate Session Factory.
+     * Init executor of state machine commands.
+     *
+     * @param properties  Properties.
+     * @param commands    Commands of state machine.
+     * @param threadCount Default thread count of stage.
+     * @return Executor.
+     * @throws PropertyHelperException Occurred when property has wrong value.
+     */
+    private static FileStateExecutor initStateExecutor(final Properties properties, List<FileStateMachineCommand> commands,
+                                                       int threadCount) throws PropertyHelperException {
+        PipelineMode mode = PropertyHelper.getEnumProperty(properties, AppPropName.PROCESSOR_PIPELINE_MODE,
+                PipelineMode.class, PipelineMode.DIRECT);
+        if (mode == PipelineMode.DIRECT) {
+            return new DirectFileStateExecutor();
+        }
+        Map<FileStateMachineCommand, Integer> stageThreads = new EnumMap<>(FileStateMachineCommand.class);
+        for (FileStateMachineCommand command : commands) {
+            stageThreads.put(command, PropertyHelper.getPositiveIntProperty(properties,
+                    String.format(AppPropName.PROCESSOR_PIPELINE_STAGE_THREADS, command.name().toLowerCase()), threadCount));
+        }
+        int stageQueueCapacity = PropertyHelper.getPositiveIntProperty(properties,
+                AppPropName.PROCESSOR_PIPELINE_QUEUE_CAPACITY, DEFAULT_STAGE_QUEUE_CAPACITY);
+        StagedPipeline pipeline = new StagedPipeline(commands, stageThreads, stageQueueCapacity);
+        Runtime.getRuntime().addShutdownHook(new Thread(pipeline::close));
+        return pipeline;
+    }
+
+    /**
+     * Register MBeans of latency histograms, work queue, concurrency limiter and pipeline stages.
+     *
+     * @param metrics       Latency of processing steps.
+     * @param poolMetrics   Metrics of db connection pool.
+     * @param task          Monitoring task.
+     * @param limiter       Concurrency limiter.
+     * @param stateExecutor Executor of state machine commands.
+     */
+    private static void registerMBeans(final FileStateMetrics metrics, final ConnectionPoolMetrics poolMetrics,
+                                       final FileWorkerTask task, final ConcurrencyLimiter limiter,
+                                       final FileStateExecutor stateExecutor) {
+        JmxExporter exporter = new JmxExporter();
+        for (Map.Entry<ProcessingStep, LatencyRecorder> recorder : metrics.getRecorders().entrySet()) {
+            exporter.register("Latency", recorder.getKey().name().toLowerCase(), recorder.getValue());
+        }
+        exporter.register("Latency", "db_connection_acquire", poolMetrics.getAcquireLatency());
+        exporter.register("ConnectionPool", null, poolMetrics);
+        exporter.register("FileWorker", null, task);
+        exporter.register("ConcurrencyLimiter", null, limiter);
+        if (stateExecutor instanceof StagedPipeline) {
+            for (PipelineStage stage : ((StagedPipeline) stateExecutor).getStages()) {
+                exporter.register("PipelineStage", stage.getCommand().name().toLowerCase(), stage);
+            }
+        }
+    }
+
+    /**
+     * Init strategy to detect if file is completely written.
+     *
+     * @param properties Properties.
+     * @return Stability strategy.
+     * @throws PropertyHelperException Occurred when property has wrong value.
+     */
+    private static StabilityStrategy initStabilityStrategy(final Properties properties) throws PropertyHelperException {
+        StabilityMode mode = PropertyHelper.getEnumProperty(properties, AppPropName.PROCESSOR_STABILITY_STRATEGY,
+                StabilityMode.class, StabilityMode.QUIESCENCE);
+        switch (mode) {
+            case LOCK:
+                return new LockStabilityStrategy();
+            case MARKER:
+                return new MarkerStabilityStrategy(PropertyHelper.getStrProperty(properties,
+                        AppPropName.PROCESSOR_STABILITY_MARKER_SUFFIX, ".done"));
+            case RENAME:
+                return new RenameStabilityStrategy(PropertyHelper.getStrProperty(properties,
+                        AppPropName.PROCESSOR_STABILITY_PART_SUFFIX, ".part"));
+            default:
+                return new QuiescenceStabilityStrategy(PropertyHelper.getPositiveIntProperty(properties,
+                        AppPropName.PROCESSOR_STABILITY_QUIET_PERIOD, DEFAULT_STABILITY_QUIET_PERIOD));
+        }
+    }
+
+    /**
+     * Init Hibernate Session Factory with HikariCP connection pool.
+     * Checkout of connection waits no longer than connection timeout, so slow db does not pile up waiting threads.
      *
      * @param properties  Properties.
-     * @param threadCount Count of thread to connect to db.
+     * @param threadCount Count of thread to connect to db, default size of pool.
+     * @return Metrics of connection pool.
      * @throws PropertyHelperException Occurred when property does not exist.
      */
-    private static void initSessionFactory(final Properties properties, int threadCount) throws PropertyHelperException {
-        String connectionStr = PropertyHelper.getStrProperty(properties, AppPropName.CONNECTION_STRING);
-        String login = PropertyHelper.getStrProperty(properties, AppPropName.DB_LOGIN);
-        String pass = PropertyHelper.getStrProperty(properties, AppPropName.DB_PASS);
-        DbHelper.initSessionFactory(connectionStr, login, pass, threadCount);
+    private static ConnectionPoolMetrics initSessionFactory(final Properties properties, int threadCount)
+            throws PropertyHelperException {
+        HikariConfig config = new HikariConfig();
+        config.setPoolName(CONNECTION_POOL_NAME);
+        config.setJdbcUrl(PropertyHelper.getStrProperty(properties, AppPropName.CONNECTION_STRING));
+        config.setUsername(PropertyHelper.getStrProperty(properties, AppPropName.DB_LOGIN));
+        config.setPassword(PropertyHelper.getStrProperty(properties, AppPropName.DB_PASS));
+        int maxSize = PropertyHelper.getPositiveIntProperty(properties, AppPropName.DB_POOL_MAX_SIZE, threadCount);
+        config.setMaximumPoolSize(maxSize);
+        config.setMinimumIdle(PropertyHelper.getPositiveIntProperty(properties, AppPropName.DB_POOL_MIN_IDLE, maxSize));
+        config.setIdleTimeout(PropertyHelper.getPositiveIntProperty(properties, AppPropName.DB_POOL_IDLE_TIMEOUT,
+                DEFAULT_POOL_IDLE_TIMEOUT));
+        config.setConnectionTimeout(PropertyHelper.getPositiveIntProperty(properties, AppPropName.DB_POOL_CONNECTION_TIMEOUT,
+                DEFAULT_POOL_CONNECTION_TIMEOUT));
+        config.setLeakDetectionThreshold(PropertyHelper.getPositiveIntProperty(properties,
+                AppPropName.DB_POOL_LEAK_DETECTION_THRESHOLD, DEFAULT_POOL_LEAK_DETECTION_THRESHOLD));
+        // Prepared statements are cached by PostgreSQL driver on server side
+        config.addDataSourceProperty("preparedStatementCacheQueries", PropertyHelper.getPositiveIntProperty(properties,
+                AppPropName.DB_POOL_STATEMENT_CACHE_SIZE, DEFAULT_POOL_STATEMENT_CACHE_SIZE));
+        config.setAutoCommit(false);
+        ConnectionPoolMetrics poolMetrics = new ConnectionPoolMetrics();
+        config.setMetricsTrackerFactory(poolMetrics);
+        DbHelper.initSessionFactory(new HikariDataSource(config));
+        return poolMetrics;
     }
 
     /**
      * Init tx manager.
      *
      * @param properties Properties.
+     * @param nodeId     Cluster node identifier, null in single node mode.
      * @return
      * @throws PropertyHelperException Occurred when property does not exist.
+     * @throws IOException             Occurred when transaction directory of node could not be created or write-ahead log could not be read.
+     */
+    private static TransactionManager initTxManager(final Properties properties, String nodeId)
+            throws PropertyHelperException, IOException {
+        String tempDir = PropertyHelper.getPathProperty(properties, AppPropName.PROCESSOR_TEMP_DIR, true, true, true);
+        if (nodeId != null) {
+            // Each node has its own transaction logs
+            tempDir = ClusterNode.getTransactionDir(tempDir, nodeId);
+        }
+        TransactionMode mode = PropertyHelper.getEnumProperty(properties, AppPropName.PROCESSOR_TX_MODE,
+                TransactionMode.class, TransactionMode.FILE);
+        if (mode == TransactionMode.FILE) {
+            return new TransactionManagerImpl(tempDir);
+        }
+        int segmentSize = PropertyHelper.getPositiveIntProperty(properties, AppPropName.PROCESSOR_TX_WAL_SEGMENT_SIZE,
+                DEFAULT_WAL_SEGMENT_SIZE);
+        FsyncPolicy fsyncPolicy = PropertyHelper.getEnumProperty(properties, AppPropName.PROCESSOR_TX_WAL_FSYNC,
+                FsyncPolicy.class, FsyncPolicy.NONE);
+        int fsyncInterval = PropertyHelper.getPositiveIntProperty(properties, AppPropName.PROCESSOR_TX_WAL_FSYNC_INTERVAL,
+                DEFAULT_WAL_FSYNC_INTERVAL);
+        int fsyncEveryN = PropertyHelper.getPositiveIntProperty(properties, AppPropName.PROCESSOR_TX_WAL_FSYNC_EVERY_N,
+                DEFAULT_WAL_FSYNC_EVERY_N);
+        WalTransactionManager wal = new WalTransactionManager(tempDir, segmentSize, fsyncPolicy, fsyncEveryN, fsyncInterval);
+        Runtime.getRuntime().addShutdownHook(new Thread(wal::close));
+        return wal;
+    }
+
+    /**
+     * Init analyzer of entry files. JAXB context and schema are created at once, so the first files are not delayed,
+     * changed schema is reloaded periodically.
+     *
+     * @param properties    Properties.
+     * @param xsdSchemaFile XSD file to validate schema.
+     * @return Analyzer.
+     * @throws PropertyHelperException Occurred when property does not exist.
+     * @throws IOException             Occurred when schema could not be read.
      */
-    private static TransactionManager initTxManager(final Properties properties) throws PropertyHelperException {
+    private static Analyzer<Entry> initAnalyzer(final Properties properties, String xsdSchemaFile)
+            throws PropertyHelperException, IOException {
+        AnalyzerMode mode = PropertyHelper.getEnumProperty(properties, AppPropName.ANALYZER_MODE, AnalyzerMode.class,
+                AnalyzerMode.JAXB);
+        if (mode == AnalyzerMode.STAX) {
+            return new StaxEntryAnalyzer();
+        }
+        int reloadInterval = PropertyHelper.getPositiveIntProperty(properties, AppPropName.ANALYZER_SCHEMA_RELOAD_INTERVAL,
+                DEFAULT_SCHEMA_RELOAD_INTERVAL);
+        SchemaRegistry registry = new SchemaRegistry();
+        Analyzer<Entry> analyzer;
+        try {
+            if (mode == AnalyzerMode.JAXB) {
+                registry.getContext(Entry.class);
+                registry.getSchema(xsdSchemaFile);
+                analyzer = new XMLAnalyzerImpl<>(Entry.class, xsdSchemaFile, registry);
+            } else {
+                analyzer = new StaxEntryAnalyzer(xsdSchemaFile, registry);
+            }
+        } catch (JAXBException | SAXException e) {
+            throw new IOException(String.format("Could not init analyzer of schema %s", xsdSchemaFile), e);
+        }
+        executorService.scheduleWithFixedDelay(registry::reloadChanged, reloadInterval, reloadInterval,
+                TimeUnit.MILLISECONDS);
+        return analyzer;
+    }
+
+    /**
+     * Warm up analyzer by sample entry files, so the first files of monitor directory are not analyzed by cold code.
+     * Samples are analyzed by all processing threads at the same time, so pooled parsers are created for each thread.
+     *
+     * @param properties  Properties.
+     * @param analyzer    Analyzer.
+     * @param threadCount Count of processing threads.
+     * @throws PropertyHelperException Occurred when property has wrong value.
+     * @throws IOException             Occurred when directory of samples could not be read.
+     */
+    private static void warmUpAnalyzer(final Properties properties, final Analyzer<Entry> analyzer, int threadCount)
+            throws PropertyHelperException, IOException {
+        if (PropertyHelper.getStrProperty(properties, AppPropName.ANALYZER_WARMUP_DIR, null) == null) {
+            return;
+        }
+        String warmUpDir = PropertyHelper.getPathProperty(properties, AppPropName.ANALYZER_WARMUP_DIR, true, true, false);
+        int count = PropertyHelper.getPositiveIntProperty(properties, AppPropName.ANALYZER_WARMUP_COUNT,
+                DEFAULT_ANALYZER_WARMUP_COUNT);
+        List<String> samples;
+        try (Stream<Path> files = Files.list(Paths.get(warmUpDir))) {
+            samples = files.filter(Files::isRegularFile).map(Path::toString).collect(Collectors.toList());
+        }
+        if (samples.isEmpty()) {
+            logger.warn(String.format("There are no files to warm up analyzer in %s", warmUpDir));
+            return;
+        }
+        long start = System.currentTimeMillis();
+        List<Callable<Void>> tasks = new ArrayList<>();
+        for (int i = 0; i < threadCount; i++) {
+            int first = i;
+            tasks.add(() -> {
+                for (int j = first; j < count; j += threadCount) {
+                    analyzer.analyze(samples.get(j % samples.size()), 0L);
+                }
+                return null;
+            });
+        }
+        ExecutorService warmUpService = Executors.newFixedThreadPool(threadCount);
+        try {
+            warmUpService.invokeAll(tasks);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            warmUpService.shutdown();
+        }
+        logger.info(String.format("Analyzer is warmed up by %d files in %d ms", count, System.currentTimeMillis() - start));
+    }
+
+
+    /**
+     * Init db entry service, in batch and copy modes inserts of concurrent state machines are written by batches,
+     * in spool mode entries are written to local spool and loaded to db in background.
+     *
+     * @param properties Properties.
+     * @param nodeId     Cluster node identifier, null in single node mode.
+     * @return Entry service.
+     * @throws PropertyHelperException Occurred when property does not exist.
+     * @throws IOException             Occurred when spool could not be opened.
+     */
+    private static DbService<Entry> initEntryService(final Properties properties, String nodeId)
+            throws PropertyHelperException, IOException {
+        InsertMode mode = PropertyHelper.getEnumProperty(properties, AppPropName.DB_INSERT_MODE, InsertMode.class,
+                InsertMode.SINGLE);
+        EntryService entryService = createEntryService(properties, mode == InsertMode.COPY);
+        if (mode == InsertMode.SINGLE) {
+            return entryService;
+        }
+        if (mode == InsertMode.SPOOL) {
+            String spoolDir = PropertyHelper.getPathProperty(properties, AppPropName.DB_SPOOL_DIR, true, true, true);
+            if (nodeId != null) {
+                // Each node has its own spool
+                spoolDir = Paths.get(spoolDir, nodeId).toString();
+            }
+            int segmentSize = PropertyHelper.getPositiveIntProperty(properties, AppPropName.DB_SPOOL_SEGMENT_SIZE,
+                    DEFAULT_SPOOL_SEGMENT_SIZE);
+            int batchSize = PropertyHelper.getPositiveIntProperty(properties, AppPropName.DB_SPOOL_BATCH_SIZE,
+                    DEFAULT_SPOOL_BATCH_SIZE);
+            int retryDelay = PropertyHelper.getPositiveIntProperty(properties, AppPropName.DB_SPOOL_RETRY_DELAY,
+                    DEFAULT_SPOOL_RETRY_DELAY);
+            SpoolingDbService<Entry> spoolingService = new SpoolingDbService<>(spoolDir, entryService, new EntryCodec(),
+                    segmentSize, batchSize, retryDelay);
+            Runtime.getRuntime().addShutdownHook(new Thread(spoolingService::close));
+            return spoolingService;
+        }
+        int batchSize = PropertyHelper.getPositiveIntProperty(properties, AppPropName.DB_INSERT_BATCH_SIZE,
+                DEFAULT_INSERT_BATCH_SIZE);
+        int maxWait = PropertyHelper.getPositiveIntProperty(properties, AppPropName.DB_INSERT_BATCH_MAX_WAIT,
+                DEFAULT_INSERT_BATCH_MAX_WAIT);
+        BatchingDbService<Entry> batchingService = new BatchingDbService<>(entryService, batchSize, maxWait);
+        Runtime.getRuntime().addShutdownHook(new Thread(batchingService::close));
+        return batchingService;
+    }
+
+    /**
+     * Create db entry service, identifiers of entries are allocated by blocks of sequence.
+     *
+     * @param properties Properties.
+     * @param copy       Entries are inserted by COPY.
+     * @return Entry service.
+     * @throws PropertyHelperException Occurred when property does not exist.
+     */
+    private static EntryService createEntryService(final Properties properties, boolean copy)
+            throws PropertyHelperException {
+        int blockSize = PropertyHelper.getPositiveIntProperty(properties, AppPropName.DB_ID_BLOCK_SIZE,
+                DEFAULT_ID_BLOCK_SIZE);
+        int sequenceBlockSize = DbHelper.initSequence(ENTRY_ID_SEQUENCE, ENTRY_TABLE, blockSize);
+        if (sequenceBlockSize != blockSize) {
+            logger.warn(String.format("Sequence %s already exists with increment %d, it is used as block size instead of %s",
+                    ENTRY_ID_SEQUENCE, sequenceBlockSize, AppPropName.DB_ID_BLOCK_SIZE));
+        }
+        BlockIdAllocator idAllocator = new BlockIdAllocator(() -> DbHelper.nextSequenceValue(ENTRY_ID_SEQUENCE),
+                sequenceBlockSize);
+        return copy ? new CopyEntryService(idAllocator) : new EntryService(idAllocator);
+    }
+
+    /**
+     * Init cluster node.
+     *
+     * @param properties Properties.
+     * @param nodeId     Cluster node identifier.
+     * @param monitorDir Monitor directory.
+     * @param tx         Tx manager of node.
+     * @param stability  Strategy to detect if file is completely written.
+     * @return Cluster node.
+     * @throws PropertyHelperException Occurred when property does not exist.
+     */
+    private static ClusterNode initClusterNode(final Properties properties, String nodeId, String monitorDir,
+                                               final TransactionManager tx, final StabilityStrategy stability)
+            throws PropertyHelperException {
+        String claimDir = PropertyHelper.getPathProperty(properties, AppPropName.CLUSTER_CLAIM_DIR, true, true, true);
+        Path monitorPath = Paths.get(monitorDir).toAbsolutePath().normalize();
+        if (Paths.get(claimDir).toAbsolutePath().normalize().startsWith(monitorPath)) {
+            throw new PropertyHelperException(String.format("%s should not be inside of %s",
+                    AppPropName.CLUSTER_CLAIM_DIR, AppPropName.MONITOR_DIR));
+        }
         String tempDir = PropertyHelper.getPathProperty(properties, AppPropName.PROCESSOR_TEMP_DIR, true, true, true);
-        return new TransactionManagerImpl(tempDir);
+        int leaseTimeout = PropertyHelper.getPositiveIntProperty(properties, AppPropName.CLUSTER_LEASE_TIMEOUT, DEFAULT_LEASE_TIMEOUT);
+        int heartbeat = PropertyHelper.getPositiveIntProperty(properties, AppPropName.CLUSTER_HEARTBEAT_INTERVAL,
+                DEFAULT_HEARTBEAT_INTERVAL);
+        return new ClusterNode(nodeId, claimDir, monitorDir, tempDir, tx, stability, leaseTimeout, heartbeat);
     }
 }
@@ -0,0 +1,19 @@
+package org.terehpp.crawler.component.analyzer;
+
+/**
+ * Mode of xml file analyzer.
+ */
+public enum AnalyzerMode {
+    /**
+     * JAXB unmarshalling validated by XSD schema.
+     */
+    JAXB,
+    /**
+     * Streaming StAX parser, constraints of schema are checked in code.
+     */
+    STAX,
+    /**
+     * Streaming StAX parser, file is validated by XSD schema before parsing.
+     */
+    STAX_VALIDATING
+}
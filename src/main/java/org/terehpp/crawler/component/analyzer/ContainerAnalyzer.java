@@ -0,0 +1,28 @@
+package org.terehpp.crawler.component.analyzer;
+
+import java.io.IOException;
+
+/**
+ * Analyzer of files, which could contain many entities in one container element.
+ *
+ * @param <T> Type of entity.
+ */
+public interface ContainerAnalyzer<T> extends Analyzer<T> {
+    /**
+     * Check if file is container of entities, only beginning of file is read.
+     *
+     * @param file File.
+     * @return Result of check, false if file could not be read.
+     */
+    boolean isContainer(String file);
+
+    /**
+     * Open container to read entities one by one.
+     *
+     * @param file   File.
+     * @param offset Count of entities to skip, they are not mapped.
+     * @return Reader of entities.
+     * @throws IOException Occurred when file could not be read or is not container.
+     */
+    ContainerReader<T> open(String file, long offset) throws IOException;
+}
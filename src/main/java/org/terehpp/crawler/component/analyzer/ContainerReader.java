@@ -0,0 +1,26 @@
+package org.terehpp.crawler.component.analyzer;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * Incremental reader of entities from container file, only current entity is kept in memory.
+ *
+ * @param <T> Type of entity.
+ */
+public interface ContainerReader<T> extends Closeable {
+    /**
+     * Read next entity, invalid entity is returned as error and reading could be continued.
+     *
+     * @return Result of next entity without identifier, null if there are no more entities.
+     * @throws IOException Occurred when rest of file could not be read.
+     */
+    AnalyzerResult<T> next() throws IOException;
+
+    /**
+     * Get count of read entities, including skipped and invalid ones.
+     *
+     * @return Offset of next entity.
+     */
+    long getOffset();
+}
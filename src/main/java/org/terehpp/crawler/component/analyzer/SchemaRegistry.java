@@ -0,0 +1,133 @@
+package org.terehpp.crawler.component.analyzer;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.terehpp.crawler.utils.StringUtils;
+import org.xml.sax.SAXException;
+
+import javax.xml.XMLConstants;
+import javax.xml.bind.JAXBContext;
+import javax.xml.bind.JAXBException;
+import javax.xml.validation.Schema;
+import javax.xml.validation.SchemaFactory;
+import java.io.File;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Registry of JAXB contexts and compiled XSD schemas, shared by all analyzers.
+ * Context and schema are thread safe, so each of them is created once: context per type and schema per XSD file.
+ * Changed XSD files are compiled again by {@link #reloadChanged()}, analyzers take new schema for the next file.
+ */
+public class SchemaRegistry {
+    private final static Log logger = LogFactory.getLog(SchemaRegistry.class);
+    private final Map<Class<?>, JAXBContext> contexts = new ConcurrentHashMap<>();
+    private final Map<String, CompiledSchema> schemas = new ConcurrentHashMap<>();
+
+    /**
+     * Get JAXB context of type, context is created on the first call.
+     *
+     * @param type Type.
+     * @return Context.
+     * @throws JAXBException Occurred when context could not be created.
+     */
+    public JAXBContext getContext(Class<?> type) throws JAXBException {
+        JAXBContext context = contexts.get(type);
+        if (context == null) {
+            synchronized (contexts) {
+                context = contexts.get(type);
+                if (context == null) {
+                    long start = System.currentTimeMillis();
+                    context = JAXBContext.newInstance(type);
+                    contexts.put(type, context);
+                    logger.info(String.format("JAXB context of %s is created in %d ms", type.getSimpleName(),
+                            System.currentTimeMillis() - start));
+                }
+            }
+        }
+        return context;
+    }
+
+    /**
+     * Get compiled schema, schema is compiled on the first call.
+     *
+     * @param xsdFile XSD file.
+     * @return Schema, empty if XSD file is not set.
+     * @throws SAXException Occurred when schema could not be compiled.
+     */
+    public Optional<Schema> getSchema(String xsdFile) throws SAXException {
+        if (StringUtils.isBlank(xsdFile)) {
+            return Optional.empty();
+        }
+        CompiledSchema compiled = schemas.get(xsdFile);
+        if (compiled == null) {
+            synchronized (schemas) {
+                compiled = schemas.get(xsdFile);
+                if (compiled == null) {
+                    compiled = compile(xsdFile);
+                    schemas.put(xsdFile, compiled);
+                }
+            }
+        }
+        return Optional.of(compiled.schema);
+    }
+
+    /**
+     * Compile again schemas, which XSD files were modified. If changed XSD could not be compiled,
+     * previous schema is still used until file is modified again.
+     *
+     * @return Count of reloaded schemas.
+     */
+    public int reloadChanged() {
+        int reloaded = 0;
+        for (Map.Entry<String, CompiledSchema> entry : schemas.entrySet()) {
+            String xsdFile = entry.getKey();
+            long lastModified = new File(xsdFile).lastModified();
+            // Missing file has zero modification time, previous schema is kept
+            if (lastModified == 0 || lastModified == entry.getValue().lastModified) {
+                continue;
+            }
+            try {
+                schemas.put(xsdFile, compile(xsdFile));
+                reloaded++;
+            } catch (SAXException e) {
+                logger.error(String.format("Could not reload schema %s, previous schema is used", xsdFile));
+                logger.error(e.getMessage(), e);
+                schemas.put(xsdFile, new CompiledSchema(entry.getValue().schema, lastModified));
+            }
+        }
+        return reloaded;
+    }
+
+    /**
+     * Compile schema. Modification time is read before compilation, so change during compilation is reloaded later.
+     *
+     * @param xsdFile XSD file.
+     * @return Compiled schema.
+     * @throws SAXException Occurred when schema could not be compiled.
+     */
+    private static CompiledSchema compile(String xsdFile) throws SAXException {
+        File file = new File(xsdFile);
+        long lastModified = file.lastModified();
+        long start = System.currentTimeMillis();
+        // Factory is not thread safe, so it is created for each compilation
+        SchemaFactory sf = SchemaFactory.newInstance(XMLConstants.W3C_XML_SCHEMA_NS_URI);
+        Schema schema = sf.newSchema(file);
+        logger.info(String.format("Schema %s is compiled in %d ms", xsdFile, System.currentTimeMillis() - start));
+        return new CompiledSchema(schema, lastModified);
+    }
+
+    /**
+     * Schema with modification time of its XSD file.
+     */
+    private static class CompiledSchema {
+        private final Schema schema;
+        private final long lastModified;
+
+        CompiledSchema(Schema compiledSchema, long fileModified) {
+            schema = compiledSchema;
+            lastModified = fileModified;
+        }
+    }
+}
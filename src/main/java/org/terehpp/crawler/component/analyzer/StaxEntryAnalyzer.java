@@ -0,0 +1,436 @@
+package org.terehpp.crawler.component.analyzer;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.terehpp.crawler.model.Entry;
+import org.terehpp.crawler.utils.StringUtils;
+import org.xml.sax.SAXException;
+
+import javax.xml.XMLConstants;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import javax.xml.transform.stream.StreamSource;
+import javax.xml.validation.Schema;
+import javax.xml.validation.Validator;
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Date;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.regex.Pattern;
+
+/**
+ * Streaming xml analyzer of Entry. Fields are read by StAX cursor and mapped directly, without JAXB object graph.
+ * Constraints of entry.xsd are checked in code: root element Entry with content and creationDate elements only,
+ * content is not longer than 1024 characters, creationDate matches date pattern.
+ * Full validation by XSD schema is optional, file is validated before parsing then.
+ * File could be container of entries with root element Entries, it is read incrementally by {@link #open}.
+ */
+public class StaxEntryAnalyzer implements ContainerAnalyzer<Entry> {
+    private final static Log logger = LogFactory.getLog(StaxEntryAnalyzer.class);
+    private final static String ROOT_ELEMENT = "Entry";
+    private final static String CONTAINER_ELEMENT = "Entries";
+    private final static String CONTENT_ELEMENT = "content";
+    private final static String DATE_ELEMENT = "creationDate";
+    private final static int MAX_CONTENT_LENGTH = 1024;
+    private final static int BUFFER_SIZE = 8 * 1024;
+    /**
+     * Pattern of dateTimeString type, \s of XSD is space, tab, carriage return or line feed.
+     */
+    private final static Pattern DATE_PATTERN = Pattern.compile("[0-9]{4}-[0-9]{2}-[0-9]{2}[ \t\r\n][0-9]{2}:[0-9]{2}:[0-9]{2}");
+    private final XMLInputFactory inputFactory;
+    private final String xsdSchemaFile;
+    private final SchemaRegistry registry;
+    /**
+     * Schema is thread safe and shared, validators are not, so they are borrowed for single file.
+     * Validator is kept with its schema, validators of replaced schema are dropped.
+     */
+    private final Queue<SchemaValidator> idleValidators = new ConcurrentLinkedQueue<>();
+
+    /**
+     * Constructor of analyzer without XSD validation.
+     */
+    public StaxEntryAnalyzer() {
+        inputFactory = createInputFactory();
+        xsdSchemaFile = null;
+        registry = null;
+    }
+
+    /**
+     * Constructor of analyzer with XSD validation.
+     *
+     * @param xsdFile XSD file to validate schema.
+     * @throws SAXException Occurred when schema could not be read.
+     */
+    public StaxEntryAnalyzer(String xsdFile) throws SAXException {
+        this(xsdFile, new SchemaRegistry());
+    }
+
+    /**
+     * Constructor of analyzer with XSD validation, schema is compiled at once.
+     *
+     * @param xsdFile        XSD file to validate schema.
+     * @param schemaRegistry Registry of schemas.
+     * @throws SAXException Occurred when schema could not be read.
+     */
+    public StaxEntryAnalyzer(String xsdFile, SchemaRegistry schemaRegistry) throws SAXException {
+        inputFactory = createInputFactory();
+        xsdSchemaFile = StringUtils.isNotBlank(xsdFile) ? xsdFile : null;
+        registry = schemaRegistry;
+        registry.getSchema(xsdSchemaFile);
+    }
+
+    /**
+     * Analyze.
+     *
+     * @param file File.
+     * @param id   Entity identifier.
+     * @return Entity.
+     */
+    @Override
+    public AnalyzerResult<Entry> analyze(String file, Long id) {
+        try {
+            if (xsdSchemaFile != null) {
+                validate(file);
+            }
+            Entry entry;
+            try (InputStream in = new BufferedInputStream(new FileInputStream(file), BUFFER_SIZE)) {
+                entry = parse(in);
+            }
+            entry.setId(id);
+            return new AnalyzerResult<>(false, null, entry);
+        } catch (InvalidEntryException e) {
+            logger.error(String.format("Invalid file %s: %s", file, e.getMessage()));
+            return new AnalyzerResult<>(true, String.format("Invalid file %s: %s", file, e.getMessage()), null);
+        } catch (XMLStreamException | SAXException e) {
+            logger.error(e.getMessage(), e);
+            return new AnalyzerResult<>(true, String.format("Can not deserialize file %s", file), null);
+        } catch (IOException e) {
+            logger.error(e.getMessage(), e);
+            return new AnalyzerResult<>(true, String.format("Can not analyze file %s", file), null);
+        }
+    }
+
+    /**
+     * Check if file is container of entries.
+     *
+     * @param file File.
+     * @return Result of check, false if file could not be read.
+     */
+    @Override
+    public boolean isContainer(String file) {
+        try (InputStream in = new BufferedInputStream(new FileInputStream(file), BUFFER_SIZE)) {
+            XMLStreamReader reader = inputFactory.createXMLStreamReader(in);
+            try {
+                reader.nextTag();
+                return isElement(reader, CONTAINER_ELEMENT);
+            } finally {
+                reader.close();
+            }
+        } catch (XMLStreamException | IOException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Open container of entries. Skipped entries are passed by cursor without mapping, so memory does not depend
+     * on offset. Container is not validated by XSD schema, constraints of each entry are checked in code.
+     *
+     * @param file   File.
+     * @param offset Count of entries to skip.
+     * @return Reader of entries.
+     * @throws IOException Occurred when file could not be read or is not container.
+     */
+    @Override
+    public ContainerReader<Entry> open(String file, long offset) throws IOException {
+        InputStream in = new BufferedInputStream(new FileInputStream(file), BUFFER_SIZE);
+        try {
+            XMLStreamReader reader = inputFactory.createXMLStreamReader(in);
+            reader.nextTag();
+            if (!isElement(reader, CONTAINER_ELEMENT)) {
+                throw new IOException(String.format("File %s is not container of %s", file, ROOT_ELEMENT));
+            }
+            StaxContainerReader containerReader = new StaxContainerReader(file, in, reader);
+            containerReader.skip(offset);
+            return containerReader;
+        } catch (XMLStreamException | IOException e) {
+            in.close();
+            throw e instanceof IOException ? (IOException) e
+                    : new IOException(String.format("Can not deserialize file %s", file), e);
+        }
+    }
+
+    /**
+     * Parse entry from stream and check constraints of schema.
+     *
+     * @param in Stream.
+     * @return Entry without identifier.
+     * @throws XMLStreamException    Occurred when xml is not well-formed.
+     * @throws InvalidEntryException Occurred when xml does not match schema.
+     */
+    private Entry parse(InputStream in) throws XMLStreamException, InvalidEntryException {
+        XMLStreamReader reader = inputFactory.createXMLStreamReader(in);
+        try {
+            reader.nextTag();
+            if (!isElement(reader, ROOT_ELEMENT)) {
+                throw new InvalidEntryException(String.format("Element %s is expected instead of %s", ROOT_ELEMENT,
+                        reader.getLocalName()));
+            }
+            Entry entry = readEntry(reader);
+            // Rest of document could have only comments and processing instructions
+            while (reader.hasNext()) {
+                reader.next();
+            }
+            return entry;
+        } finally {
+            reader.close();
+        }
+    }
+
+    /**
+     * Read entry element and check constraints of schema. Element is read up to its end even if it is invalid,
+     * so next element of container could be read after that.
+     *
+     * @param reader Reader at start of entry element.
+     * @return Entry without identifier.
+     * @throws XMLStreamException    Occurred when xml is not well-formed or element has mixed content.
+     * @throws InvalidEntryException Occurred when entry does not match schema.
+     */
+    private static Entry readEntry(XMLStreamReader reader) throws XMLStreamException, InvalidEntryException {
+        String error = getAttributeError(reader);
+        String content = null;
+        String dateText = null;
+        int index = 0;
+        while (reader.nextTag() == XMLStreamConstants.START_ELEMENT) {
+            if (error == null) {
+                error = getAttributeError(reader);
+            }
+            if (index == 0 && isElement(reader, CONTENT_ELEMENT)) {
+                content = reader.getElementText();
+            } else if (index == 1 && isElement(reader, DATE_ELEMENT)) {
+                dateText = reader.getElementText();
+            } else {
+                if (error == null) {
+                    error = String.format("Unexpected element %s", reader.getLocalName());
+                }
+                skipElement(reader);
+            }
+            index++;
+        }
+        if (error != null) {
+            throw new InvalidEntryException(error);
+        }
+        if (content == null) {
+            throw new InvalidEntryException(String.format("Element %s is missing", CONTENT_ELEMENT));
+        }
+        if (dateText == null) {
+            throw new InvalidEntryException(String.format("Element %s is missing", DATE_ELEMENT));
+        }
+        if (content.codePointCount(0, content.length()) > MAX_CONTENT_LENGTH) {
+            throw new InvalidEntryException(String.format("%s is longer than %d characters", CONTENT_ELEMENT,
+                    MAX_CONTENT_LENGTH));
+        }
+        Date creationDate = DATE_PATTERN.matcher(dateText).matches()
+                ? XMLDateTimeAdapter.parse(dateText.charAt(10) == ' ' ? dateText
+                : dateText.substring(0, 10) + ' ' + dateText.substring(11)) : null;
+        if (creationDate == null) {
+            throw new InvalidEntryException(String.format("%s %s does not match pattern", DATE_ELEMENT, dateText));
+        }
+        return new Entry(null, content, creationDate);
+    }
+
+    /**
+     * Move cursor to the end of current element, nested elements are skipped.
+     *
+     * @param reader Reader at start of element.
+     * @throws XMLStreamException Occurred when xml is not well-formed.
+     */
+    private static void skipElement(XMLStreamReader reader) throws XMLStreamException {
+        int depth = 1;
+        while (depth > 0) {
+            int event = reader.next();
+            if (event == XMLStreamConstants.START_ELEMENT) {
+                depth++;
+            } else if (event == XMLStreamConstants.END_ELEMENT) {
+                depth--;
+            }
+        }
+    }
+
+    private static boolean isElement(XMLStreamReader reader, String name) {
+        return name.equals(reader.getLocalName()) && StringUtils.isBlank(reader.getNamespaceURI());
+    }
+
+    /**
+     * Check attributes of current element, only attributes of schema instance namespace are allowed.
+     *
+     * @param reader Reader at start of element.
+     * @return Error, null if attributes are allowed.
+     */
+    private static String getAttributeError(XMLStreamReader reader) {
+        for (int i = 0; i < reader.getAttributeCount(); i++) {
+            if (!XMLConstants.W3C_XML_SCHEMA_INSTANCE_NS_URI.equals(reader.getAttributeNamespace(i))) {
+                return String.format("Unexpected attribute %s of %s", reader.getAttributeLocalName(i),
+                        reader.getLocalName());
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Validate file by XSD schema.
+     *
+     * @param file File.
+     * @throws SAXException Occurred when file does not match schema.
+     * @throws IOException
+     */
+    private void validate(String file) throws SAXException, IOException {
+        Schema schema = registry.getSchema(xsdSchemaFile).get();
+        SchemaValidator validator = idleValidators.poll();
+        while (validator != null && validator.schema != schema) {
+            validator = idleValidators.poll();
+        }
+        if (validator == null) {
+            validator = new SchemaValidator(schema);
+        }
+        try {
+            validator.validator.validate(new StreamSource(new File(file)));
+        } finally {
+            validator.validator.reset();
+            idleValidators.offer(validator);
+        }
+    }
+
+    /**
+     * Create factory of readers, DTD and external entities are not supported.
+     *
+     * @return Factory, thread safe after configuration.
+     */
+    private static XMLInputFactory createInputFactory() {
+        XMLInputFactory factory = XMLInputFactory.newFactory();
+        factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+        factory.setProperty(XMLInputFactory.IS_COALESCING, true);
+        return factory;
+    }
+
+    /**
+     * Reader of entries from container, cursor is kept between entries.
+     */
+    private static class StaxContainerReader implements ContainerReader<Entry> {
+        private final String file;
+        private final InputStream in;
+        private final XMLStreamReader reader;
+        private long offset;
+        private boolean finished;
+
+        StaxContainerReader(String containerFile, InputStream stream, XMLStreamReader streamReader) {
+            file = containerFile;
+            in = stream;
+            reader = streamReader;
+        }
+
+        /**
+         * Skip entries without mapping.
+         *
+         * @param count Count of entries to skip.
+         * @throws XMLStreamException Occurred when xml is not well-formed.
+         */
+        void skip(long count) throws XMLStreamException {
+            while (offset < count && nextElement()) {
+                skipElement(reader);
+                offset++;
+            }
+        }
+
+        @Override
+        public AnalyzerResult<Entry> next() throws IOException {
+            try {
+                if (!nextElement()) {
+                    return null;
+                }
+                long position = offset++;
+                if (!isElement(reader, ROOT_ELEMENT)) {
+                    String name = reader.getLocalName();
+                    skipElement(reader);
+                    return new AnalyzerResult<>(true, String.format("Invalid entry %d of file %s: unexpected element %s",
+                            position, file, name), null);
+                }
+                try {
+                    return new AnalyzerResult<>(false, null, readEntry(reader));
+                } catch (InvalidEntryException e) {
+                    return new AnalyzerResult<>(true, String.format("Invalid entry %d of file %s: %s", position, file,
+                            e.getMessage()), null);
+                }
+            } catch (XMLStreamException e) {
+                throw new IOException(String.format("Can not deserialize file %s after %d entries", file, offset), e);
+            }
+        }
+
+        @Override
+        public long getOffset() {
+            return offset;
+        }
+
+        /**
+         * Move cursor to the start of next child element of container.
+         *
+         * @return True if cursor is at start of element, false if container is finished.
+         * @throws XMLStreamException Occurred when xml is not well-formed or container has text.
+         */
+        private boolean nextElement() throws XMLStreamException {
+            if (finished) {
+                return false;
+            }
+            if (reader.nextTag() == XMLStreamConstants.START_ELEMENT) {
+                return true;
+            }
+            // Rest of document could have only comments and processing instructions
+            while (reader.hasNext()) {
+                reader.next();
+            }
+            finished = true;
+            return false;
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                reader.close();
+            } catch (XMLStreamException e) {
+                logger.warn(String.format("Could not close reader of file %s: %s", file, e.getMessage()));
+            } finally {
+                in.close();
+            }
+        }
+    }
+
+    /**
+     * Validator of schema.
+     */
+    private static class SchemaValidator {
+        private final Schema schema;
+        private final Validator validator;
+
+        SchemaValidator(Schema validatorSchema) {
+            schema = validatorSchema;
+            validator = validatorSchema.newValidator();
+        }
+    }
+
+    /**
+     * File does not match constraints of schema.
+     */
+    private static class InvalidEntryException extends Exception {
+        private static final long serialVersionUID = 1L;
+
+        InvalidEntryException(String message) {
+            super(message);
+        }
+    }
+}
@@ -3,22 +3,20 @@ package org.terehpp.crawler.component.analyzer;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.terehpp.crawler.model.DbEntity;
-import org.terehpp.crawler.utils.StringUtils;
 import org.xml.sax.SAXException;
 
-import javax.xml.XMLConstants;
-import javax.xml.bind.JAXBContext;
 import javax.xml.bind.JAXBException;
 import javax.xml.bind.Unmarshaller;
 import javax.xml.validation.Schema;
-import javax.xml.validation.SchemaFactory;
-import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
-import java.util.Optional;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
 
 /**
  * Xml file analyzer.
+ * JAXB context and schema are taken from registry, unmarshallers are pooled, schema of pooled unmarshaller
+ * is replaced when schema is reloaded.
  *
  * @param <T> Entity type.
  */
@@ -26,8 +24,11 @@ public class XMLAnalyzerImpl<T extends DbEntity> implements Analyzer<T> {
     private final static Log logger = LogFactory.getLog(XMLAnalyzerImpl.class);
     private final Class<T> type;
     private final String xsdSchemaFile;
-    private static ThreadLocal<Unmarshaller> unmarshaller = new ThreadLocal<>();
-    private static ThreadLocal<Schema> schema = new ThreadLocal<>();
+    private final SchemaRegistry registry;
+    /**
+     * Context and schema are thread safe and shared, unmarshallers are not, so they are borrowed for single file.
+     */
+    private final Queue<Unmarshaller> idleUnmarshallers = new ConcurrentLinkedQueue<>();
 
     /**
      * Constructor.
@@ -35,8 +36,7 @@ public class XMLAnalyzerImpl<T extends DbEntity> implements Analyzer<T> {
      * @param analyzedType Entity type to parse.
      */
     public XMLAnalyzerImpl(Class<T> analyzedType) {
-        type = analyzedType;
-        xsdSchemaFile = null;
+        this(analyzedType, null, new SchemaRegistry());
     }
 
     /**
@@ -46,10 +46,21 @@ public class XMLAnalyzerImpl<T extends DbEntity> implements Analyzer<T> {
      * @param xsdFile      XSD file to validate schema.
      */
     public XMLAnalyzerImpl(Class<T> analyzedType, String xsdFile) {
+        this(analyzedType, xsdFile, new SchemaRegistry());
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param analyzedType   Entity type to parse.
+     * @param xsdFile        XSD file to validate schema.
+     * @param schemaRegistry Registry of JAXB contexts and schemas.
+     */
+    public XMLAnalyzerImpl(Class<T> analyzedType, String xsdFile, SchemaRegistry schemaRegistry) {
         type = analyzedType;
         xsdSchemaFile = xsdFile;
+        registry = schemaRegistry;
     }
-
     /**
      * Analyze.
      *
@@ -59,11 +70,9 @@ public class XMLAnalyzerImpl<T extends DbEntity> implements Analyzer<T> {
      */
     @Override
     public AnalyzerResult<T> analyze(String file, Long id) {
+        Unmarshaller um = null;
         try {
-            Unmarshaller um = getUnmarshaller();
-            getSchema().ifPresent(schema -> {
-                um.setSchema(schema);
-            });
+            um = getUnmarshaller();
             try (FileInputStream fs = new FileInputStream(file)) {
                 T obj = (T) um.unmarshal(fs);
                 if (obj == null) {
@@ -81,34 +90,29 @@ public class XMLAnalyzerImpl<T extends DbEntity> implements Analyzer<T> {
             logger.error(e.getMessage(), e);
             return new AnalyzerResult<T>(true,
                     String.format("Can not create Unmarshaller for type %s", type.getSimpleName()), null);
+        } finally {
+            if (um != null) {
+                idleUnmarshallers.offer(um);
+            }
         }
     }
 
     /**
-     * Get unmarshaller for current thread.
+     * Get idle unmarshaller, if there is no idle unmarshaller new one will be created.
      *
-     * @return Unmarshaller.
+     * @return Unmarshaller with current schema.
      * @throws JAXBException
-     */
-    private Unmarshaller getUnmarshaller() throws JAXBException {
-        if (unmarshaller.get() == null) {
-            JAXBContext context = JAXBContext.newInstance(type);
-            unmarshaller.set(context.createUnmarshaller());
-        }
-        return unmarshaller.get();
-    }
-
-    /**
-     * Get schema.
-     *
-     * @return Schema.
      * @throws SAXException
      */
-    private Optional<Schema> getSchema() throws SAXException {
-        if (schema.get() == null && StringUtils.isNotBlank(xsdSchemaFile)) {
-            SchemaFactory sf = SchemaFactory.newInstance(XMLConstants.W3C_XML_SCHEMA_NS_URI);
-            schema.set(sf.newSchema(new File(xsdSchemaFile)));
+    private Unmarshaller getUnmarshaller() throws JAXBException, SAXException {
+        Schema schema = registry.getSchema(xsdSchemaFile).orElse(null);
+        Unmarshaller um = idleUnmarshallers.poll();
+        if (um == null) {
+            um = registry.getContext(type).createUnmarshaller();
+        }
+        if (um.getSchema() != schema) {
+            um.setSchema(schema);
         }
-        return Optional.of(schema.get());
+        return um;
     }
 }
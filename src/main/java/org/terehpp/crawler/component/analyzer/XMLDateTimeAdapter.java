@@ -4,21 +4,33 @@ import javax.xml.bind.annotation.adapters.XmlAdapter;
 import java.text.DateFormat;
 import java.text.ParseException;
 import java.text.SimpleDateFormat;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.time.format.ResolverStyle;
 import java.util.Date;
 
 /**
  * DateTime adapter, because of XSD schema does not support pattern of date.
+ * Formatter is immutable and thread safe, so it is shared by all threads.
+ * Unmarshal is lenient as it always was, out of range fields roll over, e.g. 2017-02-30 is 2017-03-02.
+ * {@link #parse(String)} is strict, it is used by streaming analyzer, which rejects such dates.
  */
 public class XMLDateTimeAdapter extends XmlAdapter<String, Date> {
+    private final static DateTimeFormatter FORMATTER = DateTimeFormatter.ofPattern("uuuu-MM-dd HH:mm:ss")
+            .withResolverStyle(ResolverStyle.STRICT);
+
     /**
-     * Unmarshal string to date.
+     * Unmarshal string to date, out of range fields roll over.
      *
      * @param v String value.
-     * @return Date.
+     * @return Date, null if value could not be parsed.
      * @throws Exception
      */
     @Override
     public Date unmarshal(String v) throws Exception {
+        // SimpleDateFormat is not thread safe, so it is created for each value
         DateFormat formatter = new SimpleDateFormat("yyyy-MM-dd' 'HH:mm:ss");
         try {
             return formatter.parse(v);
@@ -36,7 +48,20 @@ public class XMLDateTimeAdapter extends XmlAdapter<String, Date> {
      */
     @Override
     public String marshal(Date v) throws Exception {
-        DateFormat formatter = new SimpleDateFormat("yyyy-MM-dd' 'HH:mm:ss");
-        return formatter.format(v);
+        return FORMATTER.format(LocalDateTime.ofInstant(v.toInstant(), ZoneId.systemDefault()));
+    }
+
+    /**
+     * Parse date in local time zone strictly, date with out of range field, e.g. 2017-02-30 or hour 24, is not parsed.
+     *
+     * @param v String value.
+     * @return Date, null if value could not be parsed.
+     */
+    public static Date parse(String v) {
+        try {
+            return Date.from(LocalDateTime.parse(v, FORMATTER).atZone(ZoneId.systemDefault()).toInstant());
+        } catch (DateTimeParseException e) {
+            return null;
+        }
     }
 }
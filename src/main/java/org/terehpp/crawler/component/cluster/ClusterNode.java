@@ -0,0 +1,361 @@
+package org.terehpp.crawler.component.cluster;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.terehpp.crawler.component.stability.StabilityStrategy;
+import org.terehpp.crawler.component.transaction.TransactionManager;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.DirectoryNotEmptyException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Node of crawler cluster, several nodes process the same monitor directory on shared storage.
+ * <p>
+ * Node claims file by atomic rename into its own claim directory, so only one node could process the file.
+ * Path of file relative to monitor directory is kept in claim directory, so files with the same name from different
+ * subdirectories do not replace each other.
+ * Node renews its lease file by heartbeat. When lease of another node is expired, node takes over transaction logs
+ * of dead node, restores them and returns the rest of files claimed by dead node to monitor directory.
+ * Node which lease was taken over stops claiming until takeover is finished, then it takes lease again.
+ * Claim directory should be on the same file system as monitor directory, transaction directory should be shared.
+ */
+public class ClusterNode implements FileClaimer, Closeable {
+    private final static Log logger = LogFactory.getLog(ClusterNode.class);
+    private final static String LEASE_SUFFIX = ".lease";
+    private final static String RECLAIM_SUFFIX = ".reclaim-";
+    private final String nodeId;
+    private final Path claimRoot;
+    private final Path claimDir;
+    private final Path lease;
+    private final Path monitorDir;
+    private final Path txRoot;
+    private final TransactionManager tx;
+    private final StabilityStrategy stability;
+    private final long leaseTimeout;
+    private final long heartbeatInterval;
+    private final ScheduledExecutorService heartbeatService = Executors.newSingleThreadScheduledExecutor();
+    private volatile long lastHeartbeat;
+    private volatile boolean leaseLost;
+    private Function<List<String>, CompletableFuture<Void>> recovery;
+    private Consumer<String> takeover = deadNodeId -> {
+    };
+
+    /**
+     * Constructor.
+     *
+     * @param id                 Node identifier.
+     * @param claimDirectory     Root directory of claimed files.
+     * @param monitorDirectory   Monitor directory.
+     * @param txDirectory        Root directory of transaction logs of all nodes.
+     * @param transactionManager Transaction manager of node.
+     * @param stabilityStrategy  Strategy to detect if file is completely written, only such files are claimed.
+     * @param leaseTimeoutMillis Time after last heartbeat, when node is considered as dead.
+     * @param heartbeatMillis    Heartbeat interval.
+     */
+    public ClusterNode(String id, String claimDirectory, String monitorDirectory, String txDirectory,
+                       TransactionManager transactionManager, StabilityStrategy stabilityStrategy,
+                       long leaseTimeoutMillis, long heartbeatMillis) {
+        nodeId = id;
+        claimRoot = Paths.get(claimDirectory);
+        claimDir = claimRoot.resolve(id);
+        lease = claimRoot.resolve(id + LEASE_SUFFIX);
+        monitorDir = Paths.get(monitorDirectory).toAbsolutePath().normalize();
+        txRoot = Paths.get(txDirectory);
+        tx = transactionManager;
+        stability = stabilityStrategy;
+        leaseTimeout = leaseTimeoutMillis;
+        heartbeatInterval = heartbeatMillis;
+    }
+
+    /**
+     * Get transaction directory of node.
+     *
+     * @param txDirectory Root directory of transaction logs of all nodes.
+     * @param id          Node identifier.
+     * @return Directory.
+     * @throws IOException
+     */
+    public static String getTransactionDir(String txDirectory, String id) throws IOException {
+        return Files.createDirectories(Paths.get(txDirectory, id)).toString();
+    }
+
+    /**
+     * Start node: take lease, restore own transactions of previous run, return unprocessed claimed files and start heartbeat.
+     * Claimed files are returned when recovery is finished, files claimed after start are not returned.
+     *
+     * @param recoveryCallback Callback to restore transaction logs, future is completed when logs are recovered.
+     * @throws IOException
+     */
+    public void start(Function<List<String>, CompletableFuture<Void>> recoveryCallback) throws IOException {
+        recovery = recoveryCallback;
+        Files.createDirectories(claimDir);
+        renewLease();
+        List<Path> claimedBefore = getClaimedFiles(claimDir);
+        recovery.apply(tx.getTransactionFiles()).whenComplete((result, e) -> returnClaimedFiles(claimDir, claimedBefore));
+        heartbeatService.scheduleWithFixedDelay(this::heartbeat, heartbeatInterval, heartbeatInterval, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Set callback to take over local resources of dead node, e.g. its db spool. Callback is called with identifier
+     * of dead node before its transactions are recovered, so recovery sees entities taken over by callback.
+     *
+     * @param takeoverCallback Callback.
+     */
+    public void onTakeover(Consumer<String> takeoverCallback) {
+        takeover = takeoverCallback;
+    }
+
+    /**
+     * Stop heartbeat, lease of node expires after that.
+     */
+    @Override
+    public void close() {
+        heartbeatService.shutdownNow();
+    }
+
+    /**
+     * Claim file by moving it to claim directory of node.
+     * File which is not completely written is not moved and is reported as open, so it is claimed again after retry
+     * delay.
+     *
+     * @param file File found in monitor directory.
+     * @return Claim with claimed file, without file if file was claimed by another node, is not completely written
+     * or node lost its lease.
+     */
+    @Override
+    public FileClaim claim(Path file) {
+        if (leaseLost || System.currentTimeMillis() - lastHeartbeat > leaseTimeout) {
+            logger.warn(String.format("Node %s does not hold lease, file %s is not claimed", nodeId, file));
+            return FileClaim.notClaimed();
+        }
+        if (!stability.isStable(file)) {
+            return FileClaim.open();
+        }
+        Path claimed = claimDir.resolve(getRelativePath(file));
+        try {
+            // Rename replaces existing file silently, file with the same path is claimed when previous one is processed
+            if (Files.exists(claimed)) {
+                logger.warn(String.format("File %s is already claimed by node %s", claimed, nodeId));
+                return FileClaim.notClaimed();
+            }
+            Files.createDirectories(claimed.getParent());
+            Files.move(file, claimed, StandardCopyOption.ATOMIC_MOVE);
+        } catch (NoSuchFileException e) {
+            return FileClaim.notClaimed();
+        } catch (IOException e) {
+            logger.error(String.format("Could not claim file %s", file));
+            logger.error(e.getMessage(), e);
+            return FileClaim.notClaimed();
+        }
+        for (Path companion : stability.getCompanionFiles(file)) {
+            try {
+                Files.move(companion, claimDir.resolve(getRelativePath(companion)), StandardCopyOption.ATOMIC_MOVE);
+            } catch (IOException e) {
+                logger.warn(String.format("Could not move %s with claimed file: %s", companion, e.getMessage()));
+            }
+        }
+        return FileClaim.claimed(claimed);
+    }
+
+    /**
+     * Renew own lease and reclaim files of dead nodes.
+     */
+    private void heartbeat() {
+        try {
+            if (!Files.exists(lease) && !reacquireLease()) {
+                return;
+            }
+            renewLease();
+            try (DirectoryStream<Path> leases = Files.newDirectoryStream(claimRoot, "*" + LEASE_SUFFIX)) {
+                for (Path otherLease : leases) {
+                    if (!otherLease.equals(lease) && isExpired(otherLease)) {
+                        reclaim(otherLease);
+                    }
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            logger.error("Error while heartbeat");
+            logger.error(e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Take lease again after it was taken over by another node. Files claimed before are processed by that node,
+     * so lease is taken only when takeover is finished.
+     *
+     * @return True if lease is taken.
+     * @throws IOException
+     */
+    private boolean reacquireLease() throws IOException {
+        if (!leaseLost) {
+            leaseLost = true;
+            logger.error(String.format("Lease of node %s was reclaimed by another node", nodeId));
+        }
+        try (DirectoryStream<Path> markers = Files.newDirectoryStream(claimRoot,
+                lease.getFileName().toString() + RECLAIM_SUFFIX + "*")) {
+            if (markers.iterator().hasNext()) {
+                return false;
+            }
+        }
+        Files.createDirectories(claimDir);
+        renewLease();
+        leaseLost = false;
+        logger.warn(String.format("Node %s took its lease again", nodeId));
+        return true;
+    }
+
+    /**
+     * Take over files of dead node. Only one node could rename expired lease, so only one node takes over the files.
+     *
+     * @param deadLease Expired lease.
+     * @throws IOException
+     */
+    private void reclaim(Path deadLease) throws IOException {
+        String leaseName = deadLease.getFileName().toString();
+        String deadNodeId = leaseName.substring(0, leaseName.length() - LEASE_SUFFIX.length());
+        Path reclaimMarker = claimRoot.resolve(leaseName + RECLAIM_SUFFIX + nodeId);
+        try {
+            Files.move(deadLease, reclaimMarker, StandardCopyOption.ATOMIC_MOVE);
+        } catch (NoSuchFileException e) {
+            return;
+        }
+        logger.warn(String.format("Lease of node %s is expired, node %s takes over its files", deadNodeId, nodeId));
+        takeover.accept(deadNodeId);
+        Path deadTxDir = txRoot.resolve(deadNodeId);
+        CompletableFuture<Void> recovered = Files.isDirectory(deadTxDir)
+                ? recovery.apply(tx.adoptTransactions(deadTxDir.toString()))
+                : CompletableFuture.completedFuture(null);
+        Path deadClaimDir = claimRoot.resolve(deadNodeId);
+        List<Path> deadClaimed = Files.isDirectory(deadClaimDir) ? getClaimedFiles(deadClaimDir) : new ArrayList<>();
+        recovered.whenComplete((result, e) -> {
+            returnClaimedFiles(deadClaimDir, deadClaimed);
+            try {
+                removeEmptyDirectories(deadClaimDir);
+                Files.deleteIfExists(reclaimMarker);
+            } catch (IOException ex) {
+                logger.error(String.format("Could not remove claim directory of node %s", deadNodeId));
+                logger.error(ex.getMessage(), ex);
+            }
+        });
+    }
+
+    /**
+     * Get files claimed to directory, including files of subdirectories.
+     *
+     * @param dir Claim directory.
+     * @return Claimed files.
+     * @throws IOException
+     */
+    private List<Path> getClaimedFiles(Path dir) throws IOException {
+        try (Stream<Path> files = Files.walk(dir)) {
+            return files.filter(Files::isRegularFile).collect(Collectors.toList());
+        }
+    }
+
+    /**
+     * Return claimed files to their directories of monitor directory, files moved by recovery are skipped.
+     * File is not returned, if monitor directory already has file with the same path.
+     *
+     * @param dir   Claim directory.
+     * @param files Claimed files.
+     */
+    private void returnClaimedFiles(Path dir, List<Path> files) {
+        for (Path file : files) {
+            Path target = monitorDir.resolve(dir.relativize(file));
+            try {
+                if (Files.exists(target)) {
+                    logger.error(String.format("Could not return claimed file %s, file %s already exists", file, target));
+                    continue;
+                }
+                Files.createDirectories(target.getParent());
+                Files.move(file, target, StandardCopyOption.ATOMIC_MOVE);
+            } catch (NoSuchFileException e) {
+                // File was processed by recovery
+            } catch (IOException e) {
+                logger.error(String.format("Could not return claimed file %s to monitor directory", file));
+                logger.error(e.getMessage(), e);
+            }
+        }
+    }
+
+    /**
+     * Get path of file relative to monitor directory.
+     *
+     * @param file File of monitor directory.
+     * @return Relative path, file name if file is outside of monitor directory.
+     */
+    private Path getRelativePath(Path file) {
+        Path absolute = file.toAbsolutePath().normalize();
+        return absolute.startsWith(monitorDir) ? monitorDir.relativize(absolute) : absolute.getFileName();
+    }
+
+    /**
+     * Remove directory tree, if it has no files.
+     *
+     * @param dir Directory.
+     * @throws IOException
+     */
+    private static void removeEmptyDirectories(Path dir) throws IOException {
+        if (!Files.isDirectory(dir)) {
+            return;
+        }
+        List<Path> dirs;
+        try (Stream<Path> paths = Files.walk(dir)) {
+            dirs = paths.filter(Files::isDirectory).sorted((a, b) -> b.getNameCount() - a.getNameCount())
+                    .collect(Collectors.toList());
+        }
+        for (Path subDir : dirs) {
+            try {
+                Files.deleteIfExists(subDir);
+            } catch (DirectoryNotEmptyException e) {
+                logger.warn(String.format("Claim directory %s is not empty", subDir));
+            }
+        }
+    }
+
+    /**
+     * Check if lease is expired.
+     *
+     * @param otherLease Lease.
+     * @return Result of check.
+     */
+    private boolean isExpired(Path otherLease) {
+        try {
+            return System.currentTimeMillis() - Files.getLastModifiedTime(otherLease).toMillis() > leaseTimeout;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Create or touch own lease.
+     *
+     * @throws IOException
+     */
+    private void renewLease() throws IOException {
+        long now = System.currentTimeMillis();
+        if (!Files.exists(lease)) {
+            Files.createFile(lease);
+        }
+        Files.setLastModifiedTime(lease, FileTime.fromMillis(now));
+        lastHeartbeat = now;
+    }
+}
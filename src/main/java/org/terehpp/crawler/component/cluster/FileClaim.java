@@ -0,0 +1,65 @@
+package org.terehpp.crawler.component.cluster;
+
+import java.nio.file.Path;
+import java.util.Optional;
+
+/**
+ * Result of file claim.
+ */
+public final class FileClaim {
+    private final static FileClaim NOT_CLAIMED = new FileClaim(null, false);
+    private final static FileClaim OPEN = new FileClaim(null, true);
+    private final Path file;
+    private final boolean open;
+
+    private FileClaim(Path claimedFile, boolean notWritten) {
+        file = claimedFile;
+        open = notWritten;
+    }
+
+    /**
+     * Get claim of file.
+     *
+     * @param file File to process.
+     * @return Claim.
+     */
+    public static FileClaim claimed(Path file) {
+        return new FileClaim(file, false);
+    }
+
+    /**
+     * Get result of file, which was claimed by somebody else or disappeared.
+     *
+     * @return Result.
+     */
+    public static FileClaim notClaimed() {
+        return NOT_CLAIMED;
+    }
+
+    /**
+     * Get result of file, which is not completely written yet, so it should be claimed again later.
+     *
+     * @return Result.
+     */
+    public static FileClaim open() {
+        return OPEN;
+    }
+
+    /**
+     * Get file to process.
+     *
+     * @return File, empty if file was not claimed.
+     */
+    public Optional<Path> getFile() {
+        return Optional.ofNullable(file);
+    }
+
+    /**
+     * Check if file was not claimed, because it is not completely written yet.
+     *
+     * @return Result of check.
+     */
+    public boolean isOpen() {
+        return open;
+    }
+}
@@ -0,0 +1,17 @@
+package org.terehpp.crawler.component.cluster;
+
+import java.nio.file.Path;
+
+/**
+ * Claim of file before processing.
+ */
+public interface FileClaimer {
+    /**
+     * Claim file.
+     *
+     * @param file File found in monitor directory.
+     * @return Claim with file to process, without file if file was claimed by somebody else or is not completely
+     * written yet.
+     */
+    FileClaim claim(Path file);
+}
@@ -0,0 +1,13 @@
+package org.terehpp.crawler.component.cluster;
+
+import java.nio.file.Path;
+
+/**
+ * Claimer of single node mode, file is processed in place.
+ */
+public class LocalFileClaimer implements FileClaimer {
+    @Override
+    public FileClaim claim(Path file) {
+        return FileClaim.claimed(file);
+    }
+}
@@ -0,0 +1,57 @@
+package org.terehpp.crawler.component.dedup;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Hash of file content, first 128 bits of SHA-256 digest.
+ */
+public final class ContentHash {
+    private final long high;
+    private final long low;
+
+    public ContentHash(long high, long low) {
+        this.high = high;
+        this.low = low;
+    }
+
+    /**
+     * Create hash from digest.
+     *
+     * @param digest Digest, at least 16 bytes.
+     * @return Hash.
+     */
+    public static ContentHash of(byte[] digest) {
+        ByteBuffer buffer = ByteBuffer.wrap(digest);
+        return new ContentHash(buffer.getLong(0), buffer.getLong(8));
+    }
+
+    public long getHigh() {
+        return high;
+    }
+
+    public long getLow() {
+        return low;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof ContentHash)) {
+            return false;
+        }
+        ContentHash that = (ContentHash) o;
+        return high == that.high && low == that.low;
+    }
+
+    @Override
+    public int hashCode() {
+        return Long.hashCode(high ^ low);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%016x%016x", high, low);
+    }
+}
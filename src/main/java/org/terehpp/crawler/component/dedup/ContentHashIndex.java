@@ -0,0 +1,121 @@
+package org.terehpp.crawler.component.dedup;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Persistent index of content hashes. Hashes are stored in memory mapped segments out of java heap, Bloom filter
+ * in front of segments answers most lookups of new content without probing segment.
+ * Hash is put to Bloom filter before it is put to segment, so filter never misses stored hash.
+ */
+public class ContentHashIndex implements Closeable {
+    private final static Log logger = LogFactory.getLog(ContentHashIndex.class);
+    private final static String BLOOM_FILE = "bloom";
+    private final static String SEGMENT_PREFIX = "seg-";
+    private final static long MIN_SEGMENT_CAPACITY = 1024;
+    private final HashIndexSegment[] segments;
+    private final MappedBloomFilter bloom;
+
+    /**
+     * Constructor.
+     *
+     * @param indexDir      Directory of index, created if it does not exist.
+     * @param segmentCount  Count of segments, segments are locked independently.
+     * @param expectedCount Expected count of hashes, filter and segments are sized by it.
+     * @param bitsPerHash   Bits of Bloom filter per hash.
+     * @throws IOException
+     */
+    public ContentHashIndex(Path indexDir, int segmentCount, long expectedCount, int bitsPerHash) throws IOException {
+        Files.createDirectories(indexDir);
+        long perSegment = (long) Math.ceil(expectedCount / (double) segmentCount / 0.75);
+        long capacity = Math.max(MIN_SEGMENT_CAPACITY, Long.highestOneBit(Math.max(1, perSegment - 1)) << 1);
+        capacity = Math.min(capacity, HashIndexSegment.MAX_CAPACITY);
+        segments = new HashIndexSegment[segmentCount];
+        for (int i = 0; i < segmentCount; i++) {
+            segments[i] = new HashIndexSegment(indexDir, String.format("%s%02d", SEGMENT_PREFIX, i), capacity);
+        }
+        int hashCount = Math.max(1, (int) Math.round(bitsPerHash * Math.log(2)));
+        MappedBloomFilter filter = new MappedBloomFilter(indexDir.resolve(BLOOM_FILE),
+                Math.max(64, expectedCount * bitsPerHash), hashCount);
+        if (filter.isCreated()) {
+            // Filter is filled before it is assigned, so this does not escape from constructor
+            long count = 0;
+            for (HashIndexSegment segment : segments) {
+                segment.forEach(filter::put);
+                count += segment.size();
+            }
+            filter.force();
+            logger.info(String.format("Bloom filter of hash index %s is built for %d hashes", indexDir, count));
+        }
+        bloom = filter;
+    }
+
+    /**
+     * Check if content hash is stored.
+     *
+     * @param hash Hash.
+     * @return Result of check.
+     */
+    public boolean contains(ContentHash hash) {
+        long low = getLow(hash);
+        return bloom.mightContain(hash.getHigh(), low) && getSegment(hash).contains(hash.getHigh(), low);
+    }
+
+    /**
+     * Store content hash.
+     *
+     * @param hash Hash.
+     * @return True if hash was stored, false if it was already stored or could not be stored.
+     */
+    public boolean add(ContentHash hash) {
+        long low = getLow(hash);
+        bloom.put(hash.getHigh(), low);
+        try {
+            return getSegment(hash).add(hash.getHigh(), low);
+        } catch (IOException e) {
+            logger.error(String.format("Could not add hash %s to index", hash));
+            logger.error(e.getMessage(), e);
+            return false;
+        }
+    }
+
+    /**
+     * Get count of stored hashes.
+     *
+     * @return Count.
+     */
+    public long size() {
+        long size = 0;
+        for (HashIndexSegment segment : segments) {
+            size += segment.size();
+        }
+        return size;
+    }
+
+    /**
+     * Write index to disk.
+     */
+    @Override
+    public void close() {
+        for (HashIndexSegment segment : segments) {
+            segment.force();
+        }
+        bloom.force();
+    }
+
+    private HashIndexSegment getSegment(ContentHash hash) {
+        return segments[(int) Long.remainderUnsigned(hash.getHigh(), segments.length)];
+    }
+
+    /**
+     * Zero hash marks empty slot of segment, so hash with zero bits is stored with changed low bits.
+     */
+    private static long getLow(ContentHash hash) {
+        return hash.getHigh() == 0 && hash.getLow() == 0 ? 1 : hash.getLow();
+    }
+}
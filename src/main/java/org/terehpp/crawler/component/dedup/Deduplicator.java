@@ -0,0 +1,115 @@
+package org.terehpp.crawler.component.dedup;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * Detection of files with already processed content.
+ * Content which is processed at the moment is held in memory, so file with the same content waits until the first
+ * file is processed, and then it is duplicate only if the first file was inserted.
+ */
+public class Deduplicator {
+    private final static String ALGORITHM = "SHA-256";
+    private final static int BUFFER_SIZE = 64 * 1024;
+    private final ContentHashIndex index;
+    private final Map<ContentHash, CountDownLatch> inFlight = new ConcurrentHashMap<>();
+    private final ThreadLocal<MessageDigest> digests = ThreadLocal.withInitial(() -> {
+        try {
+            return MessageDigest.getInstance(ALGORITHM);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    });
+    private final ThreadLocal<ByteBuffer> buffers = ThreadLocal.withInitial(() -> ByteBuffer.allocateDirect(BUFFER_SIZE));
+
+    /**
+     * Constructor.
+     *
+     * @param hashIndex Index of processed content.
+     */
+    public Deduplicator(ContentHashIndex hashIndex) {
+        index = hashIndex;
+    }
+
+    /**
+     * Hash content of file.
+     *
+     * @param file File.
+     * @return Hash.
+     * @throws IOException
+     */
+    public ContentHash hash(String file) throws IOException {
+        MessageDigest digest = digests.get();
+        ByteBuffer buffer = buffers.get();
+        digest.reset();
+        try (FileChannel channel = FileChannel.open(Paths.get(file), StandardOpenOption.READ)) {
+            buffer.clear();
+            while (channel.read(buffer) >= 0) {
+                buffer.flip();
+                digest.update(buffer);
+                buffer.clear();
+            }
+        }
+        return ContentHash.of(digest.digest());
+    }
+
+    /**
+     * Check if content was processed. If content is not duplicate, it is held by caller until {@link #finish}
+     * is called, other callers with the same content wait.
+     *
+     * @param hash Hash of content.
+     * @return Result of check.
+     */
+    public boolean isDuplicate(ContentHash hash) {
+        CountDownLatch own = new CountDownLatch(1);
+        while (true) {
+            if (index.contains(hash)) {
+                return true;
+            }
+            CountDownLatch other = inFlight.putIfAbsent(hash, own);
+            if (other == null) {
+                // Holder could finish between check and put
+                if (index.contains(hash)) {
+                    finish(hash);
+                    return true;
+                }
+                return false;
+            }
+            try {
+                other.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException(String.format("Interrupted while waiting for content %s", hash), e);
+            }
+        }
+    }
+
+    /**
+     * Store content as processed.
+     *
+     * @param hash Hash of content.
+     */
+    public void commit(ContentHash hash) {
+        index.add(hash);
+    }
+
+    /**
+     * Release content held by {@link #isDuplicate}.
+     *
+     * @param hash Hash of content.
+     */
+    public void finish(ContentHash hash) {
+        CountDownLatch latch = inFlight.remove(hash);
+        if (latch != null) {
+            latch.countDown();
+        }
+    }
+}
@@ -0,0 +1,8 @@
+package org.terehpp.crawler.component.dedup;
+
+/**
+ * Consumer of hashes stored in index.
+ */
+interface HashConsumer {
+    void accept(long high, long low);
+}
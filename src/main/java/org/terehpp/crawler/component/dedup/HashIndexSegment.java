@@ -0,0 +1,299 @@
+package org.terehpp.crawler.component.dedup;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Segment of hash index: open addressing hash table with linear probing in memory mapped file, so it is kept
+ * out of java heap and survives restarts. Empty slot is zero hash.
+ * When segment is full, it is rehashed to a new file of double capacity, file name contains capacity, so file of
+ * the previous generation is never replaced while it is mapped. Header is completed after rehash, so segment file
+ * is valid only if rehash was finished.
+ */
+class HashIndexSegment {
+    private final static Log logger = LogFactory.getLog(HashIndexSegment.class);
+    private final static int MAGIC = 0x43484958;
+    private final static int HEADER_SIZE = 16;
+    private final static int SIZE_OFFSET = 8;
+    private final static int SLOT_SIZE = 16;
+    private final static double MAX_LOAD = 0.75;
+    /**
+     * Maximum capacity, mapped file of segment is limited to 1 GB.
+     */
+    final static long MAX_CAPACITY = 1L << 26;
+    private final Path dir;
+    private final String name;
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private MappedByteBuffer buffer;
+    private long capacity;
+    private long size;
+
+    /**
+     * Open segment, the latest valid generation is used.
+     *
+     * @param indexDir        Directory of index.
+     * @param segmentName     Name of segment.
+     * @param initialCapacity Capacity of new segment, power of two.
+     * @throws IOException
+     */
+    HashIndexSegment(Path indexDir, String segmentName, long initialCapacity) throws IOException {
+        dir = indexDir;
+        name = segmentName;
+        Path latest = null;
+        long latestCapacity = 0;
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(dir, name + ".*")) {
+            for (Path file : files) {
+                long fileCapacity = getCapacity(file);
+                if (fileCapacity > latestCapacity && isValid(file)) {
+                    latest = file;
+                    latestCapacity = fileCapacity;
+                }
+            }
+        }
+        if (latest != null) {
+            capacity = latestCapacity;
+            buffer = map(latest, getLength(capacity));
+            size = buffer.getLong(SIZE_OFFSET);
+        } else {
+            capacity = initialCapacity;
+            buffer = create(capacity);
+        }
+        deleteOldGenerations();
+    }
+
+    /**
+     * Check if hash is stored in segment.
+     *
+     * @param high High bits of hash.
+     * @param low  Low bits of hash.
+     * @return Result of check.
+     */
+    boolean contains(long high, long low) {
+        lock.readLock().lock();
+        try {
+            return find(buffer, capacity, high, low) >= 0;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Add hash to segment.
+     *
+     * @param high High bits of hash.
+     * @param low  Low bits of hash.
+     * @return True if hash was added, false if it is already stored.
+     * @throws IOException Occurred when segment could not grow.
+     */
+    boolean add(long high, long low) throws IOException {
+        lock.writeLock().lock();
+        try {
+            long slot = find(buffer, capacity, high, low);
+            if (slot >= 0) {
+                return false;
+            }
+            if (size + 1 > capacity * MAX_LOAD) {
+                if (capacity >= MAX_CAPACITY) {
+                    throw new IOException(String.format("Segment %s of hash index is full", name));
+                }
+                grow();
+                slot = find(buffer, capacity, high, low);
+            }
+            put(buffer, -1 - slot, high, low);
+            size++;
+            buffer.putLong(SIZE_OFFSET, size);
+            return true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Pass all stored hashes to consumer.
+     *
+     * @param consumer Consumer.
+     */
+    void forEach(HashConsumer consumer) {
+        lock.readLock().lock();
+        try {
+            for (long slot = 0; slot < capacity; slot++) {
+                long high = getHigh(buffer, slot);
+                long low = getLow(buffer, slot);
+                if (high != 0 || low != 0) {
+                    consumer.accept(high, low);
+                }
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    long size() {
+        return size;
+    }
+
+    /**
+     * Write changes to disk.
+     */
+    void force() {
+        lock.writeLock().lock();
+        try {
+            buffer.force();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Rehash segment to new generation of double capacity.
+     *
+     * @throws IOException
+     */
+    private void grow() throws IOException {
+        long newCapacity = capacity * 2;
+        Path file = getFile(newCapacity);
+        Files.deleteIfExists(file);
+        MappedByteBuffer target = map(file, getLength(newCapacity));
+        for (long slot = 0; slot < capacity; slot++) {
+            long high = getHigh(buffer, slot);
+            long low = getLow(buffer, slot);
+            if (high != 0 || low != 0) {
+                put(target, -1 - find(target, newCapacity, high, low), high, low);
+            }
+        }
+        target.putLong(SIZE_OFFSET, size);
+        target.force();
+        target.putInt(0, MAGIC);
+        target.force();
+        buffer.force();
+        buffer = target;
+        capacity = newCapacity;
+        deleteOldGenerations();
+        if (logger.isDebugEnabled()) {
+            logger.debug(String.format("Segment %s of hash index is grown to %d slots", name, capacity));
+        }
+    }
+
+    /**
+     * Create new segment file.
+     *
+     * @param newCapacity Capacity.
+     * @return Mapped file.
+     * @throws IOException
+     */
+    private MappedByteBuffer create(long newCapacity) throws IOException {
+        MappedByteBuffer created = map(getFile(newCapacity), getLength(newCapacity));
+        created.putLong(SIZE_OFFSET, 0);
+        created.putInt(0, MAGIC);
+        created.force();
+        return created;
+    }
+
+    /**
+     * Delete files of previous generations, file could not be deleted while it is mapped on some systems,
+     * so it will be deleted on the next start.
+     */
+    private void deleteOldGenerations() {
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(dir, name + ".*")) {
+            for (Path file : files) {
+                if (getCapacity(file) != capacity) {
+                    try {
+                        Files.deleteIfExists(file);
+                    } catch (IOException e) {
+                        logger.debug(String.format("Could not delete old segment %s: %s", file, e.getMessage()));
+                    }
+                }
+            }
+        } catch (IOException e) {
+            logger.warn(String.format("Could not list segments of hash index: %s", e.getMessage()));
+        }
+    }
+
+    /**
+     * Find slot of hash.
+     *
+     * @return Slot of hash, or (-1 - slot) of empty slot where hash should be put.
+     */
+    private static long find(MappedByteBuffer table, long tableCapacity, long high, long low) {
+        long mask = tableCapacity - 1;
+        long slot = low & mask;
+        while (true) {
+            long slotHigh = getHigh(table, slot);
+            long slotLow = getLow(table, slot);
+            if (slotHigh == high && slotLow == low) {
+                return slot;
+            }
+            if (slotHigh == 0 && slotLow == 0) {
+                return -1 - slot;
+            }
+            slot = (slot + 1) & mask;
+        }
+    }
+
+    private static void put(MappedByteBuffer table, long slot, long high, long low) {
+        int offset = (int) (HEADER_SIZE + slot * SLOT_SIZE);
+        table.putLong(offset, high);
+        table.putLong(offset + 8, low);
+    }
+
+    private static long getHigh(MappedByteBuffer table, long slot) {
+        return table.getLong((int) (HEADER_SIZE + slot * SLOT_SIZE));
+    }
+
+    private static long getLow(MappedByteBuffer table, long slot) {
+        return table.getLong((int) (HEADER_SIZE + slot * SLOT_SIZE + 8));
+    }
+
+    private Path getFile(long fileCapacity) {
+        return dir.resolve(name + "." + Long.numberOfTrailingZeros(fileCapacity));
+    }
+
+    private static long getLength(long fileCapacity) {
+        return HEADER_SIZE + fileCapacity * SLOT_SIZE;
+    }
+
+    /**
+     * Get capacity of segment by file name.
+     *
+     * @param file File.
+     * @return Capacity, 0 if name is wrong.
+     */
+    private static long getCapacity(Path file) {
+        String fileName = file.getFileName().toString();
+        try {
+            int bits = Integer.parseInt(fileName.substring(fileName.lastIndexOf('.') + 1));
+            return bits > 0 && bits < 63 ? 1L << bits : 0;
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    private static boolean isValid(Path file) throws IOException {
+        if (Files.size(file) != getLength(getCapacity(file))) {
+            return false;
+        }
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0, HEADER_SIZE).getInt(0) == MAGIC;
+        }
+    }
+
+    /**
+     * Map file, mapping is valid after channel is closed.
+     */
+    static MappedByteBuffer map(Path file, long length) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE)) {
+            return channel.map(FileChannel.MapMode.READ_WRITE, 0, length);
+        }
+    }
+}
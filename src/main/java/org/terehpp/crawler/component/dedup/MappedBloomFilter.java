@@ -0,0 +1,121 @@
+package org.terehpp.crawler.component.dedup;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Bloom filter in memory mapped file. Bit array is split to mapped chunks, so filter could be larger than 2 GB.
+ * Bit positions are taken by double hashing of content hash.
+ */
+class MappedBloomFilter {
+    private final static int MAGIC = 0x43484246;
+    private final static int HEADER_SIZE = 16;
+    private final static int CHUNK_SIZE = 1 << 30;
+    private final long bitCount;
+    private final int hashCount;
+    private final MappedByteBuffer[] chunks;
+    private final boolean created;
+
+    /**
+     * Open filter, filter is created again if file does not exist or has other size.
+     *
+     * @param file  File of filter.
+     * @param bits  Count of bits.
+     * @param count Count of hash functions.
+     * @throws IOException
+     */
+    MappedBloomFilter(Path file, long bits, int count) throws IOException {
+        bitCount = bits;
+        hashCount = count;
+        long length = HEADER_SIZE + (bits + 7) / 8;
+        boolean exists = Files.exists(file) && Files.size(file) == length;
+        if (exists) {
+            MappedByteBuffer header = map(file, 0, HEADER_SIZE);
+            exists = header.getInt(0) == MAGIC && header.getInt(4) == count && header.getLong(8) == bits;
+        }
+        if (!exists) {
+            Files.deleteIfExists(file);
+        }
+        created = !exists;
+        chunks = new MappedByteBuffer[(int) ((length + CHUNK_SIZE - 1) / CHUNK_SIZE)];
+        for (int i = 0; i < chunks.length; i++) {
+            long start = (long) i * CHUNK_SIZE;
+            chunks[i] = map(file, start, Math.min(CHUNK_SIZE, length - start));
+        }
+        if (created) {
+            chunks[0].putInt(4, count);
+            chunks[0].putLong(8, bits);
+            chunks[0].putInt(0, MAGIC);
+        }
+    }
+
+    /**
+     * Check if filter was created, so it should be filled from index.
+     *
+     * @return Result of check.
+     */
+    boolean isCreated() {
+        return created;
+    }
+
+    /**
+     * Check if hash might be added.
+     *
+     * @param high High bits of hash.
+     * @param low  Low bits of hash.
+     * @return False if hash was definitely not added.
+     */
+    boolean mightContain(long high, long low) {
+        for (int i = 0; i < hashCount; i++) {
+            long bit = getBit(high, low, i);
+            MappedByteBuffer chunk = chunks[(int) (getOffset(bit) / CHUNK_SIZE)];
+            if ((chunk.get((int) (getOffset(bit) % CHUNK_SIZE)) & (1 << (bit & 7))) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Add hash. Bits are set under lock, so concurrent adds do not lose bits of each other.
+     *
+     * @param high High bits of hash.
+     * @param low  Low bits of hash.
+     */
+    synchronized void put(long high, long low) {
+        for (int i = 0; i < hashCount; i++) {
+            long bit = getBit(high, low, i);
+            MappedByteBuffer chunk = chunks[(int) (getOffset(bit) / CHUNK_SIZE)];
+            int index = (int) (getOffset(bit) % CHUNK_SIZE);
+            chunk.put(index, (byte) (chunk.get(index) | (1 << (bit & 7))));
+        }
+    }
+
+    /**
+     * Write changes to disk.
+     */
+    synchronized void force() {
+        for (MappedByteBuffer chunk : chunks) {
+            chunk.force();
+        }
+    }
+
+    private long getBit(long high, long low, int i) {
+        return Math.floorMod(high + i * low, bitCount);
+    }
+
+    private static long getOffset(long bit) {
+        return HEADER_SIZE + (bit >>> 3);
+    }
+
+    private static MappedByteBuffer map(Path file, long position, long size) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE)) {
+            return channel.map(FileChannel.MapMode.READ_WRITE, position, size);
+        }
+    }
+}
@@ -0,0 +1,18 @@
+package org.terehpp.crawler.component.fileprocessor;
+
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Executor of all state machine commands by caller thread.
+ */
+public class DirectFileStateExecutor implements FileStateExecutor {
+    @Override
+    public CompletableFuture<FileOutcome> execute(FileState state) {
+        return CompletableFuture.completedFuture(state.execute());
+    }
+
+    @Override
+    public String toString() {
+        return "direct";
+    }
+}
@@ -1,5 +1,6 @@
 package org.terehpp.crawler.component.fileprocessor;
 
+import org.terehpp.crawler.component.dedup.ContentHash;
 import org.terehpp.crawler.model.DbEntity;
 
 /**
@@ -10,6 +11,10 @@ public class FileData {
     private long id;
     private DbEntity entity;
     private String moveDirectory;
+    private ContentHash contentHash;
+    private boolean container;
+    // Count of container entries, which are already processed
+    private long offset;
 
     public FileData(String file, long id, DbEntity entity, String moveDir) {
         this.file = file;
@@ -49,4 +54,28 @@ public class FileData {
     public void setMoveDirectory(String moveDirectory) {
         this.moveDirectory = moveDirectory;
     }
+
+    public ContentHash getContentHash() {
+        return contentHash;
+    }
+
+    public void setContentHash(ContentHash contentHash) {
+        this.contentHash = contentHash;
+    }
+
+    public boolean isContainer() {
+        return container;
+    }
+
+    public void setContainer(boolean container) {
+        this.container = container;
+    }
+
+    public long getOffset() {
+        return offset;
+    }
+
+    public void setOffset(long offset) {
+        this.offset = offset;
+    }
 }
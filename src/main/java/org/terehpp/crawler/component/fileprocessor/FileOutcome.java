@@ -0,0 +1,31 @@
+package org.terehpp.crawler.component.fileprocessor;
+
+/**
+ * Outcome of file processing.
+ */
+public enum FileOutcome {
+    /**
+     * File was processed and moved to success directory.
+     */
+    SUCCESS,
+    /**
+     * File does not match template and was moved to fail directory.
+     */
+    FAILED,
+    /**
+     * File content was already processed, file was moved to duplicate directory without insert.
+     */
+    DUPLICATE,
+    /**
+     * File is still open by another process, it was not touched.
+     */
+    SKIPPED_OPEN,
+    /**
+     * File does not exist anymore.
+     */
+    SKIPPED_MISSING,
+    /**
+     * Unexpected error while processing.
+     */
+    ERROR
+}
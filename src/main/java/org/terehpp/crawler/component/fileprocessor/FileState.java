@@ -1,6 +1,7 @@
 package org.terehpp.crawler.component.fileprocessor;
 
 import java.util.*;
+import java.util.function.LongPredicate;
 
 /**
  * File state.
@@ -15,17 +16,52 @@ public interface FileState {
      */
     FileState init(FileData initState, List<FileStateMachineCommand> comands);
 
+    /**
+     * Release what is held for file, when processing failed, e.g. content waited for by files with the same content.
+     */
+    void abort();
+
     /**
      * Start execute commands.
+     *
+     * @return Outcome of processing.
+     */
+    FileOutcome execute();
+
+    /**
+     * Check file before commands are executed, to execute commands step by step.
+     *
+     * @return Outcome if file should not be processed, empty if commands could be executed.
+     */
+    Optional<FileOutcome> begin();
+
+    /**
+     * Get next command to execute.
+     *
+     * @return Command, empty if all commands are executed.
+     */
+    Optional<FileStateMachineCommand> nextCommand();
+
+    /**
+     * Execute next command.
+     */
+    void executeCommand();
+
+    /**
+     * Get outcome of executed commands.
+     *
+     * @return Outcome.
      */
-    void execute();
+    FileOutcome getOutcome();
 
     /**
      * Restore state of state machine from transaction fie.
      *
      * @param transactionFile Transaction file.
      * @param machineCommands Machine commands to execute.
+     * @param inserted        Check if entry of transaction is inserted into db.
      * @return State.
      */
-    Optional<FileState> restore(String transactionFile, List<FileStateMachineCommand> machineCommands);
+    Optional<FileState> restore(String transactionFile, List<FileStateMachineCommand> machineCommands,
+                                LongPredicate inserted);
 }
@@ -0,0 +1,16 @@
+package org.terehpp.crawler.component.fileprocessor;
+
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Executor of state machine commands.
+ */
+public interface FileStateExecutor {
+    /**
+     * Execute commands of state machine.
+     *
+     * @param state State machine.
+     * @return Future of processing outcome.
+     */
+    CompletableFuture<FileOutcome> execute(FileState state);
+}
@@ -4,31 +4,49 @@ import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.terehpp.crawler.component.analyzer.Analyzer;
 import org.terehpp.crawler.component.analyzer.AnalyzerResult;
+import org.terehpp.crawler.component.analyzer.ContainerAnalyzer;
+import org.terehpp.crawler.component.analyzer.ContainerReader;
+import org.terehpp.crawler.component.dedup.ContentHash;
+import org.terehpp.crawler.component.dedup.Deduplicator;
 import org.terehpp.crawler.component.transaction.RestoredState;
 import org.terehpp.crawler.component.transaction.TransactionManager;
 import org.terehpp.crawler.model.DbEntity;
 import org.terehpp.crawler.service.db.DbService;
 import org.terehpp.crawler.service.file.FileService;
+import org.terehpp.crawler.utils.DbHelper;
 import org.terehpp.crawler.utils.StringUtils;
 
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Optional;
+import java.util.function.LongPredicate;
 
 /**
  * File state machine.
+ * File could be container of entries, if analyzer supports it. Container is read incrementally by INSERT command,
+ * entries are inserted by batches and each batch has its own transaction record with range of container entries,
+ * so processing of container is restored from the last inserted batch.
  */
 public class FileStateMachine implements FileState {
     private FileData state;
     private List<FileStateMachineCommand> commands = new ArrayList<>();
     private final static Log logger = LogFactory.getLog(FileStateMachine.class);
+    public final static int DEFAULT_CONTAINER_BATCH_SIZE = 500;
     private final TransactionManager tx;
     private final String successDir;
     private final String failDir;
     private final Analyzer analyzer;
     private final DbService dbService;
     private final FileService fileService;
+    private final Deduplicator deduplicator;
+    private final String duplicateDir;
+    private final FileStateMetrics metrics;
+    private final int containerBatchSize;
     private int currentCommand = 0;
+    private boolean moved = true;
+    // Start of file processing, 0 if it is not measured
+    private long fileStart;
 
     /**
      * Constructor.
@@ -43,12 +61,38 @@ public class FileStateMachine implements FileState {
     public FileStateMachine(String successDirectory, String failDirectory,
                             Analyzer fileAnalyzer, DbService dbSrv, FileService fileSrv,
                             TransactionManager transactionManager) {
+        this(successDirectory, failDirectory, fileAnalyzer, dbSrv, fileSrv, transactionManager, null, null,
+                FileStateMetrics.DISABLED, DEFAULT_CONTAINER_BATCH_SIZE);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param successDirectory    Success directory.
+     * @param failDirectory       Fail directory.
+     * @param fileAnalyzer        File analyzer.
+     * @param dbSrv               Db service.
+     * @param fileSrv             File service.
+     * @param transactionManager  Transaction Manager.
+     * @param contentDeduplicator Deduplicator of file content, used by {@link FileStateMachineCommand#DEDUPLICATE}.
+     * @param duplicateDirectory  Directory of files with already processed content.
+     * @param stateMetrics        Latency of processing steps.
+     * @param containerBatch      Count of container entries inserted in one transaction.
+     */
+    public FileStateMachine(String successDirectory, String failDirectory,
+                            Analyzer fileAnalyzer, DbService dbSrv, FileService fileSrv,
+                            TransactionManager transactionManager, Deduplicator contentDeduplicator,
+                            String duplicateDirectory, FileStateMetrics stateMetrics, int containerBatch) {
         tx = transactionManager;
         successDir = successDirectory;
         failDir = failDirectory;
         analyzer = fileAnalyzer;
         dbService = dbSrv;
         fileService = fileSrv;
+        deduplicator = contentDeduplicator;
+        duplicateDir = duplicateDirectory;
+        metrics = stateMetrics;
+        containerBatchSize = containerBatch;
     }
 
     /**
@@ -60,117 +104,369 @@ public class FileStateMachine implements FileState {
      */
     @Override
     public FileState init(FileData initState, List<FileStateMachineCommand> machineCommands) {
+        cancelFile();
         currentCommand = 0;
         state = initState;
         commands = machineCommands;
         return this;
     }
 
+    /**
+     * Release what is held for file, when processing failed, e.g. content waited for by files with the same content.
+     */
+    @Override
+    public void abort() {
+        cancelFile();
+        if (state != null) {
+            finishContent();
+        }
+    }
+
     /**
      * Restore state of state machine from transaction fie.
      *
      * @param transactionFile Transaction file.
      * @param machineCommands Machine commands to execute.
+     * @param inserted        Check if entry of transaction is inserted into db.
      * @return State.
      */
-    public Optional<FileState> restore(String transactionFile, List<FileStateMachineCommand> machineCommands) {
+    public Optional<FileState> restore(String transactionFile, List<FileStateMachineCommand> machineCommands,
+                                       LongPredicate inserted) {
         commands = machineCommands;
         Optional<RestoredState> rs = tx.restore(transactionFile);
-        if (rs.isPresent()) {
-            String[] actionParts = rs.get().getAction().split("\\s");
-            if (actionParts.length < 3) {
-                return Optional.empty();
-            }
-            FileStateMachineCommand lastCommand = null;
-            for (int i = 0; i < commands.size(); i++) {
-                FileStateMachineCommand command = commands.get(i);
-                if (command.name().equals(actionParts[0])) {
-                    lastCommand = command;
-                    currentCommand = i;
-                    break;
-                }
-            }
+        if (!rs.isPresent()) {
+            return Optional.empty();
+        }
+        Optional<TransactionAction> action = TransactionAction.parse(rs.get().getAction());
+        if (!action.isPresent()) {
+            return Optional.empty();
+        }
+        FileStateMachineCommand lastCommand = action.get().getCommand();
+        currentCommand = commands.indexOf(lastCommand);
+        if (currentCommand < 0) {
+            return Optional.empty();
+        }
 
-            if (lastCommand == null) {
+        long id = action.get().getId();
+        if (action.get().isBatch()) {
+            return restoreContainer(action.get(), inserted.test(id));
+        }
+        String moveDir = failDir;
+        if (!inserted.test(id)) {
+            return Optional.empty();
+        }
+        if (lastCommand == FileStateMachineCommand.INSERT) {
+            if (commands.size() >= (currentCommand + 1)) {
+                currentCommand++;
+                moveDir = successDir;
+            } else {
                 return Optional.empty();
             }
+        }
+        state = new FileData(action.get().getFile(), id, null, moveDir);
+        return Optional.of(this);
+    }
 
-            long id = 0;
-            String moveDir = failDir;
-            try {
-                id = Long.parseLong(actionParts[1]);
-                if (dbService.exist(id)) {
-                    if (lastCommand == FileStateMachineCommand.INSERT) {
-                        if (commands.size() >= (currentCommand + 1)) {
-                            currentCommand++;
-                            moveDir = successDir;
-                        } else {
-                            return Optional.empty();
-                        }
-                    }
-                } else {
-                    return Optional.empty();
-                }
-                StringBuilder fileNameBuilder = new StringBuilder();
-                for (int i = 2; i < actionParts.length; i++) {
-                    fileNameBuilder.append(actionParts[i]).append(" ");
-                }
-                state = new FileData(fileNameBuilder.toString(), id, null, moveDir);
-                return Optional.of(this);
-            } catch (NumberFormatException e) {
-                logger.error(e.getMessage(), e);
-                return Optional.empty();
-            }
+    /**
+     * Restore processing of container from batch of transaction log, INSERT command continues reading of container
+     * after the last inserted batch.
+     *
+     * @param action   Action of batch.
+     * @param inserted Result of check if batch is inserted.
+     * @return State, empty if no batch of container is inserted.
+     */
+    private Optional<FileState> restoreContainer(TransactionAction action, boolean inserted) {
+        long offset = inserted ? action.getTo() : action.getFrom();
+        if (action.getCommand() != FileStateMachineCommand.INSERT || offset == 0) {
+            return Optional.empty();
         }
-        return Optional.empty();
+        state = new FileData(action.getFile(), 0, null, null);
+        state.setContainer(true);
+        state.setOffset(offset);
+        return Optional.of(this);
     }
 
     /**
      * Start execute commands.
+     *
+     * @return Outcome of processing.
      */
     @Override
-    public void execute() {
+    public FileOutcome execute() {
+        Optional<FileOutcome> skipped = begin();
+        if (skipped.isPresent()) {
+            return skipped.get();
+        }
+        while (nextCommand().isPresent()) {
+            executeCommand();
+        }
+        return getOutcome();
+    }
+
+    /**
+     * Check file before commands are executed.
+     *
+     * @return Outcome if file should not be processed, empty if commands could be executed.
+     */
+    @Override
+    public Optional<FileOutcome> begin() {
         if (state == null || commands == null) {
-            return;
+            return Optional.of(FileOutcome.ERROR);
         }
         if (!fileService.exist(state.getFile())) {
             tx.removeLog(state.getFile());
-            return;
+            return Optional.of(FileOutcome.SKIPPED_MISSING);
         }
-        if (!fileService.isFileClosed(state.getFile())) {
-            logger.warn(String.format("Could no process file %s. It's already open.", state.getFile()));
-            return;
+        long checkStart = metrics.start(ProcessingStep.STABILITY_CHECK);
+        boolean closed = fileService.isFileClosed(state.getFile());
+        metrics.record(ProcessingStep.STABILITY_CHECK, checkStart);
+        if (!closed) {
+            if (logger.isDebugEnabled()) {
+                logger.debug(String.format("Could no process file %s. It's not completely written yet.", state.getFile()));
+            }
+            return Optional.of(FileOutcome.SKIPPED_OPEN);
         }
-        state.setId(dbService.getNextId());
-        for (int i = currentCommand; i < commands.size(); i++) {
-            FileStateMachineCommand command = commands.get(i);
-            if (command == FileStateMachineCommand.ANALYZE) {
-                AnalyzerResult analyzeRes = analyzer.analyze(state.getFile(), state.getId());
-                if (!analyzeRes.isError()) {
-                    state.setEntity((DbEntity) analyzeRes.getEntity());
+        // Restored state already has id of inserted entry, container entries get ids when they are read
+        if (state.getId() == 0 && !state.isContainer()) {
+            state.setId(dbService.getNextId());
+        }
+        moved = true;
+        cancelFile();
+        fileStart = metrics.start(ProcessingStep.FILE);
+        return Optional.empty();
+    }
+
+    /**
+     * Get next command to execute.
+     *
+     * @return Command, empty if all commands are executed.
+     */
+    @Override
+    public Optional<FileStateMachineCommand> nextCommand() {
+        return currentCommand < commands.size() ? Optional.of(commands.get(currentCommand)) : Optional.empty();
+    }
+
+    /**
+     * Execute next command.
+     */
+    @Override
+    public void executeCommand() {
+        FileStateMachineCommand command = commands.get(currentCommand++);
+        ProcessingStep step = ProcessingStep.of(command);
+        long start = metrics.start(step);
+        try {
+            executeCommand(command);
+        } catch (RuntimeException e) {
+            metrics.cancel(step);
+            throw e;
+        }
+        metrics.record(step, start);
+    }
+
+    /**
+     * Execute command.
+     *
+     * @param command Command.
+     */
+    private void executeCommand(FileStateMachineCommand command) {
+        if (command == FileStateMachineCommand.DEDUPLICATE) {
+            if (deduplicator != null) {
+                try {
+                    ContentHash hash = deduplicator.hash(state.getFile());
+                    if (deduplicator.isDuplicate(hash)) {
+                        state.setMoveDirectory(duplicateDir);
+                    } else {
+                        state.setContentHash(hash);
+                    }
+                } catch (IOException e) {
+                    logger.warn(String.format("Could not hash content of file %s: %s", state.getFile(), e.getMessage()));
+                }
+            }
+        } else if (command == FileStateMachineCommand.ANALYZE) {
+            if (isDuplicate()) {
+                return;
+            }
+            if (analyzer instanceof ContainerAnalyzer && ((ContainerAnalyzer<?>) analyzer).isContainer(state.getFile())) {
+                state.setContainer(true);
+                return;
+            }
+            AnalyzerResult analyzeRes = analyzer.analyze(state.getFile(), state.getId());
+            if (!analyzeRes.isError()) {
+                state.setEntity((DbEntity) analyzeRes.getEntity());
+            } else {
+                state.setEntity(null);
+                state.setMoveDirectory(failDir);
+                logger.error(String.format("Error while analyzation %s", analyzeRes.getErrorMsg()));
+            }
+        } else if (command == FileStateMachineCommand.INSERT) {
+            if (state.isContainer()) {
+                insertContainer();
+            } else if (state.getEntity() != null) {
+                Optional<Boolean> insertRes = insertInTransaction(TransactionAction.format(FileStateMachineCommand.INSERT,
+                        state.getId(), state.getFile()), () -> dbService.insert(state.getEntity()));
+                if (insertRes.isPresent()) {
+                    state.setMoveDirectory(successDir);
+                    if (deduplicator != null && state.getContentHash() != null) {
+                        deduplicator.commit(state.getContentHash());
+                    }
                 } else {
-                    state.setEntity(null);
                     state.setMoveDirectory(failDir);
+                }
+            }
+        } else if (command == FileStateMachineCommand.MOVE) {
+            if (StringUtils.isNotBlank(state.getMoveDirectory())) {
+                moved = fileService.removeFileTo(state.getFile(), state.getMoveDirectory());
+            }
+            tx.removeLog(state.getFile());
+            finishContent();
+        }
+    }
+
+    /**
+     * Read container from offset of state and insert its entries by batches.
+     * Invalid entries are skipped. If container is not well-formed, file is moved to fail directory, entries of
+     * inserted batches stay in db.
+     */
+    private void insertContainer() {
+        if (isDuplicate()) {
+            return;
+        }
+        List<DbEntity> batch = new ArrayList<>(containerBatchSize);
+        try (ContainerReader<?> reader = ((ContainerAnalyzer<?>) analyzer).open(state.getFile(), state.getOffset())) {
+            AnalyzerResult<?> analyzeRes;
+            while ((analyzeRes = reader.next()) != null) {
+                if (analyzeRes.isError()) {
                     logger.error(String.format("Error while analyzation %s", analyzeRes.getErrorMsg()));
+                } else {
+                    DbEntity entity = (DbEntity) analyzeRes.getEntity();
+                    entity.setId(dbService.getNextId());
+                    batch.add(entity);
                 }
-            } else if (command == FileStateMachineCommand.INSERT) {
-                if (state.getEntity() != null) {
-                    Optional<Boolean> insertRes = tx.execInTransaction(state.getFile(), String.format("INSERT %s %s", state.getId(), state.getFile()), (Void) -> {
-                        dbService.insert(state.getEntity());
-                        return true;
-                    });
-                    if (insertRes.isPresent()) {
-                        state.setMoveDirectory(successDir);
-                    } else {
-                        state.setMoveDirectory(failDir);
-                    }
+                if (batch.size() >= containerBatchSize && !insertBatch(batch, reader.getOffset())) {
+                    return;
                 }
-            } else if (command == FileStateMachineCommand.MOVE) {
-                if (StringUtils.isNotBlank(state.getMoveDirectory())) {
-                    fileService.removeFileTo(state.getFile(), state.getMoveDirectory());
+            }
+            if (!batch.isEmpty() && !insertBatch(batch, reader.getOffset())) {
+                return;
+            }
+        } catch (IOException e) {
+            logger.error(String.format("Error while reading container %s, entries before %d are processed",
+                    state.getFile(), state.getOffset()));
+            logger.error(e.getMessage(), e);
+            state.setMoveDirectory(failDir);
+            return;
+        }
+        state.setMoveDirectory(successDir);
+        if (deduplicator != null && state.getContentHash() != null) {
+            deduplicator.commit(state.getContentHash());
+        }
+    }
+
+    /**
+     * Insert batch of container entries in transaction, offset of state is moved after batch.
+     *
+     * @param batch Entries of batch, it is cleared after insert.
+     * @param to    Offset of container entry after batch.
+     * @return Result of insert, if entries were rejected by db file is moved to fail directory.
+     */
+    @SuppressWarnings("unchecked")
+    private boolean insertBatch(List<DbEntity> batch, long to) {
+        String action = TransactionAction.format(FileStateMachineCommand.INSERT, batch.get(0).getId(),
+                state.getOffset(), to, state.getFile());
+        Optional<Boolean> insertRes = insertInTransaction(action, () -> dbService.insertAll(batch));
+        if (!insertRes.isPresent()) {
+            state.setMoveDirectory(failDir);
+            return false;
+        }
+        state.setOffset(to);
+        batch.clear();
+        return true;
+    }
+
+    /**
+     * Execute insert in transaction of file. Data error of insert, e.g. entity rejected by db, does not break
+     * processing, it is reported as failed insert, so file is moved to fail directory instead of being processed again.
+     * Other errors, e.g. db is not available, are thrown, so file and its transaction log stay and file is retried.
+     *
+     * @param action Action identifier.
+     * @param insert Insert.
+     * @return Result of insert, empty if entities were rejected by db.
+     */
+    private Optional<Boolean> insertInTransaction(String action, Runnable insert) {
+        try {
+            return tx.execInTransaction(state.getFile(), action, (Void) -> {
+                long insertStart = metrics.start(ProcessingStep.DB_INSERT);
+                try {
+                    insert.run();
+                } catch (RuntimeException e) {
+                    metrics.cancel(ProcessingStep.DB_INSERT);
+                    throw e;
                 }
-                tx.removeLog(state.getFile());
+                metrics.record(ProcessingStep.DB_INSERT, insertStart);
+                return true;
+            });
+        } catch (RuntimeException e) {
+            if (!DbHelper.isDataError(e)) {
+                throw e;
             }
+            logger.error(String.format("Entities of file %s are rejected by db", state.getFile()));
+            logger.error(e.getMessage(), e);
+            return Optional.empty();
+        }
+    }
+
+    /**
+     * Check if content of file was already processed.
+     *
+     * @return Result of check.
+     */
+    private boolean isDuplicate() {
+        return duplicateDir != null && duplicateDir.equals(state.getMoveDirectory());
+    }
+
+    /**
+     * Stop measuring of file, which processing was not finished.
+     */
+    private void cancelFile() {
+        if (fileStart != 0) {
+            metrics.cancel(ProcessingStep.FILE);
+            fileStart = 0;
+        }
+    }
+
+    /**
+     * Release content of file, so files with the same content waiting for it could be checked.
+     */
+    private void finishContent() {
+        if (deduplicator != null && state.getContentHash() != null) {
+            deduplicator.finish(state.getContentHash());
+            state.setContentHash(null);
+        }
+    }
+
+    /**
+     * Get outcome of executed commands.
+     *
+     * @return Outcome.
+     */
+    @Override
+    public FileOutcome getOutcome() {
+        if (fileStart != 0) {
+            metrics.record(ProcessingStep.FILE, fileStart);
+            fileStart = 0;
+        }
+        if (!moved) {
+            return FileOutcome.ERROR;
+        }
+        if (successDir.equals(state.getMoveDirectory())) {
+            return FileOutcome.SUCCESS;
+        }
+        if (failDir.equals(state.getMoveDirectory())) {
+            return FileOutcome.FAILED;
+        }
+        if (isDuplicate()) {
+            return FileOutcome.DUPLICATE;
         }
+        return FileOutcome.ERROR;
     }
 }
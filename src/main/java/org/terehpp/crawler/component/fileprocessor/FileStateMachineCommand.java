@@ -4,6 +4,7 @@ package org.terehpp.crawler.component.fileprocessor;
  * Commands of file state machine.
  */
 public enum FileStateMachineCommand {
+    DEDUPLICATE,
     ANALYZE,
     INSERT,
     MOVE;
@@ -0,0 +1,72 @@
+package org.terehpp.crawler.component.fileprocessor;
+
+import org.terehpp.crawler.component.metrics.LatencyRecorder;
+
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * Latency of file processing steps, shared by all state machines.
+ */
+public class FileStateMetrics {
+    /**
+     * Metrics which record nothing.
+     */
+    public final static FileStateMetrics DISABLED = new FileStateMetrics(false);
+    private final Map<ProcessingStep, LatencyRecorder> recorders = new EnumMap<>(ProcessingStep.class);
+    private final boolean enabled;
+
+    public FileStateMetrics() {
+        this(true);
+    }
+
+    private FileStateMetrics(boolean enabledMetrics) {
+        enabled = enabledMetrics;
+        for (ProcessingStep step : ProcessingStep.values()) {
+            recorders.put(step, new LatencyRecorder());
+        }
+    }
+
+    /**
+     * Start step.
+     *
+     * @param step Step.
+     * @return Start time, to be passed to {@link #record}.
+     */
+    public long start(ProcessingStep step) {
+        return enabled ? recorders.get(step).start() : 0;
+    }
+
+    /**
+     * Finish step and record its latency.
+     *
+     * @param step       Step.
+     * @param startNanos Start time returned by {@link #start}.
+     */
+    public void record(ProcessingStep step, long startNanos) {
+        if (enabled) {
+            recorders.get(step).record(startNanos);
+        }
+    }
+
+    /**
+     * Finish step without recording.
+     *
+     * @param step Step.
+     */
+    public void cancel(ProcessingStep step) {
+        if (enabled) {
+            recorders.get(step).cancel();
+        }
+    }
+
+    /**
+     * Get recorders of steps.
+     *
+     * @return Recorders.
+     */
+    public Map<ProcessingStep, LatencyRecorder> getRecorders() {
+        return Collections.unmodifiableMap(recorders);
+    }
+}
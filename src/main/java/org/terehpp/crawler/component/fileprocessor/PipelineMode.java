@@ -0,0 +1,15 @@
+package org.terehpp.crawler.component.fileprocessor;
+
+/**
+ * Modes of state machine execution.
+ */
+public enum PipelineMode {
+    /**
+     * All commands are executed by worker thread.
+     */
+    DIRECT,
+    /**
+     * Each command is executed by its own stage.
+     */
+    STAGED
+}
@@ -0,0 +1,119 @@
+package org.terehpp.crawler.component.fileprocessor;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Stage of pipeline: pool of threads executing one command with bounded queue.
+ * If queue is full, caller waits until there is free place in queue.
+ * Threads of stage are daemon threads, stage is stopped by {@link #shutdown()}.
+ */
+public class PipelineStage implements PipelineStageMXBean {
+    private final FileStateMachineCommand command;
+    private final ThreadPoolExecutor executor;
+    private final LongAdder processed = new LongAdder();
+    private final LongAdder serviceTime = new LongAdder();
+
+    /**
+     * Constructor.
+     *
+     * @param stageCommand  Command executed by stage.
+     * @param threadCount   Thread count of stage.
+     * @param queueCapacity Capacity of stage queue.
+     */
+    public PipelineStage(FileStateMachineCommand stageCommand, int threadCount, int queueCapacity) {
+        command = stageCommand;
+        AtomicInteger threadNumber = new AtomicInteger();
+        String threadPrefix = "stage-" + command.name().toLowerCase() + "-";
+        executor = new ThreadPoolExecutor(threadCount, threadCount, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity),
+                task -> {
+                    Thread thread = new Thread(task, threadPrefix + threadNumber.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                },
+                (task, pool) -> {
+                    if (pool.isShutdown()) {
+                        throw new RejectedExecutionException(String.format("Stage %s is shut down", command));
+                    }
+                    try {
+                        pool.getQueue().put(task);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        throw new RejectedExecutionException(e);
+                    }
+                });
+    }
+
+    /**
+     * Execute command on stage, wait if queue of stage is full. Only command is included in service time,
+     * hand over to the next stage may wait for its queue and is done after command is measured.
+     *
+     * @param command  Command, returns true if it succeeded.
+     * @param handOver Action executed by the same thread after succeeded command.
+     */
+    public void execute(BooleanSupplier command, Runnable handOver) {
+        executor.execute(() -> {
+            long start = System.nanoTime();
+            boolean succeeded;
+            try {
+                succeeded = command.getAsBoolean();
+            } finally {
+                serviceTime.add(System.nanoTime() - start);
+                processed.increment();
+            }
+            if (succeeded) {
+                handOver.run();
+            }
+        });
+    }
+
+    /**
+     * Stop accepting commands, queued commands are still executed.
+     */
+    public void shutdown() {
+        executor.shutdown();
+    }
+
+    public FileStateMachineCommand getCommand() {
+        return command;
+    }
+
+    public int getThreadCount() {
+        return executor.getCorePoolSize();
+    }
+
+    public int getQueueDepth() {
+        return executor.getQueue().size();
+    }
+
+    public int getActiveCount() {
+        return executor.getActiveCount();
+    }
+
+    public long getProcessed() {
+        return processed.sum();
+    }
+
+    /**
+     * Get average time of command execution.
+     *
+     * @return Time in nanoseconds.
+     */
+    public long getAverageServiceTime() {
+        long count = processed.sum();
+        return count == 0 ? 0 : serviceTime.sum() / count;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s: threads=%d, queue=%d, processed=%d, service_time=%.1f ms",
+                command.name().toLowerCase(), getThreadCount(), getQueueDepth(), getProcessed(),
+                getAverageServiceTime() / 1000000.0);
+    }
+}
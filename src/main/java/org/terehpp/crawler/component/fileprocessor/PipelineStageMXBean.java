@@ -0,0 +1,21 @@
+package org.terehpp.crawler.component.fileprocessor;
+
+/**
+ * Statistics of pipeline stage, exposed over JMX.
+ */
+public interface PipelineStageMXBean {
+    int getThreadCount();
+
+    int getQueueDepth();
+
+    int getActiveCount();
+
+    long getProcessed();
+
+    /**
+     * Get average time of command execution.
+     *
+     * @return Time in nanoseconds.
+     */
+    long getAverageServiceTime();
+}
@@ -0,0 +1,45 @@
+package org.terehpp.crawler.component.fileprocessor;
+
+/**
+ * Steps of file processing, latency of each step is recorded separately.
+ */
+public enum ProcessingStep {
+    /**
+     * Check if file is completely written.
+     */
+    STABILITY_CHECK,
+    DEDUPLICATE,
+    ANALYZE,
+    /**
+     * Insert with transaction log.
+     */
+    INSERT,
+    /**
+     * Insert into db inside of transaction.
+     */
+    DB_INSERT,
+    MOVE,
+    /**
+     * Processing of file from check to the last command.
+     */
+    FILE;
+
+    /**
+     * Get step of command.
+     *
+     * @param command Command.
+     * @return Step.
+     */
+    public static ProcessingStep of(FileStateMachineCommand command) {
+        switch (command) {
+            case DEDUPLICATE:
+                return DEDUPLICATE;
+            case ANALYZE:
+                return ANALYZE;
+            case INSERT:
+                return INSERT;
+            default:
+                return MOVE;
+        }
+    }
+}
@@ -0,0 +1,111 @@
+package org.terehpp.crawler.component.fileprocessor;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.stream.Collectors;
+
+/**
+ * Staged execution of state machine (SEDA). Each command of state machine has its own stage with sized pool and
+ * bounded queue, after command is executed state machine is handed over to the stage of the next command.
+ * Check of file before commands is done by caller thread.
+ * When queue of the next stage is full, thread of previous stage waits, so the slowest stage limits the whole pipeline.
+ */
+public class StagedPipeline implements FileStateExecutor, Closeable {
+    private final Map<FileStateMachineCommand, PipelineStage> stages = new EnumMap<>(FileStateMachineCommand.class);
+
+    /**
+     * Constructor.
+     *
+     * @param commands      Commands of state machine, stage is created for each command.
+     * @param threadCounts  Thread count of each command stage.
+     * @param queueCapacity Capacity of stage queue.
+     */
+    public StagedPipeline(List<FileStateMachineCommand> commands, Map<FileStateMachineCommand, Integer> threadCounts,
+                          int queueCapacity) {
+        for (FileStateMachineCommand command : commands) {
+            stages.put(command, new PipelineStage(command, threadCounts.get(command), queueCapacity));
+        }
+    }
+
+    /**
+     * Execute commands of state machine on stages.
+     *
+     * @param state State machine.
+     * @return Future of processing outcome, completed by thread of the last stage.
+     */
+    @Override
+    public CompletableFuture<FileOutcome> execute(FileState state) {
+        CompletableFuture<FileOutcome> result = new CompletableFuture<>();
+        Optional<FileOutcome> skipped = state.begin();
+        if (skipped.isPresent()) {
+            result.complete(skipped.get());
+        } else {
+            handOver(state, result);
+        }
+        return result;
+    }
+
+    /**
+     * Get stages of pipeline.
+     *
+     * @return Stages.
+     */
+    public Collection<PipelineStage> getStages() {
+        return new ArrayList<>(stages.values());
+    }
+
+    /**
+     * Get total thread count of stages.
+     *
+     * @return Thread count.
+     */
+    public int getThreadCount() {
+        return stages.values().stream().mapToInt(PipelineStage::getThreadCount).sum();
+    }
+
+    /**
+     * Hand over state machine to the stage of next command, or complete processing if there is no command.
+     *
+     * @param state  State machine.
+     * @param result Future of processing outcome.
+     */
+    private void handOver(FileState state, CompletableFuture<FileOutcome> result) {
+        Optional<FileStateMachineCommand> next = state.nextCommand();
+        if (!next.isPresent()) {
+            result.complete(state.getOutcome());
+            return;
+        }
+        try {
+            stages.get(next.get()).execute(() -> {
+                try {
+                    state.executeCommand();
+                    return true;
+                } catch (RuntimeException e) {
+                    result.completeExceptionally(e);
+                    return false;
+                }
+            }, () -> handOver(state, result));
+        } catch (RuntimeException e) {
+            result.completeExceptionally(e);
+        }
+    }
+
+    /**
+     * Shut down stages, state machines handed over after that are completed exceptionally.
+     */
+    @Override
+    public void close() {
+        stages.values().forEach(PipelineStage::shutdown);
+    }
+
+    @Override
+    public String toString() {
+        return stages.values().stream().map(PipelineStage::toString).collect(Collectors.joining("; "));
+    }
+}
@@ -0,0 +1,120 @@
+package org.terehpp.crawler.component.fileprocessor;
+
+import java.util.Optional;
+
+/**
+ * Action of state machine, written to transaction log: command, id of entry and source file.
+ * Action of container batch has range of container entries after id: {@code INSERT id:from:to file},
+ * id is identifier of the first entry of batch.
+ */
+public class TransactionAction {
+    private final FileStateMachineCommand command;
+    private final long id;
+    private final long from;
+    private final long to;
+    private final String file;
+
+    public TransactionAction(FileStateMachineCommand command, long id, String file) {
+        this(command, id, 0, 0, file);
+    }
+
+    public TransactionAction(FileStateMachineCommand command, long id, long from, long to, String file) {
+        this.command = command;
+        this.id = id;
+        this.from = from;
+        this.to = to;
+        this.file = file;
+    }
+
+    /**
+     * Parse action from transaction log.
+     * File is the rest of the line, so file name could contain whitespaces.
+     *
+     * @param action Action.
+     * @return Parsed action, empty if action has wrong format.
+     */
+    public static Optional<TransactionAction> parse(String action) {
+        String[] parts = action.split("\\s", 3);
+        if (parts.length < 3 || parts[2].isEmpty()) {
+            return Optional.empty();
+        }
+        try {
+            FileStateMachineCommand command = FileStateMachineCommand.valueOf(parts[0]);
+            String[] range = parts[1].split(":");
+            if (range.length == 3) {
+                return Optional.of(new TransactionAction(command, Long.parseLong(range[0]), Long.parseLong(range[1]),
+                        Long.parseLong(range[2]), parts[2]));
+            }
+            return Optional.of(new TransactionAction(command, Long.parseLong(parts[1]), parts[2]));
+        } catch (IllegalArgumentException e) {
+            return Optional.empty();
+        }
+    }
+
+    /**
+     * Format action to write to transaction log.
+     *
+     * @return Action.
+     */
+    public String format() {
+        return isBatch() ? format(command, id, from, to, file) : format(command, id, file);
+    }
+
+    /**
+     * Format action to write to transaction log, without creating action.
+     *
+     * @param command Command.
+     * @param id      Id of entry.
+     * @param file    Source file.
+     * @return Action.
+     */
+    public static String format(FileStateMachineCommand command, long id, String file) {
+        return new StringBuilder(command.name().length() + file.length() + 22)
+                .append(command.name()).append(' ').append(id).append(' ').append(file).toString();
+    }
+
+    /**
+     * Format action of container batch to write to transaction log, without creating action.
+     *
+     * @param command Command.
+     * @param id      Id of the first entry of batch.
+     * @param from    Offset of the first container entry of batch.
+     * @param to      Offset of container entry after batch.
+     * @param file    Source file.
+     * @return Action.
+     */
+    public static String format(FileStateMachineCommand command, long id, long from, long to, String file) {
+        return new StringBuilder(command.name().length() + file.length() + 64)
+                .append(command.name()).append(' ').append(id).append(':').append(from).append(':').append(to)
+                .append(' ').append(file).toString();
+    }
+
+    /**
+     * Check if action is batch of container entries.
+     *
+     * @return Result of check.
+     */
+    public boolean isBatch() {
+        return to > 0;
+    }
+
+    public FileStateMachineCommand getCommand() {
+        return command;
+    }
+
+    public long getId() {
+        return id;
+    }
+
+    public long getFrom() {
+        return from;
+    }
+
+    public long getTo() {
+        return to;
+    }
+
+    public String getFile() {
+        return file;
+    }
+}
@@ -0,0 +1,104 @@
+package org.terehpp.crawler.component.fileprocessor;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.terehpp.crawler.component.transaction.TransactionManager;
+import org.terehpp.crawler.service.db.DbService;
+
+import java.nio.file.InvalidPathException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Collection;
+import java.util.Optional;
+import java.util.Set;
+import java.util.function.BiFunction;
+import java.util.function.LongPredicate;
+
+/**
+ * Recovery of file processing from transaction logs, which were left after unexpected shutdown.
+ */
+public class TransactionRecovery {
+    private final static Log logger = LogFactory.getLog(TransactionRecovery.class);
+    private final TransactionManager tx;
+    private final DbService<?> dbService;
+    private final BiFunction<String, LongPredicate, Optional<FileState>> restoreMachine;
+
+    /**
+     * Constructor.
+     *
+     * @param transactionManager  Transaction manager.
+     * @param dbSrv               Db service, to check if entries of transactions are inserted.
+     * @param restoreStateMachine Callback to restore state machine from transaction file and check of inserted entry.
+     */
+    public TransactionRecovery(TransactionManager transactionManager, DbService<?> dbSrv,
+                               BiFunction<String, LongPredicate, Optional<FileState>> restoreStateMachine) {
+        tx = transactionManager;
+        dbService = dbSrv;
+        restoreMachine = restoreStateMachine;
+    }
+
+    /**
+     * Get last action of transaction log, without touching db.
+     *
+     * @param transactionFile Transaction file.
+     * @return Action, empty if log has no action.
+     */
+    public Optional<TransactionAction> getAction(String transactionFile) {
+        return tx.restore(transactionFile).flatMap(state -> TransactionAction.parse(state.getAction()));
+    }
+
+    /**
+     * Get source file of action.
+     *
+     * @param action Action of transaction log.
+     * @return Source file, empty if file name is wrong.
+     */
+    public Optional<Path> getSourceFile(TransactionAction action) {
+        try {
+            return Optional.of(Paths.get(action.getFile()));
+        } catch (InvalidPathException e) {
+            return Optional.empty();
+        }
+    }
+
+    /**
+     * Check which entries of transactions are inserted, all identifiers are checked by few queries.
+     * If query fails, each entry is checked separately when it is restored.
+     *
+     * @param ids Identifiers of entries.
+     * @return Check of inserted entry.
+     */
+    public LongPredicate getInserted(Collection<Long> ids) {
+        if (ids.isEmpty()) {
+            return id -> false;
+        }
+        try {
+            long start = System.currentTimeMillis();
+            Set<Long> inserted = dbService.existing(ids);
+            logger.info(String.format("%d of %d entries of transaction logs are inserted, checked in %d ms",
+                    inserted.size(), ids.size(), System.currentTimeMillis() - start));
+            return inserted::contains;
+        } catch (RuntimeException e) {
+            logger.error("Error while checking entries of transaction logs, entries are checked one by one");
+            logger.error(e.getMessage(), e);
+            return dbService::exist;
+        }
+    }
+
+    /**
+     * Restore state machine from transaction log and finish processing of file.
+     * If there is nothing to restore, transaction log is deleted.
+     *
+     * @param transactionFile Transaction file.
+     * @param inserted        Check if entry of transaction is inserted into db.
+     * @return Outcome of processing, empty if there was nothing to restore.
+     */
+    public Optional<FileOutcome> recover(String transactionFile, LongPredicate inserted) {
+        Optional<FileState> restoredState = restoreMachine.apply(transactionFile, inserted);
+        if (restoredState.isPresent()) {
+            return Optional.of(restoredState.get().execute());
+        }
+        tx.removeTransaction(transactionFile);
+        return Optional.empty();
+    }
+}
@@ -0,0 +1,18 @@
+package org.terehpp.crawler.component.metrics;
+
+/**
+ * State of db connection pool, exposed over JMX.
+ */
+public interface ConnectionPoolMXBean {
+    int getActiveConnections();
+
+    int getIdleConnections();
+
+    int getTotalConnections();
+
+    int getMaxConnections();
+
+    int getPendingThreads();
+
+    long getTimeouts();
+}
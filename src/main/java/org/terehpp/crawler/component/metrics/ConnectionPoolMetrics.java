@@ -0,0 +1,78 @@
+package org.terehpp.crawler.component.metrics;
+
+import com.zaxxer.hikari.metrics.IMetricsTracker;
+import com.zaxxer.hikari.metrics.MetricsTrackerFactory;
+import com.zaxxer.hikari.metrics.PoolStats;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Metrics of HikariCP connection pool: wait time of connection checkout, timeouts of checkout and connection counts.
+ */
+public class ConnectionPoolMetrics implements MetricsTrackerFactory, ConnectionPoolMXBean {
+    private final LatencyRecorder acquireLatency = new LatencyRecorder();
+    private final LongAdder timeouts = new LongAdder();
+    private volatile PoolStats stats;
+
+    /**
+     * Create tracker of pool, called by pool on start.
+     *
+     * @param poolName  Pool name.
+     * @param poolStats Connection counts of pool.
+     * @return Tracker.
+     */
+    @Override
+    public IMetricsTracker create(String poolName, PoolStats poolStats) {
+        stats = poolStats;
+        return new IMetricsTracker() {
+            @Override
+            public void recordConnectionAcquiredNanos(long elapsedAcquiredNanos) {
+                acquireLatency.recordElapsed(elapsedAcquiredNanos);
+            }
+
+            @Override
+            public void recordConnectionTimeout() {
+                timeouts.increment();
+            }
+        };
+    }
+
+    /**
+     * Get wait time of connection checkout.
+     *
+     * @return Latency.
+     */
+    public LatencyRecorder getAcquireLatency() {
+        return acquireLatency;
+    }
+
+    @Override
+    public int getActiveConnections() {
+        return stats != null ? stats.getActiveConnections() : 0;
+    }
+
+    @Override
+    public int getIdleConnections() {
+        return stats != null ? stats.getIdleConnections() : 0;
+    }
+
+    @Override
+    public int getTotalConnections() {
+        return stats != null ? stats.getTotalConnections() : 0;
+    }
+
+    @Override
+    public int getMaxConnections() {
+        return stats != null ? stats.getMaxConnections() : 0;
+    }
+
+    @Override
+    public int getPendingThreads() {
+        return stats != null ? stats.getPendingThreads() : 0;
+    }
+
+    @Override
+    public long getTimeouts() {
+        return timeouts.sum();
+    }
+}
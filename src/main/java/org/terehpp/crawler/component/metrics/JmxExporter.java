@@ -0,0 +1,48 @@
+package org.terehpp.crawler.component.metrics;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+
+/**
+ * Registration of application MBeans in platform MBean server.
+ */
+public class JmxExporter {
+    private final static Log logger = LogFactory.getLog(JmxExporter.class);
+    private final static String DOMAIN = "org.terehpp.crawler";
+    private final MBeanServer server;
+
+    public JmxExporter() {
+        this(ManagementFactory.getPlatformMBeanServer());
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param mbeanServer MBean server.
+     */
+    public JmxExporter(MBeanServer mbeanServer) {
+        server = mbeanServer;
+    }
+
+    /**
+     * Register MBean. Error of registration is logged, application works without MBean.
+     *
+     * @param type Type of MBean.
+     * @param name Name of MBean, null if there is single MBean of type.
+     * @param bean MBean.
+     */
+    public void register(String type, String name, Object bean) {
+        String objectName = name == null ? String.format("%s:type=%s", DOMAIN, type)
+                : String.format("%s:type=%s,name=%s", DOMAIN, type, name);
+        try {
+            server.registerMBean(bean, new ObjectName(objectName));
+        } catch (JMException e) {
+            logger.warn(String.format("Could not register MBean %s: %s", objectName, e.getMessage()));
+        }
+    }
+}
@@ -0,0 +1,151 @@
+package org.terehpp.crawler.component.metrics;
+
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Latency of operation recorded to HdrHistogram.
+ * Recording is wait-free and does not allocate, recorded values are moved to total histogram only when
+ * statistics is read, so cost of reading is not paid by recording threads.
+ */
+public class LatencyRecorder implements LatencyRecorderMXBean {
+    private final static int SIGNIFICANT_DIGITS = 2;
+    private final static long RATE_WINDOW_NANOS = TimeUnit.SECONDS.toNanos(1);
+    private final Recorder recorder = new Recorder(SIGNIFICANT_DIGITS);
+    private final LongAdder inFlight = new LongAdder();
+    // Guarded by this
+    private final Histogram total = new Histogram(SIGNIFICANT_DIGITS);
+    private Histogram interval;
+    private long rateStart = System.nanoTime();
+    private long rateCount;
+    private double throughput;
+
+    /**
+     * Start operation.
+     *
+     * @return Start time, to be passed to {@link #record}.
+     */
+    public long start() {
+        inFlight.increment();
+        return System.nanoTime();
+    }
+
+    /**
+     * Finish operation and record its latency.
+     *
+     * @param startNanos Start time returned by {@link #start}.
+     */
+    public void record(long startNanos) {
+        inFlight.decrement();
+        recorder.recordValue(Math.max(0, System.nanoTime() - startNanos));
+    }
+
+    /**
+     * Record latency of operation measured by caller, operation is not counted as in flight.
+     *
+     * @param elapsedNanos Latency in nanoseconds.
+     */
+    public void recordElapsed(long elapsedNanos) {
+        recorder.recordValue(Math.max(0, elapsedNanos));
+    }
+
+    /**
+     * Finish operation without recording, when it was interrupted by error.
+     */
+    public void cancel() {
+        inFlight.decrement();
+    }
+
+    @Override
+    public synchronized long getCount() {
+        return snapshot().getTotalCount();
+    }
+
+    @Override
+    public long getInFlight() {
+        return inFlight.sum();
+    }
+
+    /**
+     * Get operations per second, measured at least over last second.
+     *
+     * @return Throughput.
+     */
+    @Override
+    public synchronized double getThroughput() {
+        snapshot();
+        return throughput;
+    }
+
+    @Override
+    public synchronized double getMean() {
+        return toMicros(snapshot().getMean());
+    }
+
+    @Override
+    public double getP50() {
+        return getPercentile(50);
+    }
+
+    @Override
+    public double getP99() {
+        return getPercentile(99);
+    }
+
+    @Override
+    public double getP999() {
+        return getPercentile(99.9);
+    }
+
+    @Override
+    public synchronized double getMax() {
+        return toMicros(snapshot().getMaxValue());
+    }
+
+    @Override
+    public synchronized void reset() {
+        snapshot();
+        total.reset();
+    }
+
+    /**
+     * Get latency at percentile.
+     *
+     * @param percentile Percentile.
+     * @return Latency in microseconds.
+     */
+    public synchronized double getPercentile(double percentile) {
+        return toMicros(snapshot().getValueAtPercentile(percentile));
+    }
+
+    /**
+     * Move recorded values to total histogram and update throughput.
+     *
+     * @return Total histogram.
+     */
+    private synchronized Histogram snapshot() {
+        interval = recorder.getIntervalHistogram(interval);
+        total.add(interval);
+        rateCount += interval.getTotalCount();
+        long now = System.nanoTime();
+        if (now - rateStart >= RATE_WINDOW_NANOS) {
+            throughput = rateCount * (double) TimeUnit.SECONDS.toNanos(1) / (now - rateStart);
+            rateStart = now;
+            rateCount = 0;
+        }
+        return total;
+    }
+
+    private static double toMicros(double nanos) {
+        return nanos / 1000.0;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("count=%d, p50=%.1f us, p99=%.1f us, p999=%.1f us", getCount(), getP50(), getP99(),
+                getP999());
+    }
+}
@@ -0,0 +1,27 @@
+package org.terehpp.crawler.component.metrics;
+
+/**
+ * Latency histogram and rate of operation, exposed over JMX. Latency is in microseconds.
+ */
+public interface LatencyRecorderMXBean {
+    long getCount();
+
+    long getInFlight();
+
+    double getThroughput();
+
+    double getMean();
+
+    double getP50();
+
+    double getP99();
+
+    double getP999();
+
+    double getMax();
+
+    /**
+     * Clear recorded latency.
+     */
+    void reset();
+}
@@ -0,0 +1,230 @@
+package org.terehpp.crawler.component.monitor;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.LongSupplier;
+
+/**
+ * Limit of files processed at the same time.
+ * <p>
+ * In adaptive mode limit is tuned by AIMD: once per window average latency of processing is compared with baseline
+ * (the lowest observed latency, slowly following the current one). If latency grew more than tolerance allows or
+ * there were errors, limit is decreased multiplicatively, if limit was reached and latency is fine, limit is
+ * increased by one. Increase is kept only if throughput of the next window grew, otherwise limit is above the point
+ * where throughput stops growing, so it is decreased back and is not increased for several windows.
+ * Limit always stays between configured bounds.
+ */
+public class ConcurrencyLimiter implements ConcurrencyLimiterMXBean {
+    private final static Log logger = LogFactory.getLog(ConcurrencyLimiter.class);
+    private final static long WINDOW_NANOS = TimeUnit.SECONDS.toNanos(1);
+    private final static int MIN_WINDOW_SAMPLES = 10;
+    private final static double LATENCY_TOLERANCE = 2.0;
+    private final static double BACKOFF_RATIO = 0.9;
+    private final static double BASELINE_SMOOTHING = 0.01;
+    private final static double MIN_THROUGHPUT_GAIN = 0.05;
+    private final static int HOLD_WINDOWS = 10;
+    private final int minLimit;
+    private final int maxLimit;
+    private final boolean adaptive;
+    private final long windowNanos;
+    private final LongSupplier clock;
+    private final ResizableSemaphore permits;
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private volatile int limit;
+    private volatile double throughput;
+    private volatile double averageLatency;
+    // Current window, guarded by this
+    private long windowStart;
+    private int windowSamples;
+    private long windowLatency;
+    private int windowErrors;
+    private int windowMaxInFlight;
+    private double baselineLatency;
+    // Throughput before limit was increased, 0 if limit was not increased by the previous window
+    private double throughputBeforeIncrease;
+    // Count of windows, when limit is not increased
+    private int holdWindows;
+
+    /**
+     * Constructor.
+     *
+     * @param min            Minimum limit.
+     * @param max            Maximum limit, initial limit.
+     * @param adaptiveLimit  Tune limit by observed latency, otherwise limit is fixed to maximum.
+     */
+    public ConcurrencyLimiter(int min, int max, boolean adaptiveLimit) {
+        this(min, max, adaptiveLimit, WINDOW_NANOS, System::nanoTime);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param min           Minimum limit.
+     * @param max           Maximum limit, initial limit.
+     * @param adaptiveLimit Tune limit by observed latency, otherwise limit is fixed to maximum.
+     * @param window        Duration of window in nanoseconds.
+     * @param nanoClock     Clock in nanoseconds.
+     */
+    ConcurrencyLimiter(int min, int max, boolean adaptiveLimit, long window, LongSupplier nanoClock) {
+        minLimit = Math.min(min, max);
+        maxLimit = max;
+        adaptive = adaptiveLimit;
+        limit = max;
+        permits = new ResizableSemaphore(max);
+        windowNanos = window;
+        clock = nanoClock;
+        windowStart = clock.getAsLong();
+    }
+
+    /**
+     * Acquire permit to process file, wait if limit is reached.
+     *
+     * @throws InterruptedException
+     */
+    public void acquire() throws InterruptedException {
+        permits.acquire();
+        inFlight.incrementAndGet();
+    }
+
+    /**
+     * Release permit without sample of latency.
+     */
+    public void release() {
+        inFlight.decrementAndGet();
+        permits.release();
+    }
+
+    /**
+     * Release permit after file is processed.
+     *
+     * @param latencyNanos Time of processing.
+     * @param error        Processing failed with unexpected error.
+     */
+    public void release(long latencyNanos, boolean error) {
+        int current = inFlight.getAndDecrement();
+        permits.release();
+        if (!adaptive) {
+            return;
+        }
+        synchronized (this) {
+            windowSamples++;
+            windowLatency += latencyNanos;
+            windowMaxInFlight = Math.max(windowMaxInFlight, current);
+            if (error) {
+                windowErrors++;
+            }
+            long now = clock.getAsLong();
+            if (now - windowStart >= windowNanos && windowSamples >= MIN_WINDOW_SAMPLES) {
+                adjust(now);
+            }
+        }
+    }
+
+    /**
+     * Adjust limit by results of window and start new window.
+     *
+     * @param now Current time.
+     */
+    private void adjust(long now) {
+        double latency = (double) windowLatency / windowSamples;
+        averageLatency = latency;
+        throughput = windowSamples * (double) TimeUnit.SECONDS.toNanos(1) / (now - windowStart);
+        if (baselineLatency == 0 || latency < baselineLatency) {
+            baselineLatency = latency;
+        } else {
+            baselineLatency += (latency - baselineLatency) * BASELINE_SMOOTHING;
+        }
+
+        double previousThroughput = throughputBeforeIncrease;
+        throughputBeforeIncrease = 0;
+        if (holdWindows > 0) {
+            holdWindows--;
+        }
+        int newLimit = limit;
+        if (windowErrors > 0 || latency > baselineLatency * LATENCY_TOLERANCE) {
+            newLimit = Math.max(minLimit, Math.min(limit - 1, (int) (limit * BACKOFF_RATIO)));
+        } else if (previousThroughput > 0 && throughput < previousThroughput * (1 + MIN_THROUGHPUT_GAIN)) {
+            // Increase did not give more throughput
+            newLimit = Math.max(minLimit, limit - 1);
+            holdWindows = HOLD_WINDOWS;
+        } else if (windowMaxInFlight >= limit && holdWindows == 0 && limit < maxLimit) {
+            newLimit = limit + 1;
+            throughputBeforeIncrease = throughput;
+        }
+        setLimit(newLimit);
+
+        windowStart = now;
+        windowSamples = 0;
+        windowLatency = 0;
+        windowErrors = 0;
+        windowMaxInFlight = 0;
+    }
+
+    /**
+     * Change count of permits.
+     *
+     * @param newLimit New limit.
+     */
+    private void setLimit(int newLimit) {
+        int delta = newLimit - limit;
+        if (delta == 0) {
+            return;
+        }
+        if (delta > 0) {
+            permits.release(delta);
+        } else {
+            permits.reducePermits(-delta);
+        }
+        limit = newLimit;
+        if (logger.isDebugEnabled()) {
+            logger.debug(String.format("Concurrency limit is changed to %d (latency %.1f ms, throughput %.1f files/s)",
+                    newLimit, averageLatency / 1000000, throughput));
+        }
+    }
+
+    public int getLimit() {
+        return limit;
+    }
+
+    public int getInFlight() {
+        return inFlight.get();
+    }
+
+    /**
+     * Get throughput of the last window.
+     *
+     * @return Files per second.
+     */
+    public double getThroughput() {
+        return throughput;
+    }
+
+    /**
+     * Get average latency of the last window.
+     *
+     * @return Latency in nanoseconds.
+     */
+    public double getAverageLatency() {
+        return averageLatency;
+    }
+
+    /**
+     * Semaphore, which count of permits could be reduced.
+     */
+    private static class ResizableSemaphore extends Semaphore {
+        private static final long serialVersionUID = 1L;
+
+        ResizableSemaphore(int permits) {
+            super(permits);
+        }
+
+        @Override
+        protected void reducePermits(int reduction) {
+            super.reducePermits(reduction);
+        }
+    }
+}
@@ -0,0 +1,14 @@
+package org.terehpp.crawler.component.monitor;
+
+/**
+ * State of concurrency limiter, exposed over JMX.
+ */
+public interface ConcurrencyLimiterMXBean {
+    int getLimit();
+
+    int getInFlight();
+
+    double getThroughput();
+
+    double getAverageLatency();
+}
@@ -0,0 +1,15 @@
+package org.terehpp.crawler.component.monitor;
+
+/**
+ * Modes of concurrency limit.
+ */
+public enum ConcurrencyMode {
+    /**
+     * Limit is equal to thread count.
+     */
+    FIXED,
+    /**
+     * Limit is tuned by observed latency between minimum limit and thread count.
+     */
+    ADAPTIVE
+}
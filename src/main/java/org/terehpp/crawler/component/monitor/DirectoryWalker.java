@@ -0,0 +1,105 @@
+package org.terehpp.crawler.component.monitor;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileVisitOption;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Directory tree walker.
+ * With parallelism greater than 1 each subdirectory is listed by separate fork/join task, so latency of
+ * readdir/stat calls on network file systems is overlapped. Visitor should be thread safe in this case.
+ * Walk result of visitor (skip subtree, terminate) is not supported by parallel walk.
+ */
+public class DirectoryWalker {
+    private final static Log logger = LogFactory.getLog(DirectoryWalker.class);
+    private final ForkJoinPool pool;
+    private final int maxDepth;
+
+    /**
+     * Constructor.
+     *
+     * @param parallelism Count of threads to walk, 1 means walk in caller thread.
+     * @param walkDepth   Maximum depth of walk, 1 means only files of start directory.
+     */
+    public DirectoryWalker(int parallelism, int walkDepth) {
+        pool = parallelism > 1 ? new ForkJoinPool(parallelism) : null;
+        maxDepth = walkDepth;
+    }
+
+    /**
+     * Walk directory tree.
+     *
+     * @param start   Start directory.
+     * @param visitor File visitor.
+     * @throws IOException
+     */
+    public void walk(Path start, FileVisitor visitor) throws IOException {
+        if (pool == null) {
+            Files.walkFileTree(start, EnumSet.noneOf(FileVisitOption.class), maxDepth, visitor);
+        } else {
+            pool.invoke(new DirectoryTask(start, 0, visitor));
+        }
+    }
+
+    /**
+     * Task to walk one directory, subdirectories are forked.
+     */
+    private class DirectoryTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+        // Task is never serialized
+        private final transient Path dir;
+        private final int depth;
+        private final transient FileVisitor visitor;
+
+        DirectoryTask(Path directory, int directoryDepth, FileVisitor fileVisitor) {
+            dir = directory;
+            depth = directoryDepth;
+            visitor = fileVisitor;
+        }
+
+        @Override
+        protected void compute() {
+            List<DirectoryTask> subTasks = new ArrayList<>();
+            try (DirectoryStream<Path> stream = Files.newDirectoryStream(dir)) {
+                for (Path entry : stream) {
+                    BasicFileAttributes attrs;
+                    try {
+                        // Links are not followed, as by serial walk, so link cycle could not be walked forever
+                        attrs = Files.readAttributes(entry, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+                    } catch (IOException e) {
+                        visitor.visitFileFailed(entry, e);
+                        continue;
+                    }
+                    if (!attrs.isDirectory()) {
+                        visitor.visitFile(entry, attrs);
+                    } else if (depth + 1 < maxDepth) {
+                        DirectoryTask subTask = new DirectoryTask(entry, depth + 1, visitor);
+                        subTask.fork();
+                        subTasks.add(subTask);
+                    }
+                }
+            } catch (IOException e) {
+                try {
+                    visitor.postVisitDirectory(dir, e);
+                } catch (IOException ex) {
+                    logger.error(ex.getMessage(), ex);
+                }
+            }
+            for (DirectoryTask subTask : subTasks) {
+                subTask.join();
+            }
+        }
+    }
+}
@@ -0,0 +1,171 @@
+package org.terehpp.crawler.component.monitor;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+
+import static java.nio.file.StandardWatchEventKinds.ENTRY_CREATE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_MODIFY;
+import static java.nio.file.StandardWatchEventKinds.OVERFLOW;
+
+/**
+ * Event driven directory monitor.
+ * Registers monitor directory tree recursively and passes created and modified files to callback on watcher thread.
+ * If events were lost (overflow), full reconcile walk is requested.
+ */
+public class DirectoryWatcher implements Runnable {
+    private final static Log logger = LogFactory.getLog(DirectoryWatcher.class);
+    private final Path root;
+    private final ProcessFileCallback processFileCallback;
+    private final Runnable reconcile;
+    private final Map<WatchKey, Path> keys = new HashMap<>();
+
+    /**
+     * Constructor.
+     *
+     * @param monitorDir    Directory to monitor.
+     * @param callback      Callback to process created or modified file.
+     * @param reconcileWalk Full directory walk, requested when events were lost.
+     */
+    public DirectoryWatcher(String monitorDir, ProcessFileCallback callback, Runnable reconcileWalk) {
+        root = Paths.get(monitorDir);
+        processFileCallback = callback;
+        reconcile = reconcileWalk;
+    }
+
+    /**
+     * Start watching, works until thread is interrupted.
+     */
+    @Override
+    public void run() {
+        try (WatchService watchService = root.getFileSystem().newWatchService()) {
+            if (!register(watchService, root, null)) {
+                throw new IOException(String.format("Directory %s is not registered completely", root));
+            }
+            while (!Thread.currentThread().isInterrupted()) {
+                WatchKey key = watchService.take();
+                Set<Path> changedFiles = new LinkedHashSet<>();
+                boolean overflow = false;
+                // Drain all pending keys, so burst of events for one file is passed to processing once
+                do {
+                    overflow |= pollEvents(watchService, key, changedFiles);
+                    key = watchService.poll();
+                } while (key != null);
+
+                if (overflow) {
+                    logger.warn("File system events were lost or directory was not registered, full directory walk is requested.");
+                    reconcile.run();
+                }
+                for (Path file : changedFiles) {
+                    if (Files.isRegularFile(file, LinkOption.NOFOLLOW_LINKS)) {
+                        processFileCallback.processFile(file);
+                    }
+                }
+            }
+        } catch (InterruptedException | ClosedWatchServiceException e) {
+            Thread.currentThread().interrupt();
+        } catch (IOException e) {
+            logger.error(String.format("Could not watch directory %s", root));
+            logger.error(e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Poll events of watch key.
+     *
+     * @param watchService Watch service.
+     * @param key          Signalled key.
+     * @param changedFiles Collection of changed files to fill.
+     * @return True if events were lost or new directory could not be registered, full walk is required then.
+     */
+    private boolean pollEvents(WatchService watchService, WatchKey key, Set<Path> changedFiles) {
+        boolean overflow = false;
+        Path dir = keys.get(key);
+        for (WatchEvent<?> event : key.pollEvents()) {
+            if (event.kind() == OVERFLOW) {
+                overflow = true;
+                continue;
+            }
+            if (dir == null) {
+                continue;
+            }
+            Path child = dir.resolve((Path) event.context());
+            if (event.kind() == ENTRY_CREATE && Files.isDirectory(child, LinkOption.NOFOLLOW_LINKS)) {
+                // Files could be created before directory was registered
+                if (!register(watchService, child, changedFiles)) {
+                    overflow = true;
+                }
+            } else {
+                changedFiles.add(child);
+            }
+        }
+        if (!key.reset()) {
+            keys.remove(key);
+        }
+        return overflow;
+    }
+
+    /**
+     * Register directory and all subdirectories.
+     *
+     * @param watchService Watch service.
+     * @param start        Directory to register.
+     * @param foundFiles   Collection to fill with already existing files, could be null.
+     * @return True if all directories are registered. Directory could be deleted or replaced while it is registered,
+     * such directory is skipped.
+     */
+    private boolean register(WatchService watchService, Path start, Set<Path> foundFiles) {
+        boolean[] complete = {true};
+        try {
+            Files.walkFileTree(start, new SimpleFileVisitor<Path>() {
+                @Override
+                public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) {
+                    try {
+                        keys.put(dir.register(watchService, ENTRY_CREATE, ENTRY_MODIFY), dir);
+                    } catch (IOException e) {
+                        logger.warn(String.format("Could not register directory %s: %s", dir, e.getMessage()));
+                        complete[0] = false;
+                        return FileVisitResult.SKIP_SUBTREE;
+                    }
+                    return FileVisitResult.CONTINUE;
+                }
+
+
+                @Override
+                public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+                    if (foundFiles != null) {
+                        foundFiles.add(file);
+                    }
+                    return FileVisitResult.CONTINUE;
+                }
+
+                @Override
+                public FileVisitResult visitFileFailed(Path file, IOException exc) {
+                    logger.error(String.format("Could not register %s", file));
+                    complete[0] = false;
+                    return FileVisitResult.CONTINUE;
+                }
+            });
+        } catch (IOException e) {
+            logger.warn(String.format("Could not register directory %s: %s", start, e.getMessage()));
+            return false;
+        }
+        return complete[0];
+    }
+}
@@ -0,0 +1,15 @@
+package org.terehpp.crawler.component.monitor;
+
+/**
+ * Modes of file processing executor.
+ */
+public enum ExecutorMode {
+    /**
+     * Fixed pool of platform threads.
+     */
+    PLATFORM,
+    /**
+     * Virtual thread per file, count of files processed at the same time is limited.
+     */
+    VIRTUAL
+}
@@ -0,0 +1,64 @@
+package org.terehpp.crawler.component.monitor;
+
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Registry of files, which are submitted to processing and not finished yet.
+ * Claim is held by path, identity of claimed file is stored to recognise stale releases.
+ */
+public class FileClaimRegistry {
+    private final Map<Path, FileIdentity> claims = new ConcurrentHashMap<>();
+
+    /**
+     * Claim file for processing.
+     *
+     * @param file  File.
+     * @param attrs File attributes.
+     * @return True if file was not claimed before, and now it is claimed by caller.
+     */
+    public boolean claim(Path file, BasicFileAttributes attrs) {
+        return claims.putIfAbsent(file.toAbsolutePath(), FileIdentity.of(attrs)) == null;
+    }
+
+    /**
+     * Get identity of claimed file.
+     *
+     * @param file File.
+     * @return Identity, null if file is not claimed.
+     */
+    public FileIdentity getIdentity(Path file) {
+        return claims.get(file.toAbsolutePath());
+    }
+
+    /**
+     * Check if file is claimed.
+     *
+     * @param file File.
+     * @return Result of check.
+     */
+    public boolean isClaimed(Path file) {
+        return claims.containsKey(file.toAbsolutePath());
+    }
+
+    /**
+     * Release file after processing.
+     *
+     * @param file     File.
+     * @param identity Identity of file from the time of claim.
+     */
+    public void release(Path file, FileIdentity identity) {
+        claims.remove(file.toAbsolutePath(), identity);
+    }
+
+    /**
+     * Get count of claimed files.
+     *
+     * @return Count.
+     */
+    public int size() {
+        return claims.size();
+    }
+}
@@ -0,0 +1,63 @@
+package org.terehpp.crawler.component.monitor;
+
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Objects;
+
+/**
+ * Identity of file: file key (inode on unix systems), size and last modified time.
+ */
+public class FileIdentity {
+    private final Object fileKey;
+    private final long size;
+    private final long lastModified;
+
+    public FileIdentity(Object fileKey, long size, long lastModified) {
+        this.fileKey = fileKey;
+        this.size = size;
+        this.lastModified = lastModified;
+    }
+
+    /**
+     * Create identity from file attributes.
+     *
+     * @param attrs File attributes.
+     * @return Identity.
+     */
+    public static FileIdentity of(BasicFileAttributes attrs) {
+        return new FileIdentity(attrs.fileKey(), attrs.size(), attrs.lastModifiedTime().toMillis());
+    }
+
+    public Object getFileKey() {
+        return fileKey;
+    }
+
+    public long getSize() {
+        return size;
+    }
+
+    public long getLastModified() {
+        return lastModified;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (o == null || getClass() != o.getClass()) {
+            return false;
+        }
+        FileIdentity that = (FileIdentity) o;
+        return size == that.size && lastModified == that.lastModified && Objects.equals(fileKey, that.fileKey);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(fileKey, size, lastModified);
+    }
+
+    @Override
+    public String toString() {
+        return "FileIdentity{fileKey=" + fileKey + ", size=" + size + ", lastModified=" + lastModified + "}";
+    }
+}
@@ -8,6 +8,7 @@ import java.nio.file.FileVisitResult;
 import java.nio.file.Path;
 import java.nio.file.SimpleFileVisitor;
 import java.nio.file.attribute.BasicFileAttributes;
+import java.util.function.Predicate;
 
 /**
  * Custom file visitor.
@@ -15,14 +16,28 @@ import java.nio.file.attribute.BasicFileAttributes;
 public class FileVisitor extends SimpleFileVisitor<Path> {
     private final static Log logger = LogFactory.getLog(FileVisitor.class);
     private final ProcessFileCallback processFileCallback;
+    private final FileClaimRegistry claimRegistry;
+    private final Predicate<Path> skipFile;
 
-    public FileVisitor(ProcessFileCallback callback) {
+    /**
+     * Constructor.
+     *
+     * @param callback Callback to process file.
+     * @param registry Registry of files in processing, files which are already claimed are skipped.
+     * @param skip     Check if file should not be processed.
+     */
+    public FileVisitor(ProcessFileCallback callback, FileClaimRegistry registry, Predicate<Path> skip) {
         processFileCallback = callback;
+        claimRegistry = registry;
+        skipFile = skip;
     }
 
     @Override
     public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
-        processFileCallback.processFile(file);
+        // Directories on the depth limit of walk are passed as files
+        if (!attrs.isDirectory() && !skipFile.test(file) && claimRegistry.claim(file, attrs)) {
+            processFileCallback.processFile(file);
+        }
         return FileVisitResult.CONTINUE;
     }
 
@@ -40,7 +55,7 @@ public class FileVisitor extends SimpleFileVisitor<Path> {
 
     @Override
     public FileVisitResult visitFileFailed(Path file, IOException exc) throws IOException {
-        System.err.printf("Visiting failed for %s\n", file);
+        logger.warn(String.format("Visiting failed for %s", file), exc);
         return FileVisitResult.SKIP_SUBTREE;
     }
 }
@@ -0,0 +1,89 @@
+package org.terehpp.crawler.component.monitor;
+
+import org.terehpp.crawler.component.fileprocessor.FileOutcome;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counters of file monitor: submitted and rejected files, outcomes of processing, pending recovery.
+ */
+public class FileWorkerStats {
+    private final LongAdder submitted = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+    private final LongAdder recoveryPending = new LongAdder();
+    private final Map<FileOutcome, LongAdder> outcomes = new EnumMap<>(FileOutcome.class);
+
+    public FileWorkerStats() {
+        for (FileOutcome outcome : FileOutcome.values()) {
+            outcomes.put(outcome, new LongAdder());
+        }
+    }
+
+    /**
+     * File was put to work queue.
+     */
+    void onSubmitted() {
+        submitted.increment();
+    }
+
+    /**
+     * File was rejected, because work queue is full.
+     */
+    void onRejected() {
+        rejected.increment();
+    }
+
+    /**
+     * File processing was finished.
+     *
+     * @param outcome Outcome of processing.
+     */
+    void onProcessed(FileOutcome outcome) {
+        outcomes.get(outcome).increment();
+    }
+
+    /**
+     * Recovery of transaction logs was started.
+     *
+     * @param count Count of transaction logs.
+     */
+    void onRecoveryStarted(int count) {
+        recoveryPending.add(count);
+    }
+
+    /**
+     * Transaction log was recovered.
+     */
+    void onRecovered() {
+        recoveryPending.decrement();
+    }
+
+    public long getSubmitted() {
+        return submitted.sum();
+    }
+
+    public long getRejected() {
+        return rejected.sum();
+    }
+
+    public long getRecoveryPending() {
+        return recoveryPending.sum();
+    }
+
+    public long getOutcomeCount(FileOutcome outcome) {
+        return outcomes.get(outcome).sum();
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder("submitted=").append(getSubmitted())
+                .append(", rejected=").append(getRejected())
+                .append(", recovery_pending=").append(getRecoveryPending());
+        for (FileOutcome outcome : FileOutcome.values()) {
+            sb.append(", ").append(outcome.name().toLowerCase()).append('=').append(getOutcomeCount(outcome));
+        }
+        return sb.toString();
+    }
+}
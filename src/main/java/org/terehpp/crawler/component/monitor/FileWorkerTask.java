@@ -2,50 +2,141 @@ package org.terehpp.crawler.component.monitor;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
+import org.terehpp.crawler.component.cluster.FileClaim;
+import org.terehpp.crawler.component.cluster.FileClaimer;
 import org.terehpp.crawler.component.fileprocessor.FileData;
+import org.terehpp.crawler.component.fileprocessor.FileOutcome;
 import org.terehpp.crawler.component.fileprocessor.FileState;
+import org.terehpp.crawler.component.fileprocessor.FileStateExecutor;
+import org.terehpp.crawler.component.fileprocessor.TransactionAction;
+import org.terehpp.crawler.component.fileprocessor.TransactionRecovery;
+import org.terehpp.crawler.component.stability.StabilityStrategy;
 
-import java.io.File;
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
-import java.util.concurrent.CompletionService;
-import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.Function;
+import java.util.function.LongPredicate;
+import java.util.stream.Collectors;
 
 /**
  * Monitor task.
+ * Directory walk (producer) puts found files to bounded work queue, worker threads (consumers) take files from queue
+ * and report outcome of processing back. Work queue is split to lanes of small and large files, each lane has its own
+ * share of workers. If queue is full, file is rejected and will be found by the next walk,
+ * so walk is never blocked by processing.
+ * Files which are not completely written yet stay claimed and are put to the queue again after retry delay.
+ * In virtual executor mode each file is processed by its own virtual thread, count of such threads is limited by
+ * semaphore instead of pool size.
+ * Total count of files processed at the same time is additionally limited by concurrency limiter, which could tune
+ * the limit by observed latency of processing.
+ * Commands of state machine are executed by state executor, in staged mode worker only hands file over to the first
+ * stage, outcome is reported and permit of limiter is released when the last stage is finished.
+ * Transaction logs of previous run are recovered in parallel by separate pool. Source files of the logs are claimed
+ * before directory walk starts, so walk does not take them for fresh processing while recovery is in progress.
  */
-public class FileWorkerTask implements Runnable {
+public class FileWorkerTask implements Runnable, FileWorkerTaskMXBean {
     private final static Log logger = LogFactory.getLog(FileWorkerTask.class);
-    private final String sourceDir;
-    private final CompletionService service;
-    private int freeThreadCount;
+    private final Path sourceDir;
+    private final DirectoryWalker walker;
+    private final LaneScheduler workQueue;
+    private final ConcurrencyLimiter limiter;
+    private final ExecutorService workers;
+    private final ExecutorService recoveryWorkers;
+    private final ScheduledExecutorService retryScheduler = Executors.newSingleThreadScheduledExecutor();
+    private final StabilityStrategy stability;
+    private final FileClaimer claimer;
+    private final long retryDelay;
     private final Function<FileData, FileState> createMachine;
+    private final FileStateExecutor stateExecutor;
+    private final TransactionRecovery recovery;
     private final List<String> restoreTxFiles;
-    private final Function<String, Optional<FileState>> restoreMachine;
+    private final FileClaimRegistry claimRegistry = new FileClaimRegistry();
+    private final FileWorkerStats stats = new FileWorkerStats();
+    private final AtomicBoolean rescanRequired = new AtomicBoolean(false);
+    private volatile Runnable rescan;
 
     /**
      * Constructor.
      *
-     * @param monitorDir         Directory to monitor.
-     * @param threadCount        Thread count.
-     * @param txFilesToRestore   Old transaction files, to restore.
-     * @param createStateMachine Callback to create state machine for each file.
+     * @param monitorDir          Directory to monitor.
+     * @param directoryWalker     Walker of monitor directory.
+     * @param threadCount         Thread count, in virtual mode maximum count of files processed at the same time.
+     * @param executorMode        Mode of executor.
+     * @param scheduler           Work queue.
+     * @param concurrencyLimiter  Limiter of files processed at the same time.
+     * @param stabilityStrategy   Strategy to detect if file is completely written, control files are not processed.
+     * @param retryDelayMillis    Delay before next attempt to process file, which is not completely written.
+     * @param fileClaimer         Claimer of file before processing.
+     * @param transactionRecovery Recovery of old transaction files, pool of recovery has thread count size.
+     * @param txFilesToRestore    Old transaction files, to restore.
+     * @param createStateMachine  Callback to create state machine for each file.
+     * @param executor            Executor of state machine commands.
      */
-    public FileWorkerTask(String monitorDir, int threadCount, List<String> txFilesToRestore,
-                          Function<FileData, FileState> createStateMachine,
-                          Function<String, Optional<FileState>> restoreStateMachine) {
-        service = new ExecutorCompletionService(Executors.newFixedThreadPool(threadCount));
-        freeThreadCount = threadCount;
+    public FileWorkerTask(String monitorDir, DirectoryWalker directoryWalker, int threadCount,
+                          ExecutorMode executorMode, LaneScheduler scheduler, ConcurrencyLimiter concurrencyLimiter,
+                          StabilityStrategy stabilityStrategy, long retryDelayMillis, FileClaimer fileClaimer,
+                          TransactionRecovery transactionRecovery, List<String> txFilesToRestore,
+                          Function<FileData, FileState> createStateMachine, FileStateExecutor executor) {
+        workQueue = scheduler;
+        limiter = concurrencyLimiter;
+        stability = stabilityStrategy;
+        retryDelay = retryDelayMillis;
+        claimer = fileClaimer;
         createMachine = createStateMachine;
-        sourceDir = monitorDir;
+        stateExecutor = executor;
+        // Path in transaction logs is absolute
+        sourceDir = Paths.get(monitorDir).toAbsolutePath();
+        walker = directoryWalker;
+        recovery = transactionRecovery;
         restoreTxFiles = txFilesToRestore;
-        restoreMachine = restoreStateMachine;
+        recoveryWorkers = Executors.newFixedThreadPool(threadCount);
+        if (executorMode == ExecutorMode.VIRTUAL) {
+            workers = Executors.newVirtualThreadPerTaskExecutor();
+            for (Lane lane : Lane.values()) {
+                int laneWorkers = workQueue.getWorkerCount(lane, threadCount);
+                if (laneWorkers == 0) {
+                    continue;
+                }
+                Semaphore permits = new Semaphore(laneWorkers);
+                boolean steal = lane == Lane.LARGE;
+                Thread.ofPlatform().name("file-dispatcher-" + lane.name().toLowerCase())
+                        .start(() -> dispatch(lane, steal, permits));
+            }
+        } else {
+            workers = Executors.newFixedThreadPool(threadCount);
+            for (Lane lane : Lane.values()) {
+                // Large lane workers take small files when there is no large file
+                boolean steal = lane == Lane.LARGE;
+                for (int i = 0; i < workQueue.getWorkerCount(lane, threadCount); i++) {
+                    workers.execute(() -> consume(lane, steal));
+                }
+            }
+        }
+    }
+
+    /**
+     * Set callback to request new directory walk, when rejected files could be accepted by work queue again.
+     *
+     * @param rescanCallback Callback to start directory walk.
+     */
+    public void onRescanRequired(Runnable rescanCallback) {
+        rescan = rescanCallback;
     }
 
     /**
@@ -54,61 +145,389 @@ public class FileWorkerTask implements Runnable {
     @Override
     public void run() {
         try {
-            for (String oldTxFile : restoreTxFiles) {
-                restoreProcessFile(oldTxFile);
-            }
+            restore(restoreTxFiles);
             restoreTxFiles.clear();
-            Path start = Paths.get(sourceDir);
-            Files.walkFileTree(start, new FileVisitor(this::startProcessFile));
+            walker.walk(sourceDir, new FileVisitor(this::startProcessFile, claimRegistry, stability::isControlFile));
+            if (logger.isDebugEnabled()) {
+                logger.debug(String.format("Directory walk is finished: queue depth=%d, %s, executor: %s",
+                        workQueue.size(), stats, stateExecutor));
+            }
         } catch (IOException e) {
             e.printStackTrace();
         }
     }
 
     /**
-     * Process file.
+     * Process single file, which was found outside of directory walk.
+     * It is called on watcher thread at the same time as walk runs, file is submitted once, as it is claimed atomically.
      *
      * @param file File.
      */
-    private void startProcessFile(Path file) {
-        waitForThread();
-        service.submit(() -> {
-            createMachine.apply(new FileData(file.toAbsolutePath().toString(), 0, null, null)).execute();
+    public void processFile(Path file) {
+        if (stability.isControlFile(file)) {
+            return;
+        }
+        try {
+            if (claimRegistry.claim(file, Files.readAttributes(file, BasicFileAttributes.class))) {
+                startProcessFile(file);
+            }
+        } catch (IOException e) {
+            logger.warn(String.format("Could not read attributes of %s: %s", file, e.getMessage()));
+        }
+    }
+
+    /**
+     * Restore processing of files from old transaction logs.
+     * Source files are claimed before method returns, recovery itself is done in parallel in background.
+     * Entries of all transactions are checked in db together, before any transaction is restored.
+     *
+     * @param txFiles Transaction files.
+     * @return Future, which is completed when all transaction logs are recovered.
+     */
+    public CompletableFuture<Void> restore(List<String> txFiles) {
+        if (txFiles.isEmpty()) {
+            return CompletableFuture.completedFuture(null);
+        }
+        RecoveryProgress progress = new RecoveryProgress(txFiles.size());
+        stats.onRecoveryStarted(txFiles.size());
+        logger.info(String.format("Recovery of %d transaction logs is started", txFiles.size()));
+        // Reading of logs does not touch db, so source files are known before any fresh file is processed
+        List<CompletableFuture<Optional<TransactionAction>>> actions = txFiles.stream()
+                .map(txFile -> CompletableFuture.supplyAsync(() -> recovery.getAction(txFile), recoveryWorkers))
+                .collect(Collectors.toList());
+        Path[] sources = new Path[txFiles.size()];
+        boolean[] claimed = new boolean[txFiles.size()];
+        List<Long> ids = new ArrayList<>();
+        for (int i = 0; i < txFiles.size(); i++) {
+            Optional<TransactionAction> action = actions.get(i).join();
+            sources[i] = action.flatMap(recovery::getSourceFile).orElse(null);
+            // File processed right now is not claimed, its transaction log will be removed by that processing
+            claimed[i] = sources[i] == null || claimForRecovery(sources[i]);
+            if (claimed[i]) {
+                action.ifPresent(value -> ids.add(value.getId()));
+            }
+        }
+        CompletableFuture<LongPredicate> inserted = CompletableFuture.supplyAsync(() -> recovery.getInserted(ids),
+                recoveryWorkers);
+        CompletableFuture<?>[] recovered = new CompletableFuture<?>[txFiles.size()];
+        for (int i = 0; i < txFiles.size(); i++) {
+            String txFile = txFiles.get(i);
+            Path source = sources[i];
+            if (!claimed[i]) {
+                progress.onRecovered();
+                recovered[i] = CompletableFuture.completedFuture(null);
+                continue;
+            }
+            recovered[i] = inserted.thenAcceptAsync(check -> restoreProcessFile(txFile, source, check, progress),
+                    recoveryWorkers);
+        }
+        return CompletableFuture.allOf(recovered);
+    }
+
+    /**
+     * Get count of files waiting in work queue.
+     *
+     * @return Queue depth.
+     */
+    @Override
+    public int getQueueDepth() {
+        return workQueue.size();
+    }
+
+    @Override
+    public long getSubmitted() {
+        return stats.getSubmitted();
+    }
+
+    @Override
+    public long getRejected() {
+        return stats.getRejected();
+    }
+
+    @Override
+    public long getRecoveryPending() {
+        return stats.getRecoveryPending();
+    }
+
+    @Override
+    public Map<String, Long> getOutcomes() {
+        Map<String, Long> outcomes = new LinkedHashMap<>();
+        for (FileOutcome outcome : FileOutcome.values()) {
+            outcomes.put(outcome.name().toLowerCase(), stats.getOutcomeCount(outcome));
+        }
+        return outcomes;
+    }
+
+    /**
+     * Get limiter of files processed at the same time.
+     *
+     * @return Limiter.
+     */
+    public ConcurrencyLimiter getLimiter() {
+        return limiter;
+    }
+
+    /**
+     * Get counters of monitor.
+     *
+     * @return Counters.
+     */
+    public FileWorkerStats getStats() {
+        return stats;
+    }
+
+    /**
+     * Claim source file of transaction log for recovery.
+     *
+     * @param source Source file.
+     * @return True if file is claimed or does not exist, false if file is already claimed.
+     */
+    private boolean claimForRecovery(Path source) {
+        try {
+            return claimRegistry.claim(source, Files.readAttributes(source, BasicFileAttributes.class));
+        } catch (IOException e) {
+            // Nothing to claim, recovery only cleans transaction log
             return true;
-        });
+        }
     }
 
     /**
-     * Restore of file processing.
-     * (Single thread because of file resource racing between restore process and main processing. And compound of restoring process)
-     * Anyway it could be refactored to be multithread as main file processing.
+     * Put claimed file to work queue, claim is released when processing is finished or file is rejected.
      *
-     * @param transactionFile Transaction file to restore state machine.
+     * @param file File.
      */
-    private void restoreProcessFile(String transactionFile) {
-        Optional<FileState> restoredState = restoreMachine.apply(transactionFile);
-        if (restoredState.isPresent()) {
-            restoredState.get().execute();
+    private void startProcessFile(Path file) {
+        if (workQueue.offer(file, claimRegistry.getIdentity(file))) {
+            stats.onSubmitted();
         } else {
-            File txFile = new File(transactionFile);
-            if (txFile.exists()) {
-                txFile.delete();
+            stats.onRejected();
+            rescanRequired.set(true);
+            claimRegistry.release(file, claimRegistry.getIdentity(file));
+        }
+    }
+
+    /**
+     * Worker loop, take files from work queue until thread is interrupted.
+     *
+     * @param lane  Lane of worker.
+     * @param steal Take files of another lane, when lane of worker is empty.
+     */
+    private void consume(Lane lane, boolean steal) {
+        while (!Thread.currentThread().isInterrupted()) {
+            try {
+                Path file = workQueue.take(lane, steal);
+                acquireLimiter(file);
+                processLimited(file);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    /**
+     * Dispatcher loop of virtual mode, start virtual thread for each file from work queue until thread is interrupted.
+     *
+     * @param lane    Lane of dispatcher.
+     * @param steal   Take files of another lane, when lane of dispatcher is empty.
+     * @param permits Permits to process file of lane.
+     */
+    private void dispatch(Lane lane, boolean steal, Semaphore permits) {
+        while (!Thread.currentThread().isInterrupted()) {
+            try {
+                permits.acquire();
+                Path file;
+                try {
+                    file = workQueue.take(lane, steal);
+                    acquireLimiter(file);
+                } catch (InterruptedException e) {
+                    permits.release();
+                    throw e;
+                }
+                workers.execute(() -> {
+                    try {
+                        processLimited(file);
+                    } finally {
+                        permits.release();
+                    }
+                });
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
             }
         }
     }
 
     /**
-     * Wait for free thread from pool.
+     * Acquire permit of limiter for file taken from work queue, so waiting workers do not hold permits and are not
+     * counted as processing. If waiting is interrupted, claim of file is released and file is found by next scan.
+     *
+     * @param file File.
+     * @throws InterruptedException Occurred when waiting is interrupted.
      */
-    private void waitForThread() {
+    private void acquireLimiter(Path file) throws InterruptedException {
         try {
-            if (freeThreadCount == 0) {
-                service.take();
+            limiter.acquire();
+        } catch (InterruptedException e) {
+            rescanRequired.set(true);
+            claimRegistry.release(file, claimRegistry.getIdentity(file));
+            throw e;
+        }
+    }
+
+    /**
+     * Process file taken from work queue under acquired permit of limiter, report latency and release permit,
+     * when processing is finished.
+     * Skipped files are not reported, they don't say anything about load.
+     *
+     * @param file File.
+     */
+    private void processLimited(Path file) {
+        long start = System.nanoTime();
+        CompletableFuture<FileOutcome> outcome;
+        try {
+            outcome = process(file);
+        } catch (RuntimeException e) {
+            limiter.release(System.nanoTime() - start, true);
+            throw e;
+        }
+        outcome.whenComplete((result, e) -> {
+            if (result == FileOutcome.SKIPPED_OPEN || result == FileOutcome.SKIPPED_MISSING) {
+                limiter.release();
             } else {
-                freeThreadCount--;
+                limiter.release(System.nanoTime() - start, result == null || result == FileOutcome.ERROR);
             }
-        } catch (InterruptedException e) {
+        });
+    }
+
+    /**
+     * Process file taken from work queue.
+     *
+     * @param file File.
+     * @return Future of processing outcome, completed when outcome is reported.
+     */
+    private CompletableFuture<FileOutcome> process(Path file) {
+        requestRescanIfDrained();
+        FileIdentity identity = claimRegistry.getIdentity(file);
+        CompletableFuture<FileOutcome> outcome;
+        FileState state = null;
+        try {
+            FileClaim claim = claimer.claim(file);
+            if (claim.getFile().isPresent()) {
+                state = createMachine.apply(new FileData(claim.getFile().get().toAbsolutePath().toString(), 0, null, null));
+                outcome = stateExecutor.execute(state);
+            } else {
+                // File which is not completely written is checked again after retry delay
+                outcome = CompletableFuture.completedFuture(claim.isOpen() ? FileOutcome.SKIPPED_OPEN
+                        : FileOutcome.SKIPPED_MISSING);
+            }
+        } catch (RuntimeException e) {
+            outcome = CompletableFuture.failedFuture(e);
+        }
+        FileState usedState = state;
+        return outcome.handle((result, e) -> {
+            if (e != null) {
+                if (usedState != null) {
+                    usedState.abort();
+                }
+                logger.error(String.format("Error while processing file %s", file));
+                logger.error(e.getMessage(), e);
+                result = FileOutcome.ERROR;
+            }
+            report(file, identity, result);
+            return result;
+        });
+    }
+
+    /**
+     * Report outcome of file processing.
+     *
+     * @param file     File.
+     * @param identity Identity of claimed file.
+     * @param outcome  Outcome.
+     */
+    private void report(Path file, FileIdentity identity, FileOutcome outcome) {
+        stats.onProcessed(outcome);
+        if (outcome == FileOutcome.SKIPPED_OPEN) {
+            retryScheduler.schedule(() -> startProcessFile(file), retryDelay, TimeUnit.MILLISECONDS);
+            return;
+        }
+        claimRegistry.release(file, identity);
+        if (outcome == FileOutcome.ERROR) {
+            logger.warn(String.format("File %s was not processed", file));
+        }
+    }
+
+    /**
+     * Request new directory walk if some files were rejected and queue is drained to half of its capacity.
+     */
+    private void requestRescanIfDrained() {
+        Runnable callback = rescan;
+        if (callback != null && workQueue.size() <= workQueue.getCapacity() / 2
+                && rescanRequired.compareAndSet(true, false)) {
+            callback.run();
+        }
+    }
+
+    /**
+     * Restore of file processing. Recovery is retried later, if file is not completely written.
+     * If there was nothing to restore, file is processed from the beginning.
+     *
+     * @param transactionFile Transaction file to restore state machine.
+     * @param source          Claimed source file, null if transaction log has no source file.
+     * @param inserted        Check if entry of transaction is inserted into db.
+     * @param progress        Progress of recovery.
+     */
+    private void restoreProcessFile(String transactionFile, Path source, LongPredicate inserted,
+                                    RecoveryProgress progress) {
+        Optional<FileOutcome> outcome;
+        try {
+            outcome = recovery.recover(transactionFile, inserted);
+        } catch (RuntimeException e) {
+            logger.error(String.format("Error while restoring transaction %s", transactionFile));
             logger.error(e.getMessage(), e);
+            outcome = Optional.of(FileOutcome.ERROR);
+        }
+        if (outcome.isPresent() && outcome.get() == FileOutcome.SKIPPED_OPEN) {
+            retryScheduler.schedule(() -> recoveryWorkers.execute(() -> restoreProcessFile(transactionFile, source, inserted, progress)),
+                    retryDelay, TimeUnit.MILLISECONDS);
+            return;
+        }
+        outcome.ifPresent(stats::onProcessed);
+        if (source != null && claimRegistry.isClaimed(source)) {
+            if (!outcome.isPresent() && source.startsWith(sourceDir) && Files.exists(source)) {
+                startProcessFile(source);
+            } else {
+                claimRegistry.release(source, claimRegistry.getIdentity(source));
+            }
+        }
+        progress.onRecovered();
+    }
+
+    /**
+     * Progress of recovery, reported to log.
+     */
+    private class RecoveryProgress {
+        private final int total;
+        private final long start = System.nanoTime();
+        private final AtomicInteger recovered = new AtomicInteger();
+
+        RecoveryProgress(int count) {
+            total = count;
+        }
+
+        /**
+         * Transaction log is recovered, report each tenth part of logs and end of recovery.
+         */
+        void onRecovered() {
+            stats.onRecovered();
+            int done = recovered.incrementAndGet();
+            if (done == total) {
+                logger.info(String.format("Recovery of %d transaction logs is finished in %d ms", total,
+                        TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start)));
+            } else if (done % Math.max(1, total / 10) == 0) {
+                logger.info(String.format("Recovery progress: %d of %d transaction logs", done, total));
+            }
         }
     }
 }
@@ -0,0 +1,23 @@
+package org.terehpp.crawler.component.monitor;
+
+import java.util.Map;
+
+/**
+ * Counters of file monitor, exposed over JMX.
+ */
+public interface FileWorkerTaskMXBean {
+    int getQueueDepth();
+
+    long getSubmitted();
+
+    long getRejected();
+
+    long getRecoveryPending();
+
+    /**
+     * Get count of processed files by outcome.
+     *
+     * @return Count by outcome name.
+     */
+    Map<String, Long> getOutcomes();
+}
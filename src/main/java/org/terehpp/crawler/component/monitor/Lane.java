@@ -0,0 +1,15 @@
+package org.terehpp.crawler.component.monitor;
+
+/**
+ * Scheduling lanes of work queue.
+ */
+public enum Lane {
+    /**
+     * Files smaller than large file threshold.
+     */
+    SMALL,
+    /**
+     * Files greater or equal to large file threshold.
+     */
+    LARGE
+}
@@ -0,0 +1,165 @@
+package org.terehpp.crawler.component.monitor;
+
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Bounded work queue with separate lanes for small and large files.
+ * Each lane is ordered by last modified time, so the oldest file is taken first.
+ * Workers of large lane take small files when large lane is empty, workers of small lane never take large files,
+ * so burst of large files could not occupy all workers.
+ */
+public class LaneScheduler {
+    private final static Comparator<WorkItem> OLDEST_FIRST = Comparator.comparingLong(WorkItem::getLastModified);
+    private final int capacity;
+    private final long largeFileThreshold;
+    private final int largeLaneShare;
+    private final Map<Lane, PriorityQueue<WorkItem>> lanes = new EnumMap<>(Lane.class);
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition notEmpty = lock.newCondition();
+    private int size;
+
+    /**
+     * Constructor.
+     *
+     * @param queueCapacity  Total capacity of all lanes.
+     * @param largeThreshold Size of file in bytes, from which file goes to large lane.
+     * @param largeShare     Share of workers in percents, which are dedicated to large lane.
+     */
+    public LaneScheduler(int queueCapacity, long largeThreshold, int largeShare) {
+        capacity = queueCapacity;
+        largeFileThreshold = largeThreshold;
+        largeLaneShare = largeShare;
+        for (Lane lane : Lane.values()) {
+            lanes.put(lane, new PriorityQueue<>(OLDEST_FIRST));
+        }
+    }
+
+    /**
+     * Put file to its lane, if there is free space.
+     *
+     * @param file     File.
+     * @param identity Identity of file, size and last modified time are used to schedule file.
+     * @return True if file was accepted.
+     */
+    public boolean offer(Path file, FileIdentity identity) {
+        long fileSize = identity != null ? identity.getSize() : 0;
+        long lastModified = identity != null ? identity.getLastModified() : 0;
+        Lane lane = fileSize >= largeFileThreshold ? Lane.LARGE : Lane.SMALL;
+        lock.lock();
+        try {
+            if (size >= capacity) {
+                return false;
+            }
+            lanes.get(lane).add(new WorkItem(file, lastModified));
+            size++;
+            notEmpty.signalAll();
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Take the oldest file of lane, wait if there is no file.
+     *
+     * @param lane  Lane of worker.
+     * @param steal Take file from another lane, if lane of worker is empty.
+     * @return File.
+     * @throws InterruptedException
+     */
+    public Path take(Lane lane, boolean steal) throws InterruptedException {
+        lock.lockInterruptibly();
+        try {
+            while (true) {
+                WorkItem item = lanes.get(lane).poll();
+                if (item == null && steal) {
+                    for (PriorityQueue<WorkItem> other : lanes.values()) {
+                        item = other.poll();
+                        if (item != null) {
+                            break;
+                        }
+                    }
+                }
+                if (item != null) {
+                    size--;
+                    return item.getFile();
+                }
+                notEmpty.await();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Get count of workers dedicated to lane.
+     *
+     * @param lane         Lane.
+     * @param totalWorkers Count of all workers.
+     * @return Count of workers, with single worker it serves both lanes as large lane worker.
+     */
+    public int getWorkerCount(Lane lane, int totalWorkers) {
+        int large = totalWorkers == 1 ? 1 : Math.min(totalWorkers - 1, Math.max(1, totalWorkers * largeLaneShare / 100));
+        return lane == Lane.LARGE ? large : totalWorkers - large;
+    }
+
+    /**
+     * Get count of files in all lanes.
+     *
+     * @return Count of files.
+     */
+    public int size() {
+        lock.lock();
+        try {
+            return size;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Get count of files in lane.
+     *
+     * @param lane Lane.
+     * @return Count of files.
+     */
+    public int size(Lane lane) {
+        lock.lock();
+        try {
+            return lanes.get(lane).size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * File in lane.
+     */
+    private static class WorkItem {
+        private final Path file;
+        private final long lastModified;
+
+        WorkItem(Path file, long lastModified) {
+            this.file = file;
+            this.lastModified = lastModified;
+        }
+
+        Path getFile() {
+            return file;
+        }
+
+        long getLastModified() {
+            return lastModified;
+        }
+    }
+}
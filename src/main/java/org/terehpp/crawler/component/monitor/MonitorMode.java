@@ -0,0 +1,15 @@
+package org.terehpp.crawler.component.monitor;
+
+/**
+ * Modes of directory monitoring.
+ */
+public enum MonitorMode {
+    /**
+     * Full directory walk by timer.
+     */
+    SCHEDULE,
+    /**
+     * File system events, full directory walk only on overflow or by long safety interval.
+     */
+    WATCH
+}
@@ -0,0 +1,29 @@
+package org.terehpp.crawler.component.stability;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * File is stable when shared lock could be acquired, so producer does not hold exclusive lock.
+ * File is opened for reading only, so read-only files could be checked too.
+ * On unix systems locks are advisory, so producer should lock file while writing.
+ */
+public class LockStabilityStrategy implements StabilityStrategy {
+    @Override
+    public boolean isStable(Path file) {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            FileLock lock = channel.tryLock(0, Long.MAX_VALUE, true);
+            if (lock == null) {
+                return false;
+            }
+            lock.release();
+            return true;
+        } catch (IOException | OverlappingFileLockException e) {
+            return false;
+        }
+    }
+}
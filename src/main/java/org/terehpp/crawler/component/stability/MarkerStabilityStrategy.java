@@ -0,0 +1,63 @@
+package org.terehpp.crawler.component.stability;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * File is stable when producer created marker file with the same name and marker suffix (file.xml.done).
+ * Marker is deleted after file is processed.
+ */
+public class MarkerStabilityStrategy implements StabilityStrategy {
+    private final static Log logger = LogFactory.getLog(MarkerStabilityStrategy.class);
+    private final String markerSuffix;
+
+    /**
+     * Constructor.
+     *
+     * @param suffix Suffix of marker file.
+     */
+    public MarkerStabilityStrategy(String suffix) {
+        markerSuffix = suffix;
+    }
+
+    @Override
+    public boolean isStable(Path file) {
+        return Files.exists(getMarker(file));
+    }
+
+    @Override
+    public boolean isControlFile(Path file) {
+        return file.getFileName().toString().endsWith(markerSuffix);
+    }
+
+    @Override
+    public List<Path> getCompanionFiles(Path file) {
+        return Collections.singletonList(getMarker(file));
+    }
+
+    @Override
+    public void onProcessed(Path file) {
+        try {
+            Files.deleteIfExists(getMarker(file));
+        } catch (IOException e) {
+            logger.error(String.format("Could not delete marker of file %s", file));
+            logger.error(e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Get marker of file.
+     *
+     * @param file File.
+     * @return Marker file.
+     */
+    private Path getMarker(Path file) {
+        return file.resolveSibling(file.getFileName().toString() + markerSuffix);
+    }
+}
@@ -0,0 +1,88 @@
+package org.terehpp.crawler.component.stability;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * File is stable when it was not modified during quiet period and its size is not changed since previous observation.
+ */
+public class QuiescenceStabilityStrategy implements StabilityStrategy {
+    private final static Log logger = LogFactory.getLog(QuiescenceStabilityStrategy.class);
+    private final static int MIN_PRUNE_SIZE = 1024;
+    private final long quietPeriod;
+    /**
+     * Size of file from previous observation.
+     */
+    private final Map<Path, Long> observedSizes = new ConcurrentHashMap<>();
+    /**
+     * Count of observed files, when vanished files are removed from observation.
+     */
+    private volatile int pruneSize = MIN_PRUNE_SIZE;
+
+    /**
+     * Constructor.
+     *
+     * @param quietPeriodMillis Quiet period in milliseconds.
+     */
+    public QuiescenceStabilityStrategy(long quietPeriodMillis) {
+        quietPeriod = quietPeriodMillis;
+    }
+
+    @Override
+    public boolean isStable(Path file) {
+        BasicFileAttributes attrs;
+        try {
+            attrs = Files.readAttributes(file, BasicFileAttributes.class);
+        } catch (NoSuchFileException e) {
+            observedSizes.remove(file);
+            return false;
+        } catch (IOException e) {
+            logger.warn(String.format("Could not read attributes of %s: %s", file, e.getMessage()));
+            return false;
+        }
+        if (observedSizes.size() >= pruneSize) {
+            pruneVanished();
+        }
+        Long previousSize = observedSizes.put(file, attrs.size());
+        boolean quiet = System.currentTimeMillis() - attrs.lastModifiedTime().toMillis() >= quietPeriod;
+        if (quiet && (previousSize == null || previousSize == attrs.size())) {
+            observedSizes.remove(file);
+            return true;
+        }
+        return false;
+    }
+
+    @Override
+    public void onProcessed(Path file) {
+        observedSizes.remove(file);
+    }
+
+    /**
+     * Remove files, which vanished between observations without processing.
+     * Threshold of the next pruning is doubled size, so pruning cost is amortized.
+     */
+    private synchronized void pruneVanished() {
+        if (observedSizes.size() < pruneSize) {
+            return;
+        }
+        observedSizes.keySet().removeIf(observed -> !Files.exists(observed));
+        pruneSize = Math.max(MIN_PRUNE_SIZE, observedSizes.size() * 2);
+    }
+
+    /**
+     * Get count of files waiting for the next observation.
+     *
+     * @return Count of files.
+     */
+    int getObservedCount() {
+        return observedSizes.size();
+    }
+}
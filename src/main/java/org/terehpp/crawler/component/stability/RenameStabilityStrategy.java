@@ -0,0 +1,30 @@
+package org.terehpp.crawler.component.stability;
+
+import java.nio.file.Path;
+
+/**
+ * Producer writes file with partial suffix (file.xml.part) and renames it when file is completely written,
+ * so every file without partial suffix is stable.
+ */
+public class RenameStabilityStrategy implements StabilityStrategy {
+    private final String partialSuffix;
+
+    /**
+     * Constructor.
+     *
+     * @param suffix Suffix of partially written file.
+     */
+    public RenameStabilityStrategy(String suffix) {
+        partialSuffix = suffix;
+    }
+
+    @Override
+    public boolean isStable(Path file) {
+        return !isControlFile(file);
+    }
+
+    @Override
+    public boolean isControlFile(Path file) {
+        return file.getFileName().toString().endsWith(partialSuffix);
+    }
+}
@@ -0,0 +1,23 @@
+package org.terehpp.crawler.component.stability;
+
+/**
+ * Modes of file stability detection.
+ */
+public enum StabilityMode {
+    /**
+     * Size and last modified time are not changed during quiet period.
+     */
+    QUIESCENCE,
+    /**
+     * Shared lock of file opened for reading could be acquired, so producer does not hold exclusive lock.
+     */
+    LOCK,
+    /**
+     * Producer creates marker file next to completely written file.
+     */
+    MARKER,
+    /**
+     * Producer writes to partial file and renames it when file is completely written.
+     */
+    RENAME
+}
@@ -0,0 +1,46 @@
+package org.terehpp.crawler.component.stability;
+
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Strategy to detect if file is completely written by producer and could be processed.
+ */
+public interface StabilityStrategy {
+    /**
+     * Check if file is stable.
+     *
+     * @param file File.
+     * @return Result of check.
+     */
+    boolean isStable(Path file);
+
+    /**
+     * Check if file is a control file of producer handshake (marker, partially written file), such files are not processed.
+     *
+     * @param file File.
+     * @return Result of check.
+     */
+    default boolean isControlFile(Path file) {
+        return false;
+    }
+
+    /**
+     * Get control files, which belong to file and should be moved together with it.
+     *
+     * @param file File.
+     * @return Control files.
+     */
+    default List<Path> getCompanionFiles(Path file) {
+        return Collections.emptyList();
+    }
+
+    /**
+     * File was processed and removed from monitor directory.
+     *
+     * @param file File.
+     */
+    default void onProcessed(Path file) {
+    }
+}
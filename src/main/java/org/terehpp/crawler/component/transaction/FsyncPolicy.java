@@ -0,0 +1,23 @@
+package org.terehpp.crawler.component.transaction;
+
+/**
+ * When records of write-ahead log are forced to disk.
+ */
+public enum FsyncPolicy {
+    /**
+     * Records are written to OS, they survive crash of application, but not crash of OS.
+     */
+    NONE,
+    /**
+     * Log is forced periodically.
+     */
+    INTERVAL,
+    /**
+     * Log is forced after each N records.
+     */
+    EVERY_N,
+    /**
+     * Each record is forced before transaction goes on, concurrent records are forced together.
+     */
+    ALWAYS
+}
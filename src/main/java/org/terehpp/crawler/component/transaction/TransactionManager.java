@@ -27,18 +27,34 @@ public interface TransactionManager {
      */
     boolean removeLog(String file);
 
+    /**
+     * Remove transaction returned by {@link #getTransactionFiles}.
+     *
+     * @param transaction Transaction.
+     * @return Result of remove.
+     */
+    boolean removeTransaction(String transaction);
+
     /**
      * Restore old transaction.
      *
-     * @param file Transaction log file.
+     * @param file Transaction returned by {@link #getTransactionFiles}.
      * @return Result of restore.
      */
     Optional<RestoredState> restore(String file);
 
     /**
-     * Get transaction files.
+     * Get unfinished transactions. For transaction log files it is path of log file.
      *
-     * @return Files.
+     * @return Transactions.
      */
     List<String> getTransactionFiles();
+
+    /**
+     * Take over transaction logs of another node, after that they are managed as own transaction logs.
+     *
+     * @param transactionDir Transaction directory of another node.
+     * @return Taken over transaction files, to restore.
+     */
+    List<String> adoptTransactions(String transactionDir);
 }
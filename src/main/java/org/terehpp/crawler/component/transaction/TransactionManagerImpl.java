@@ -5,7 +5,10 @@ import org.apache.commons.logging.LogFactory;
 import org.terehpp.crawler.utils.StringUtils;
 
 import java.io.*;
-import java.nio.file.InvalidPathException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
@@ -19,6 +22,7 @@ import java.util.stream.Collectors;
  */
 public class TransactionManagerImpl implements TransactionManager {
     private final static Log logger = LogFactory.getLog(TransactionManagerImpl.class);
+    private final static int LAST_LINE_BLOCK_SIZE = 512;
     private final String tempDir;
 
     public TransactionManagerImpl(String tempDirectory) {
@@ -26,34 +30,34 @@ public class TransactionManagerImpl implements TransactionManager {
     }
 
     /**
-     * Get log writer for crrent source file.
+     * Get log file of source file. Separators of path are replaced in one pass.
      *
      * @param file Source file.
-     * @return
-     * @throws IOException
+     * @return Log file.
      */
-    private BufferedWriter getWriter(String file) throws IOException {
-        File txFile = Paths.get(tempDir, file.replace(File.separator, "_").replace(":", "_")).toFile();
-        if (!txFile.exists()) {
-            if (!txFile.createNewFile()) {
-                throw new IOException(String.format("Could not create file %s", txFile.getName()));
+    private File getLogFile(String file) {
+        char[] name = file.toCharArray();
+        for (int i = 0; i < name.length; i++) {
+            if (name[i] == File.separatorChar || name[i] == ':') {
+                name[i] = '_';
             }
         }
-        return new BufferedWriter(new FileWriter(txFile.getAbsoluteFile(), true));
+        return new File(tempDir, new String(name));
     }
 
     /**
-     * Write action to log.
+     * Write action to log. Line is encoded once and appended by single unbuffered write.
      *
-     * @param file Source file.
-     * @param log  Log to write.
+     * @param log      Stream of log.
+     * @param state    State of transaction.
+     * @param actionId Action identifier.
      * @throws IOException
      */
-    private void writeToLog(String file, String log) throws IOException {
-        try (BufferedWriter writer = getWriter(file)) {
-            writer.append(log);
-            writer.append("\n");
-        }
+    private void writeToLog(FileOutputStream log, TransactionState state, String actionId) throws IOException {
+        String stateName = state.name();
+        String line = new StringBuilder(stateName.length() + actionId.length() + 2)
+                .append(stateName).append(' ').append(actionId).append('\n').toString();
+        log.write(line.getBytes(StandardCharsets.UTF_8));
     }
 
     /**
@@ -66,13 +70,14 @@ public class TransactionManagerImpl implements TransactionManager {
      * @return Result, if error occured it will be Optional.empty.
      */
     public <T> Optional<T> execInTransaction(String file, String actionId, Function<Void, T> action) {
-        try {
-            writeToLog(file, String.format("%s %s", TransactionState.OPEN, actionId));
+        // Log is opened once for both records of transaction
+        try (FileOutputStream log = new FileOutputStream(getLogFile(file), true)) {
+            writeToLog(log, TransactionState.OPEN, actionId);
             T result = action.apply(null);
-            writeToLog(file, String.format("%s %s", TransactionState.CLOSE, actionId));
+            writeToLog(log, TransactionState.CLOSE, actionId);
             return Optional.of(result);
         } catch (IOException e) {
-            String errorMessage = String.format("Error while exec action %s for file %s", actionId, false);
+            String errorMessage = String.format("Error while exec action %s for file %s", actionId, file);
             logger.error(errorMessage);
             logger.error(e.getMessage(), e);
             return Optional.empty();
@@ -86,13 +91,20 @@ public class TransactionManagerImpl implements TransactionManager {
      * @return Result of remove.
      */
     public boolean removeLog(String file) {
-        try {
-            File txFile = Paths.get(tempDir.trim(), file.trim().replace(File.separator, "_").replace(":", "_")).toFile();
-            return !txFile.exists() || txFile.delete();
-        } catch (InvalidPathException e) {
-            logger.error(e.getMessage(), e);
-        }
-        return false;
+        File txFile = getLogFile(file);
+        return !txFile.exists() || txFile.delete();
+    }
+
+    /**
+     * Remove transaction log file returned by {@link #getTransactionFiles}.
+     *
+     * @param transaction Transaction log file.
+     * @return Result of remove.
+     */
+    @Override
+    public boolean removeTransaction(String transaction) {
+        File txFile = new File(transaction);
+        return !txFile.exists() || txFile.delete();
     }
 
     /**
@@ -108,6 +120,33 @@ public class TransactionManagerImpl implements TransactionManager {
         return Arrays.stream(files).map(x -> x.getAbsoluteFile().getAbsolutePath()).collect(Collectors.toList());
     }
 
+    /**
+     * Take over transaction logs of another node, after that they are managed as own transaction logs.
+     * Name of log depends only on source file, so log is moved to own temp directory.
+     *
+     * @param transactionDir Transaction directory of another node.
+     * @return Taken over transaction files, to restore.
+     */
+    @Override
+    public List<String> adoptTransactions(String transactionDir) {
+        List<String> adopted = new ArrayList<>();
+        File[] files = new File(transactionDir).listFiles();
+        if (files == null) {
+            return adopted;
+        }
+        for (File file : files) {
+            Path target = Paths.get(tempDir, file.getName());
+            try {
+                Files.move(file.toPath(), target, StandardCopyOption.ATOMIC_MOVE);
+                adopted.add(target.toAbsolutePath().toString());
+            } catch (IOException e) {
+                logger.error(String.format("Could not take over transaction log %s", file));
+                logger.error(e.getMessage(), e);
+            }
+        }
+        return adopted;
+    }
+
     /**
      * Restore old transaction.
      *
@@ -146,51 +185,38 @@ public class TransactionManagerImpl implements TransactionManager {
     }
 
     /**
-     * Get last line of file.
+     * Get last line of file. Tail of file is read by blocks, block is doubled until it contains the whole last line,
+     * so usually last line is read by single read.
      *
-     * @param file File.s
+     * @param file File.
      * @return Last line.
      */
     private String getLastLine(File file) {
-        RandomAccessFile fileHandler = null;
-        try {
-            fileHandler = new RandomAccessFile(file, "r");
-            long fileLength = fileHandler.length() - 1;
-            StringBuilder sb = new StringBuilder();
-            long filePointer = fileLength;
-            for (; filePointer != -1; filePointer--) {
-                fileHandler.seek(filePointer);
-                int readByte = fileHandler.readByte();
-
-                if (readByte == 0xA) {
-                    if (filePointer == fileLength) {
-                        continue;
-                    }
-                    break;
-
-                } else if (readByte == 0xD) {
-                    if (filePointer == fileLength - 1) {
-                        continue;
-                    }
-                    break;
+        try (RandomAccessFile fileHandler = new RandomAccessFile(file, "r")) {
+            long fileLength = fileHandler.length();
+            int blockSize = (int) Math.min(fileLength, LAST_LINE_BLOCK_SIZE);
+            while (true) {
+                byte[] block = new byte[blockSize];
+                fileHandler.seek(fileLength - blockSize);
+                fileHandler.readFully(block);
+                // End of last line, without trailing line break
+                int lineEnd = blockSize;
+                while (lineEnd > 0 && (block[lineEnd - 1] == '\n' || block[lineEnd - 1] == '\r')) {
+                    lineEnd--;
+                }
+                int lineStart = lineEnd;
+                while (lineStart > 0 && block[lineStart - 1] != '\n' && block[lineStart - 1] != '\r') {
+                    lineStart--;
+                }
+                if (lineStart > 0 || blockSize == fileLength) {
+                    return new String(block, lineStart, lineEnd - lineStart, StandardCharsets.UTF_8);
                 }
+                blockSize = (int) Math.min(fileLength, (long) blockSize * 2);
             }
-
-            byte[] buffer = new byte[(int) (fileHandler.length() - filePointer - 1)];
-            fileHandler.read(buffer);
-
-            return new String(buffer, "UTF-8");
         } catch (Exception e) {
             logger.error("Error while getting last transaction");
             logger.error(e.getMessage(), e);
             return null;
-        } finally {
-            if (fileHandler != null)
-                try {
-                    fileHandler.close();
-                } catch (IOException e) {
-                    logger.error(e.getMessage(), e);
-                }
         }
     }
 }
@@ -0,0 +1,15 @@
+package org.terehpp.crawler.component.transaction;
+
+/**
+ * Storage of transaction logs.
+ */
+public enum TransactionMode {
+    /**
+     * Separate log file for each source file.
+     */
+    FILE,
+    /**
+     * Segmented write-ahead log shared by all workers.
+     */
+    WAL
+}
@@ -0,0 +1,553 @@
+package org.terehpp.crawler.component.transaction;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Function;
+import java.util.zip.CRC32;
+
+/**
+ * Transaction manager with single segmented write-ahead log shared by all workers.
+ * <p>
+ * Record of log: length of payload, CRC32 of payload and payload: type (OPEN, CLOSE, REMOVE), length of key, key
+ * (source file) and action. Records are appended to active segment, segment is rolled when it reaches its size.
+ * Last record of each unfinished transaction is kept in memory, segment is deleted when all segments before it are
+ * deleted and it does not hold last record of unfinished transaction. If the oldest segment is held by few old
+ * transactions, their records are copied to active segment, so log does not grow.
+ * <p>
+ * On start segments are read sequentially, reading of segment is stopped at the first damaged record.
+ * New records are always appended to new segment.
+ */
+public class WalTransactionManager implements TransactionManager, Closeable {
+    private final static Log logger = LogFactory.getLog(WalTransactionManager.class);
+    private final static String SEGMENT_PREFIX = "wal-";
+    private final static String SEGMENT_SUFFIX = ".log";
+    private final static int HEADER_SIZE = 8;
+    private final static int MAX_RECORD_SIZE = 1024 * 1024;
+    private final static int READ_BUFFER_SIZE = 64 * 1024;
+    private final static int COMPACT_SEGMENT_COUNT = 2;
+    private final static byte TYPE_OPEN = 1;
+    private final static byte TYPE_CLOSE = 2;
+    private final static byte TYPE_REMOVE = 3;
+    private final Path dir;
+    private final long segmentSize;
+    private final FsyncPolicy fsyncPolicy;
+    private final int fsyncEveryN;
+    private final ScheduledExecutorService fsyncService;
+    private final Map<String, LogEntry> transactions = new ConcurrentHashMap<>();
+    private final ReentrantLock syncLock = new ReentrantLock();
+    private volatile long synced;
+    // Guarded by this: segment number to count of last records of unfinished transactions in segment
+    private final TreeMap<Long, Integer> segments = new TreeMap<>();
+    private FileChannel active;
+    private long activeSegment;
+    private long activeSize;
+    private long written;
+    private int unsynced;
+
+    /**
+     * Constructor.
+     *
+     * @param walDirectory   Directory of log segments.
+     * @param segmentBytes   Size of segment, when it is reached, new segment is started.
+     * @param policy         When records are forced to disk.
+     * @param everyN         Count of records between forces for {@link FsyncPolicy#EVERY_N}.
+     * @param intervalMillis Interval between forces for {@link FsyncPolicy#INTERVAL}.
+     * @throws IOException
+     */
+    public WalTransactionManager(String walDirectory, long segmentBytes, FsyncPolicy policy, int everyN,
+                                 long intervalMillis) throws IOException {
+        dir = Files.createDirectories(Paths.get(walDirectory));
+        segmentSize = segmentBytes;
+        fsyncPolicy = policy;
+        fsyncEveryN = everyN;
+        long start = System.currentTimeMillis();
+        long lastSegment = 0;
+        synchronized (this) {
+            for (long segment : listSegments(dir)) {
+                segments.put(segment, 0);
+                readSegment(getSegmentFile(dir, segment), (type, key, action) -> apply(type, key, action, segment));
+                lastSegment = segment;
+            }
+            openSegment(lastSegment + 1);
+            deleteResolvedSegments();
+        }
+        logger.info(String.format("Write-ahead log %s is read in %d ms, %d unfinished transactions", dir,
+                System.currentTimeMillis() - start, transactions.size()));
+        if (fsyncPolicy == FsyncPolicy.INTERVAL) {
+            fsyncService = Executors.newSingleThreadScheduledExecutor(task -> {
+                Thread thread = new Thread(task, "wal-fsync");
+                thread.setDaemon(true);
+                return thread;
+            });
+            fsyncService.scheduleWithFixedDelay(this::syncWritten, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+        } else {
+            fsyncService = null;
+        }
+    }
+
+    /**
+     * Exec command in transaction.
+     *
+     * @param file     File.
+     * @param actionId Acion identifier.
+     * @param action   Action to execute.
+     * @param <T>      Type of result.
+     * @return Result, if error occured it will be Optional.empty.
+     */
+    @Override
+    public <T> Optional<T> execInTransaction(String file, String actionId, Function<Void, T> action) {
+        try {
+            append(TYPE_OPEN, file, actionId);
+            T result = action.apply(null);
+            append(TYPE_CLOSE, file, actionId);
+            return Optional.of(result);
+        } catch (IOException e) {
+            String errorMessage = String.format("Error while exec action %s for file %s", actionId, file);
+            logger.error(errorMessage);
+            logger.error(e.getMessage(), e);
+            return Optional.empty();
+        }
+    }
+
+    /**
+     * Finish transaction of source file. Nothing is written, if file has no transaction.
+     *
+     * @param file Source file.
+     * @return Result of remove.
+     */
+    @Override
+    public boolean removeLog(String file) {
+        if (!transactions.containsKey(file)) {
+            return true;
+        }
+        try {
+            append(TYPE_REMOVE, file, "");
+            return true;
+        } catch (IOException e) {
+            logger.error(String.format("Error while removing transaction of file %s", file));
+            logger.error(e.getMessage(), e);
+            return false;
+        }
+    }
+
+    /**
+     * Finish transaction returned by {@link #getTransactionFiles}.
+     *
+     * @param transaction Source file of transaction.
+     * @return Result of remove.
+     */
+    @Override
+    public boolean removeTransaction(String transaction) {
+        return removeLog(transaction);
+    }
+
+    /**
+     * Restore unfinished transaction.
+     *
+     * @param file Source file of transaction.
+     * @return Last record of transaction.
+     */
+    @Override
+    public Optional<RestoredState> restore(String file) {
+        LogEntry entry = transactions.get(file);
+        return entry == null ? Optional.empty() : Optional.of(new RestoredState(entry.state, entry.action));
+    }
+
+    /**
+     * Get unfinished transactions.
+     *
+     * @return Source files of unfinished transactions.
+     */
+    @Override
+    public List<String> getTransactionFiles() {
+        return new ArrayList<>(transactions.keySet());
+    }
+
+    /**
+     * Take over write-ahead log of another node. Last records of its unfinished transactions are appended to own log,
+     * after that segments of another node are deleted.
+     *
+     * @param transactionDir Transaction directory of another node.
+     * @return Source files of taken over transactions, to restore.
+     */
+    @Override
+    public List<String> adoptTransactions(String transactionDir) {
+        Path otherDir = Paths.get(transactionDir);
+        Map<String, LogEntry> adopted = new LinkedHashMap<>();
+        List<Long> otherSegments;
+        try {
+            otherSegments = listSegments(otherDir);
+            for (long segment : otherSegments) {
+                readSegment(getSegmentFile(otherDir, segment), (type, key, action) -> {
+                    if (type == TYPE_REMOVE) {
+                        adopted.remove(key);
+                    } else {
+                        adopted.put(key, new LogEntry(getState(type), action, segment));
+                    }
+                });
+            }
+            for (Map.Entry<String, LogEntry> entry : adopted.entrySet()) {
+                append(getType(entry.getValue().state), entry.getKey(), entry.getValue().action);
+            }
+            syncWritten();
+        } catch (IOException e) {
+            logger.error(String.format("Could not take over write-ahead log %s", transactionDir));
+            logger.error(e.getMessage(), e);
+            return new ArrayList<>();
+        }
+        for (long segment : otherSegments) {
+            try {
+                Files.deleteIfExists(getSegmentFile(otherDir, segment));
+            } catch (IOException e) {
+                logger.error(String.format("Could not delete segment %d of write-ahead log %s", segment, transactionDir));
+                logger.error(e.getMessage(), e);
+            }
+        }
+        return new ArrayList<>(adopted.keySet());
+    }
+
+    /**
+     * Force log to disk and close it.
+     */
+    @Override
+    public void close() {
+        if (fsyncService != null) {
+            fsyncService.shutdown();
+        }
+        synchronized (this) {
+            try {
+                active.force(false);
+                active.close();
+            } catch (IOException e) {
+                logger.error(String.format("Error while closing write-ahead log %s", dir));
+                logger.error(e.getMessage(), e);
+            }
+        }
+    }
+
+    /**
+     * Append record to log, wait until it is forced if policy requires.
+     *
+     * @param type   Type of record.
+     * @param key    Source file.
+     * @param action Action identifier.
+     * @throws IOException
+     */
+    private void append(byte type, String key, String action) throws IOException {
+        ByteBuffer record = encode(type, key, action);
+        long position;
+        boolean sync;
+        synchronized (this) {
+            if (activeSize >= segmentSize) {
+                roll();
+            }
+            write(record);
+            apply(type, key, action, activeSegment);
+            position = written;
+            if (type == TYPE_REMOVE) {
+                deleteResolvedSegments();
+            }
+            sync = fsyncPolicy == FsyncPolicy.ALWAYS;
+            if (fsyncPolicy == FsyncPolicy.EVERY_N && ++unsynced >= fsyncEveryN) {
+                unsynced = 0;
+                sync = true;
+            }
+        }
+        if (sync) {
+            sync(position);
+        }
+    }
+
+    /**
+     * Write record to active segment.
+     *
+     * @param record Encoded record.
+     * @throws IOException
+     */
+    private synchronized void write(ByteBuffer record) throws IOException {
+        int size = record.remaining();
+        while (record.hasRemaining()) {
+            active.write(record);
+        }
+        activeSize += size;
+        written++;
+    }
+
+    /**
+     * Force written records to disk. Records written by other threads before force are forced together,
+     * so threads waiting for them return without force.
+     *
+     * @param position Count of written records, which should be forced.
+     * @throws IOException
+     */
+    private void sync(long position) throws IOException {
+        if (synced >= position) {
+            return;
+        }
+        // Lock does not pin virtual thread to its carrier while it waits for force
+        syncLock.lock();
+        try {
+            if (synced >= position) {
+                return;
+            }
+            long target;
+            FileChannel channel;
+            synchronized (this) {
+                target = written;
+                channel = active;
+            }
+            try {
+                channel.force(false);
+            } catch (ClosedChannelException e) {
+                // Segment was rolled, records of rolled segment are forced by roll
+            }
+            synced = target;
+        } finally {
+            syncLock.unlock();
+        }
+    }
+
+    /**
+     * Force all written records, used by periodic force.
+     */
+    private void syncWritten() {
+        long position;
+        synchronized (this) {
+            position = written;
+        }
+        try {
+            sync(position);
+        } catch (IOException e) {
+            logger.error(String.format("Error while forcing write-ahead log %s", dir));
+            logger.error(e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Start new segment. Records of unfinished transactions holding the oldest segment are copied to new segment,
+     * if there are too many segments.
+     *
+     * @throws IOException
+     */
+    private synchronized void roll() throws IOException {
+        if (fsyncPolicy != FsyncPolicy.NONE) {
+            active.force(false);
+        }
+        active.close();
+        openSegment(activeSegment + 1);
+        if (segments.size() > COMPACT_SEGMENT_COUNT) {
+            long oldest = segments.firstKey();
+            for (Map.Entry<String, LogEntry> entry : transactions.entrySet()) {
+                LogEntry logEntry = entry.getValue();
+                if (logEntry.segment == oldest) {
+                    byte type = getType(logEntry.state);
+                    write(encode(type, entry.getKey(), logEntry.action));
+                    apply(type, entry.getKey(), logEntry.action, activeSegment);
+                }
+            }
+            // Copied records are forced before the oldest segment is deleted, so they are not lost on crash
+            if (fsyncPolicy != FsyncPolicy.NONE) {
+                active.force(false);
+            }
+        }
+        deleteResolvedSegments();
+    }
+
+    /**
+     * Open new active segment.
+     *
+     * @param segment Number of segment.
+     * @throws IOException
+     */
+    private synchronized void openSegment(long segment) throws IOException {
+        active = FileChannel.open(getSegmentFile(dir, segment), StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+        activeSegment = segment;
+        activeSize = 0;
+        segments.put(segment, 0);
+    }
+
+    /**
+     * Apply record to state of unfinished transactions.
+     *
+     * @param type    Type of record.
+     * @param key     Source file.
+     * @param action  Action identifier.
+     * @param segment Segment of record.
+     */
+    private synchronized void apply(byte type, String key, String action, long segment) {
+        LogEntry previous = type == TYPE_REMOVE ? transactions.remove(key)
+                : transactions.put(key, new LogEntry(getState(type), action, segment));
+        if (previous != null) {
+            segments.computeIfPresent(previous.segment, (number, count) -> count - 1);
+        }
+        if (type != TYPE_REMOVE) {
+            segments.merge(segment, 1, Integer::sum);
+        }
+    }
+
+    /**
+     * Delete the oldest segments without records of unfinished transactions.
+     */
+    private synchronized void deleteResolvedSegments() {
+        while (!segments.isEmpty()) {
+            Map.Entry<Long, Integer> oldest = segments.firstEntry();
+            if (oldest.getKey() == activeSegment || oldest.getValue() > 0) {
+                return;
+            }
+            try {
+                Files.deleteIfExists(getSegmentFile(dir, oldest.getKey()));
+            } catch (IOException e) {
+                logger.warn(String.format("Could not delete segment %d of write-ahead log %s: %s", oldest.getKey(),
+                        dir, e.getMessage()));
+                return;
+            }
+            segments.pollFirstEntry();
+        }
+    }
+
+    /**
+     * Encode record.
+     *
+     * @param type   Type of record.
+     * @param key    Source file.
+     * @param action Action identifier.
+     * @return Record ready to write.
+     */
+    private static ByteBuffer encode(byte type, String key, String action) {
+        byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+        byte[] actionBytes = action.getBytes(StandardCharsets.UTF_8);
+        int length = 1 + 4 + keyBytes.length + actionBytes.length;
+        ByteBuffer record = ByteBuffer.allocate(HEADER_SIZE + length);
+        record.putInt(length).putInt(0).put(type).putInt(keyBytes.length).put(keyBytes).put(actionBytes);
+        CRC32 crc = new CRC32();
+        crc.update(record.array(), HEADER_SIZE, length);
+        record.putInt(4, (int) crc.getValue());
+        record.flip();
+        return record;
+    }
+
+    /**
+     * Read records of segment sequentially, reading is stopped at incomplete or damaged record.
+     *
+     * @param file     Segment file.
+     * @param consumer Consumer of records.
+     * @throws IOException
+     */
+    private static void readSegment(Path file, RecordConsumer consumer) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file), READ_BUFFER_SIZE))) {
+            CRC32 crc = new CRC32();
+            while (true) {
+                int length;
+                byte[] payload;
+                int checksum;
+                try {
+                    length = in.readInt();
+                    if (length < 5 || length > MAX_RECORD_SIZE) {
+                        logger.warn(String.format("Damaged record in %s, rest of segment is skipped", file));
+                        return;
+                    }
+                    checksum = in.readInt();
+                    payload = new byte[length];
+                    in.readFully(payload);
+                } catch (EOFException e) {
+                    return;
+                }
+                crc.reset();
+                crc.update(payload);
+                ByteBuffer buffer = ByteBuffer.wrap(payload);
+                byte type = buffer.get();
+                int keyLength = buffer.getInt();
+                if ((int) crc.getValue() != checksum || type < TYPE_OPEN || type > TYPE_REMOVE
+                        || keyLength < 0 || keyLength > length - 5) {
+                    logger.warn(String.format("Damaged record in %s, rest of segment is skipped", file));
+                    return;
+                }
+                consumer.accept(type, new String(payload, 5, keyLength, StandardCharsets.UTF_8),
+                        new String(payload, 5 + keyLength, length - 5 - keyLength, StandardCharsets.UTF_8));
+            }
+        }
+    }
+
+    /**
+     * Get numbers of segments in directory in ascending order.
+     *
+     * @param directory Directory.
+     * @return Numbers of segments.
+     * @throws IOException
+     */
+    private static List<Long> listSegments(Path directory) throws IOException {
+        List<Long> numbers = new ArrayList<>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, SEGMENT_PREFIX + "*" + SEGMENT_SUFFIX)) {
+            for (Path file : files) {
+                String name = file.getFileName().toString();
+                try {
+                    numbers.add(Long.parseLong(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length())));
+                } catch (NumberFormatException e) {
+                    logger.warn(String.format("Unknown file %s in write-ahead log directory", file));
+                }
+            }
+        }
+        numbers.sort(null);
+        return numbers;
+    }
+
+    private static Path getSegmentFile(Path directory, long segment) {
+        return directory.resolve(String.format("%s%020d%s", SEGMENT_PREFIX, segment, SEGMENT_SUFFIX));
+    }
+
+    private static TransactionState getState(byte type) {
+        return type == TYPE_OPEN ? TransactionState.OPEN : TransactionState.CLOSE;
+    }
+
+    private static byte getType(TransactionState state) {
+        return state == TransactionState.OPEN ? TYPE_OPEN : TYPE_CLOSE;
+    }
+
+    /**
+     * Consumer of records read from segment.
+     */
+    private interface RecordConsumer {
+        void accept(byte type, String key, String action);
+    }
+
+    /**
+     * Last record of unfinished transaction.
+     */
+    private static class LogEntry {
+        private final TransactionState state;
+        private final String action;
+        private final long segment;
+
+        LogEntry(TransactionState logState, String logAction, long logSegment) {
+            state = logState;
+            action = logAction;
+            segment = logSegment;
+        }
+    }
+}
@@ -5,16 +5,67 @@ package org.terehpp.crawler.constants;
  */
 public class AppPropName {
     public final static String MONITOR_SCHEDULE_TIMEOUT = "monitor.schedule.timeout";
+    public final static String MONITOR_MODE = "monitor.mode";
+    public final static String MONITOR_RECONCILE_TIMEOUT = "monitor.reconcile.timeout";
+    public final static String MONITOR_WALK_PARALLELISM = "monitor.walk.parallelism";
+    public final static String MONITOR_WALK_MAX_DEPTH = "monitor.walk.max_depth";
     public final static String PATH_TO_PROPERTIES_ARG = "-properties.location";
     public final static String PROCESSOR_MAX_THREAD_COUNT = "processor.max_thread_count";
+    public final static String PROCESSOR_EXECUTOR_MODE = "processor.executor.mode";
+    public final static String PROCESSOR_QUEUE_CAPACITY = "processor.queue.capacity";
+    public final static String PROCESSOR_CONCURRENCY_MODE = "processor.concurrency.mode";
+    public final static String PROCESSOR_CONCURRENCY_MIN_LIMIT = "processor.concurrency.min_limit";
+    public final static String PROCESSOR_PIPELINE_MODE = "processor.pipeline.mode";
+    public final static String PROCESSOR_PIPELINE_STAGE_THREADS = "processor.pipeline.%s.threads";
+    public final static String PROCESSOR_PIPELINE_QUEUE_CAPACITY = "processor.pipeline.queue.capacity";
+    public final static String PROCESSOR_LANE_LARGE_THRESHOLD = "processor.lane.large_threshold";
+    public final static String PROCESSOR_LANE_LARGE_SHARE = "processor.lane.large_share";
+    public final static String PROCESSOR_STABILITY_STRATEGY = "processor.stability.strategy";
+    public final static String PROCESSOR_STABILITY_QUIET_PERIOD = "processor.stability.quiet_period";
+    public final static String PROCESSOR_STABILITY_RETRY_DELAY = "processor.stability.retry_delay";
+    public final static String PROCESSOR_STABILITY_MARKER_SUFFIX = "processor.stability.marker_suffix";
+    public final static String PROCESSOR_STABILITY_PART_SUFFIX = "processor.stability.part_suffix";
     public final static String PROCESSOR_SUCCESS_DIR = "processor.success.dir";
     public final static String PROCESSOR_FAIL_DIR = "processor.fail.dir";
+    public final static String PROCESSOR_DEDUP_DIR = "processor.dedup.dir";
+    public final static String PROCESSOR_DEDUP_INDEX_DIR = "processor.dedup.index.dir";
+    public final static String PROCESSOR_DEDUP_INDEX_SEGMENTS = "processor.dedup.index.segments";
+    public final static String PROCESSOR_DEDUP_EXPECTED_COUNT = "processor.dedup.expected_count";
+    public final static String PROCESSOR_DEDUP_BLOOM_BITS = "processor.dedup.bloom.bits_per_hash";
     public final static String MONITOR_DIR = "monitor.dir";
     public final static String PROCESSOR_TEMP_DIR = "processor.temp.dir";
+    public final static String PROCESSOR_TX_MODE = "processor.tx.mode";
+    public final static String PROCESSOR_TX_WAL_SEGMENT_SIZE = "processor.tx.wal.segment_size";
+    public final static String PROCESSOR_TX_WAL_FSYNC = "processor.tx.wal.fsync";
+    public final static String PROCESSOR_TX_WAL_FSYNC_INTERVAL = "processor.tx.wal.fsync.interval";
+    public final static String PROCESSOR_TX_WAL_FSYNC_EVERY_N = "processor.tx.wal.fsync.every_n";
     public final static String ENTRY_XSD_SCHEMA_FILE = "entry.xsd.schema.file";
+    public final static String ANALYZER_MODE = "analyzer.mode";
+    public final static String ANALYZER_SCHEMA_RELOAD_INTERVAL = "analyzer.schema.reload_interval";
+    public final static String ANALYZER_WARMUP_DIR = "analyzer.warmup.dir";
+    public final static String ANALYZER_WARMUP_COUNT = "analyzer.warmup.count";
+    public final static String PROCESSOR_CONTAINER_BATCH_SIZE = "processor.container.batch.size";
     public final static String CONNECTION_STRING = "db.connection.string";
     public final static String DB_LOGIN = "db.login";
     public final static String DB_PASS = "db.password";
+    public final static String DB_INSERT_MODE = "db.insert.mode";
+    public final static String DB_INSERT_BATCH_SIZE = "db.insert.batch.size";
+    public final static String DB_INSERT_BATCH_MAX_WAIT = "db.insert.batch.max_wait";
+    public final static String DB_ID_BLOCK_SIZE = "db.id.block_size";
+    public final static String DB_POOL_MAX_SIZE = "db.pool.max_size";
+    public final static String DB_POOL_MIN_IDLE = "db.pool.min_idle";
+    public final static String DB_POOL_IDLE_TIMEOUT = "db.pool.idle_timeout";
+    public final static String DB_POOL_CONNECTION_TIMEOUT = "db.pool.connection_timeout";
+    public final static String DB_POOL_LEAK_DETECTION_THRESHOLD = "db.pool.leak_detection_threshold";
+    public final static String DB_POOL_STATEMENT_CACHE_SIZE = "db.pool.statement_cache_size";
+    public final static String DB_SPOOL_DIR = "db.spool.dir";
+    public final static String DB_SPOOL_SEGMENT_SIZE = "db.spool.segment_size";
+    public final static String DB_SPOOL_BATCH_SIZE = "db.spool.batch.size";
+    public final static String DB_SPOOL_RETRY_DELAY = "db.spool.retry_delay";
+    public final static String CLUSTER_NODE_ID = "cluster.node.id";
+    public final static String CLUSTER_CLAIM_DIR = "cluster.claim.dir";
+    public final static String CLUSTER_LEASE_TIMEOUT = "cluster.lease.timeout";
+    public final static String CLUSTER_HEARTBEAT_INTERVAL = "cluster.heartbeat.interval";
 
     private AppPropName() {
     }
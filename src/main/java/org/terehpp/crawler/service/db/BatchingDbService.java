@@ -0,0 +1,192 @@
+package org.terehpp.crawler.service.db;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import org.terehpp.crawler.utils.DbHelper;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * Db service, which collects entities of concurrent inserts to batches. Batch is written when it reaches its size or
+ * when the first entity waits for maximum time, batch is committed in one db transaction with JDBC batching.
+ * Insert returns only after batch of entity is committed, so caller could rely on entity being stored.
+ * If batch fails, its entities are inserted one by one, so bad entity fails only its own insert.
+ *
+ * @param <T> Entity type.
+ */
+public class BatchingDbService<T> implements DbService<T>, Closeable {
+    private final static Log logger = LogFactory.getLog(BatchingDbService.class);
+    private final static long POLL_TIMEOUT_MILLIS = 100;
+    private final DbService<T> dbService;
+    private final int batchSize;
+    private final long maxWaitNanos;
+    private final BlockingQueue<PendingInsert<T>> pending = new LinkedBlockingQueue<>();
+    private final Thread writer;
+    private volatile boolean closed;
+
+    /**
+     * Constructor.
+     *
+     * @param dbSrv         Db service, which writes batches.
+     * @param maxBatchSize  Maximum count of entities in batch.
+     * @param maxWaitMillis Maximum time the first entity of batch waits for other entities.
+     */
+    public BatchingDbService(DbService<T> dbSrv, int maxBatchSize, long maxWaitMillis) {
+        dbService = dbSrv;
+        batchSize = maxBatchSize;
+        maxWaitNanos = TimeUnit.MILLISECONDS.toNanos(maxWaitMillis);
+        writer = new Thread(this::writeBatches, "db-batch-writer");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    /**
+     * Insert entity with batch of concurrent inserts, wait until batch is committed.
+     *
+     * @param entity Entity to insert.
+     * @return Entity.
+     */
+    @Override
+    public T insert(T entity) {
+        if (closed) {
+            throw new IllegalStateException("Batch writer is closed");
+        }
+        PendingInsert<T> insert = new PendingInsert<>(entity);
+        pending.add(insert);
+        try {
+            return insert.result.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for batch insert", e);
+        } catch (ExecutionException e) {
+            throw e.getCause() instanceof RuntimeException ? (RuntimeException) e.getCause()
+                    : new IllegalStateException(e.getCause());
+        }
+    }
+
+    @Override
+    public void insertAll(Collection<T> entities) {
+        dbService.insertAll(entities);
+    }
+
+    @Override
+    public boolean exist(long id) {
+        return dbService.exist(id);
+    }
+
+    @Override
+    public Set<Long> existing(Collection<Long> ids) {
+        return dbService.existing(ids);
+    }
+
+    @Override
+    public long getNextId() {
+        return dbService.getNextId();
+    }
+
+    /**
+     * Write pending inserts and stop writer.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        try {
+            writer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Collect pending inserts to batches and write them, until service is closed.
+     */
+    private void writeBatches() {
+        List<PendingInsert<T>> batch = new ArrayList<>(batchSize);
+        while (!closed || !pending.isEmpty()) {
+            try {
+                PendingInsert<T> first = pending.poll(POLL_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                long deadline = System.nanoTime() + maxWaitNanos;
+                while (batch.size() < batchSize) {
+                    PendingInsert<T> next = pending.poll(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+                    if (next == null) {
+                        break;
+                    }
+                    batch.add(next);
+                }
+                write(batch);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (RuntimeException e) {
+                logger.error("Error while writing batch of entities");
+                logger.error(e.getMessage(), e);
+                batch.forEach(insert -> insert.result.completeExceptionally(e));
+            } finally {
+                batch.clear();
+            }
+        }
+    }
+
+    /**
+     * Write batch in one transaction, if it is rejected by db, write each entity in its own transaction, so only
+     * rejected entities fail. Other errors, e.g. db is not available, fail whole batch.
+     *
+     * @param batch Batch of inserts.
+     */
+    private void write(List<PendingInsert<T>> batch) {
+        try {
+            dbService.insertAll(batch.stream().map(insert -> insert.entity).collect(Collectors.toList()));
+            batch.forEach(insert -> insert.result.complete(insert.entity));
+            if (logger.isDebugEnabled()) {
+                logger.debug(String.format("Batch of %d entities is inserted", batch.size()));
+            }
+            return;
+        } catch (RuntimeException e) {
+            if (!DbHelper.isDataError(e)) {
+                throw e;
+            }
+            logger.warn(String.format("Batch of %d entities is rejected, entities are inserted one by one: %s",
+                    batch.size(), e.getMessage()));
+        }
+        for (PendingInsert<T> insert : batch) {
+            try {
+                dbService.insertAll(Collections.singletonList(insert.entity));
+                insert.result.complete(insert.entity);
+            } catch (RuntimeException e) {
+                logger.error(String.format("Error while inserting entity %s", insert.entity));
+                logger.error(e.getMessage(), e);
+                insert.result.completeExceptionally(e);
+            }
+        }
+    }
+
+    /**
+     * Entity waiting for insert.
+     *
+     * @param <T> Entity type.
+     */
+    private static class PendingInsert<T> {
+        private final T entity;
+        private final CompletableFuture<T> result = new CompletableFuture<>();
+
+        PendingInsert(T pendingEntity) {
+            entity = pendingEntity;
+        }
+    }
+}
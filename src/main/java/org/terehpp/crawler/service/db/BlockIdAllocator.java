@@ -0,0 +1,57 @@
+package org.terehpp.crawler.service.db;
+
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.LongSupplier;
+
+/**
+ * Allocator of identifiers by blocks (pooled-lo). Start of block is taken from db sequence, which is incremented
+ * by block size, identifiers of block are handed out locally without db round trip until block runs out.
+ * Blocks of sequence never intersect, so identifiers are unique across all nodes using the same sequence,
+ * identifiers of unused rest of block are lost on shutdown.
+ */
+public class BlockIdAllocator {
+    private final LongSupplier blockStarts;
+    private final int blockSize;
+    // Lock does not pin virtual thread to its carrier while next block is read from db
+    private final ReentrantLock lock = new ReentrantLock();
+    private long nextId;
+    private long blockEnd;
+
+    /**
+     * Constructor.
+     *
+     * @param nextBlockStart Supplier of next block start, usually next value of db sequence.
+     * @param size           Block size, equal to increment of sequence.
+     */
+    public BlockIdAllocator(LongSupplier nextBlockStart, int size) {
+        blockStarts = nextBlockStart;
+        blockSize = size;
+    }
+
+    /**
+     * Get next identifier, new block is reserved when current block runs out.
+     *
+     * @return Identifier.
+     */
+    public long next() {
+        lock.lock();
+        try {
+            if (nextId == blockEnd) {
+                nextId = blockStarts.getAsLong();
+                blockEnd = nextId + blockSize;
+            }
+            return nextId++;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Get block size.
+     *
+     * @return Block size.
+     */
+    public int getBlockSize() {
+        return blockSize;
+    }
+}
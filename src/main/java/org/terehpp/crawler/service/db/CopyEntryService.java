@@ -0,0 +1,63 @@
+package org.terehpp.crawler.service.db;
+
+import org.terehpp.crawler.model.Entry;
+import org.terehpp.crawler.utils.DbHelper;
+
+import java.io.StringReader;
+import java.sql.Timestamp;
+import java.util.Collection;
+
+/**
+ * Service to work with Entry as db entity, entities are inserted by PostgreSQL COPY instead of row by row inserts.
+ * COPY of entities is all-or-nothing, so entities of failed COPY should be inserted again with smaller chunks.
+ */
+public class CopyEntryService extends EntryService {
+    private final static String TABLE = "entry";
+    private final static String COLUMNS = "id, content, creationdate";
+    private final static int ESTIMATED_ROW_LENGTH = 128;
+
+    /**
+     * Constructor.
+     *
+     * @param idAllocator Allocator of entry identifiers.
+     */
+    public CopyEntryService(BlockIdAllocator idAllocator) {
+        super(idAllocator);
+    }
+
+    /**
+     * Insert entities to db by one COPY.
+     *
+     * @param entities Entities to insert.
+     */
+    @Override
+    public void insertAll(Collection<Entry> entities) {
+        StringBuilder rows = new StringBuilder(entities.size() * ESTIMATED_ROW_LENGTH);
+        for (Entry entity : entities) {
+            appendRow(rows, entity);
+        }
+        DbHelper.copyIn(TABLE, COLUMNS, new StringReader(rows.toString()));
+    }
+
+    /**
+     * Append entity as CSV row, null values are written as empty unquoted values.
+     *
+     * @param rows   Rows.
+     * @param entity Entity.
+     */
+    static void appendRow(StringBuilder rows, Entry entity) {
+        if (entity.getId() != null) {
+            rows.append(entity.getId());
+        }
+        rows.append(',');
+        if (entity.getContent() != null) {
+            rows.append('"').append(entity.getContent().replace("\"", "\"\"")).append('"');
+        }
+        rows.append(',');
+        if (entity.getCreationDate() != null) {
+            // Local time without zone, as the date is bound by JDBC to timestamp column
+            rows.append(new Timestamp(entity.getCreationDate().getTime()));
+        }
+        rows.append('\n');
+    }
+}
@@ -1,5 +1,8 @@
 package org.terehpp.crawler.service.db;
 
+import java.util.Collection;
+import java.util.Set;
+
 /**
  * Service to work with entity as db entity.
  *
@@ -14,6 +17,14 @@ public interface DbService<T> {
      */
     T insert(T entity);
 
+    /**
+     * Insert entities to db in one transaction.
+     *
+     * @param entities Entities to insert.
+     * @throws RuntimeException Occurred when entities were not inserted, transaction is rolled back.
+     */
+    void insertAll(Collection<T> entities);
+
     /**
      * Check if entity exist by id.
      *
@@ -22,6 +33,14 @@ public interface DbService<T> {
      */
     boolean exist(long id);
 
+    /**
+     * Get identifiers of existing entities, checked by few set-based queries.
+     *
+     * @param ids Identifiers.
+     * @return Existing identifiers.
+     */
+    Set<Long> existing(Collection<Long> ids);
+
     /**
      * Get next id from sequence.
      *
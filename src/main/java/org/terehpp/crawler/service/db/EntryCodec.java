@@ -0,0 +1,39 @@
+package org.terehpp.crawler.service.db;
+
+import org.terehpp.crawler.model.Entry;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Date;
+
+/**
+ * Codec of Entry: identifier, creation date in milliseconds, length of content and content in UTF-8.
+ * Null values are written as {@link Long#MIN_VALUE} and -1 length.
+ */
+public class EntryCodec implements SpoolCodec<Entry> {
+    private final static long NULL_LONG = Long.MIN_VALUE;
+
+    @Override
+    public byte[] encode(Entry entity) {
+        byte[] content = entity.getContent() != null ? entity.getContent().getBytes(StandardCharsets.UTF_8) : null;
+        ByteBuffer buffer = ByteBuffer.allocate(8 + 8 + 4 + (content != null ? content.length : 0));
+        buffer.putLong(entity.getId() != null ? entity.getId() : NULL_LONG);
+        buffer.putLong(entity.getCreationDate() != null ? entity.getCreationDate().getTime() : NULL_LONG);
+        if (content != null) {
+            buffer.putInt(content.length).put(content);
+        } else {
+            buffer.putInt(-1);
+        }
+        return buffer.array();
+    }
+
+    @Override
+    public Entry decode(byte[] bytes) {
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        long id = buffer.getLong();
+        long date = buffer.getLong();
+        int contentLength = buffer.getInt();
+        String content = contentLength >= 0 ? new String(bytes, buffer.position(), contentLength, StandardCharsets.UTF_8) : null;
+        return new Entry(id != NULL_LONG ? id : null, content, date != NULL_LONG ? new Date(date) : null);
+    }
+}
@@ -3,14 +3,24 @@ package org.terehpp.crawler.service.db;
 import org.terehpp.crawler.model.Entry;
 import org.terehpp.crawler.utils.DbHelper;
 
-import java.util.concurrent.atomic.AtomicLong;
+import java.util.Collection;
+import java.util.Set;
 
 /**
  * Service to work with Entry as db entity.
- *
+ * Identifiers are allocated by blocks of db sequence, so several nodes could insert entries at the same time.
  */
 public class EntryService implements DbService<Entry> {
-    private static AtomicLong seq = new AtomicLong(0);
+    private final BlockIdAllocator ids;
+
+    /**
+     * Constructor.
+     *
+     * @param idAllocator Allocator of entry identifiers.
+     */
+    public EntryService(BlockIdAllocator idAllocator) {
+        ids = idAllocator;
+    }
 
     /**
      * Insert to db.
@@ -23,6 +33,16 @@ public class EntryService implements DbService<Entry> {
         return DbHelper.save(entity);
     }
 
+    /**
+     * Insert entities to db in one transaction.
+     *
+     * @param entities Entities to insert.
+     */
+    @Override
+    public void insertAll(Collection<Entry> entities) {
+        DbHelper.saveAll(entities);
+    }
+
     /**
      * Check if entity exist by id.
      *
@@ -34,6 +54,17 @@ public class EntryService implements DbService<Entry> {
         return DbHelper.exist(Entry.class, id);
     }
 
+    /**
+     * Get identifiers of existing entities, checked by few set-based queries.
+     *
+     * @param ids Identifiers.
+     * @return Existing identifiers.
+     */
+    @Override
+    public Set<Long> existing(Collection<Long> ids) {
+        return DbHelper.existing("Entry", ids);
+    }
+
     /**
      * Get next id from sequence.
      *
@@ -41,16 +72,6 @@ public class EntryService implements DbService<Entry> {
      */
     @Override
     public long getNextId() {
-        if (seq.get() == 0) {
-            synchronized (EntryService.class) {
-                if (seq.get() == 0) {
-                    Long currentId = (Long) DbHelper.getSingleResult("select max(id) from Entry");
-                    if (currentId != null) {
-                        seq.set(currentId);
-                    }
-                }
-            }
-        }
-        return seq.incrementAndGet();
+        return ids.next();
     }
 }
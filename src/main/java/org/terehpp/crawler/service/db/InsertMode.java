@@ -0,0 +1,23 @@
+package org.terehpp.crawler.service.db;
+
+/**
+ * Mode of entity insert.
+ */
+public enum InsertMode {
+    /**
+     * Each entity is inserted and committed separately.
+     */
+    SINGLE,
+    /**
+     * Entities of concurrent inserts are collected to batches, batch is committed in one transaction.
+     */
+    BATCH,
+    /**
+     * Entities of concurrent inserts are collected to chunks, chunk is loaded by PostgreSQL COPY in one transaction.
+     */
+    COPY,
+    /**
+     * Entities are written to local spool, spool is loaded to db in background.
+     */
+    SPOOL
+}
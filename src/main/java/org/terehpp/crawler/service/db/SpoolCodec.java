@@ -0,0 +1,24 @@
+package org.terehpp.crawler.service.db;
+
+/**
+ * Codec of entity stored in spool.
+ *
+ * @param <T> Entity type.
+ */
+public interface SpoolCodec<T> {
+    /**
+     * Encode entity.
+     *
+     * @param entity Entity.
+     * @return Bytes of entity.
+     */
+    byte[] encode(T entity);
+
+    /**
+     * Decode entity.
+     *
+     * @param bytes Bytes of entity.
+     * @return Entity.
+     */
+    T decode(byte[] bytes);
+}
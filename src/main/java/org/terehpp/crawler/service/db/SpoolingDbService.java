@@ -0,0 +1,763 @@
+package org.terehpp.crawler.service.db;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.terehpp.crawler.model.DbEntity;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.file.DirectoryNotEmptyException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+import java.util.zip.CRC32;
+
+/**
+ * Write-behind db service. Inserted entity is appended to local spool and forced to disk, insert returns without
+ * waiting for db. Drainer thread loads spool to db by large batches and acknowledges loaded records, so db slowdown
+ * does not stall processing of files.
+ * <p>
+ * Spool consists of segments with records: length of payload, CRC32 of payload and encoded entity. Acknowledged
+ * position (segment and offset) is kept in separate file, segments before it are deleted. On start records after
+ * acknowledged position are loaded again, entities which are already in db are skipped. New records are always
+ * appended to new segment.
+ * <p>
+ * If batch fails while db is available, entities are inserted one by one, entities which could not be inserted are
+ * moved to file of rejected records in the same format. If db is not available, batch is retried after delay.
+ * <p>
+ * Spool is locked by its service, so spool of dead cluster node could be adopted by another node only if its
+ * process does not use it anymore.
+ *
+ * @param <T> Entity type.
+ */
+public class SpoolingDbService<T extends DbEntity> implements DbService<T>, Closeable {
+    private final static Log logger = LogFactory.getLog(SpoolingDbService.class);
+    private final static String SEGMENT_PREFIX = "spool-";
+    private final static String SEGMENT_SUFFIX = ".log";
+    private final static String ACK_FILE = "spool.ack";
+    private final static String REJECTED_FILE = "rejected.log";
+    private final static String LOCK_FILE = "spool.lock";
+    private final static int HEADER_SIZE = 8;
+    private final static int MAX_RECORD_SIZE = 1024 * 1024;
+    private final static long IDLE_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+    private final Path dir;
+    private final DbService<T> dbService;
+    private final SpoolCodec<T> codec;
+    private final long segmentSize;
+    private final int batchSize;
+    private final long retryDelay;
+    private final Set<Long> pending = ConcurrentHashMap.newKeySet();
+    private final ReentrantLock syncLock = new ReentrantLock();
+    private final Thread drainer;
+    private final FileChannel lockChannel;
+    private final FileLock lock;
+    private volatile long synced;
+    private volatile boolean closed;
+    // Guarded by this
+    private FileChannel active;
+    private long activeSegment;
+    private long activeSize;
+    private long written;
+    // Used only by drainer
+    private FileChannel reader;
+    private long readSegment;
+    private long readPosition;
+
+    /**
+     * Constructor.
+     *
+     * @param spoolDirectory Directory of spool.
+     * @param dbSrv          Db service, which loads batches to db.
+     * @param entityCodec    Codec of entity.
+     * @param segmentBytes   Size of segment, when it is reached, new segment is started.
+     * @param maxBatchSize   Maximum count of entities loaded to db in one transaction.
+     * @param retryMillis    Delay before retry of batch, when db is not available.
+     * @throws IOException Occurred when spool could not be read or it is used by another service.
+     */
+    public SpoolingDbService(String spoolDirectory, DbService<T> dbSrv, SpoolCodec<T> entityCodec, long segmentBytes,
+                             int maxBatchSize, long retryMillis) throws IOException {
+        dir = Files.createDirectories(Paths.get(spoolDirectory));
+        dbService = dbSrv;
+        codec = entityCodec;
+        segmentSize = segmentBytes;
+        batchSize = maxBatchSize;
+        retryDelay = retryMillis;
+        lockChannel = FileChannel.open(dir.resolve(LOCK_FILE), StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+        lock = tryLock(lockChannel);
+        if (lock == null) {
+            lockChannel.close();
+            throw new IOException(String.format("Spool %s is used by another service", dir));
+        }
+        long[] ack = readAck(dir);
+        long lastSegment = ack[0];
+        for (long segment : listSegments(dir)) {
+            if (segment < ack[0]) {
+                Files.deleteIfExists(getSegmentFile(dir, segment));
+                continue;
+            }
+            readRecords(getSegmentFile(dir, segment), segment == ack[0] ? ack[1] : 0,
+                    payload -> pending.add(codec.decode(payload).getId()));
+            lastSegment = Math.max(lastSegment, segment);
+        }
+        synchronized (this) {
+            openSegment(lastSegment + 1);
+        }
+        readSegment = ack[0];
+        readPosition = ack[1];
+        logger.info(String.format("Spool %s is opened, %d entities are not loaded to db", dir, pending.size()));
+        drainer = new Thread(this::drain, "spool-drainer");
+        drainer.setDaemon(true);
+        drainer.start();
+    }
+
+    /**
+     * Append entity to spool and force it to disk, entity is loaded to db later.
+     *
+     * @param entity Entity to insert.
+     * @return Entity.
+     * @throws UncheckedIOException Occurred when entity could not be written to spool.
+     */
+    @Override
+    public T insert(T entity) {
+        if (closed) {
+            throw new IllegalStateException("Spool is closed");
+        }
+        ByteBuffer record = encode(codec.encode(entity));
+        try {
+            long position;
+            synchronized (this) {
+                position = append(record, entity.getId());
+            }
+            sync(position);
+        } catch (IOException e) {
+            throw new UncheckedIOException(String.format("Could not write entity %d to spool %s", entity.getId(), dir), e);
+        }
+        LockSupport.unpark(drainer);
+        return entity;
+    }
+
+    /**
+     * Append entities to spool and force them to disk once, entities are loaded to db later.
+     *
+     * @param entities Entities to insert.
+     * @throws UncheckedIOException Occurred when entities could not be written to spool, some of them could be
+     *                              written and loaded later.
+     */
+    @Override
+    public void insertAll(Collection<T> entities) {
+        if (closed) {
+            throw new IllegalStateException("Spool is closed");
+        }
+        if (entities.isEmpty()) {
+            return;
+        }
+        List<ByteBuffer> records = entities.stream().map(entity -> encode(codec.encode(entity)))
+                .collect(Collectors.toList());
+        try {
+            long position = 0;
+            synchronized (this) {
+                int i = 0;
+                for (T entity : entities) {
+                    position = append(records.get(i++), entity.getId());
+                }
+            }
+            sync(position);
+        } catch (IOException e) {
+            throw new UncheckedIOException(String.format("Could not write %d entities to spool %s", entities.size(), dir), e);
+        }
+        LockSupport.unpark(drainer);
+    }
+
+    /**
+     * Move not loaded entities of another spool to this spool, e.g. spool of dead cluster node. Entities are
+     * appended and forced before segments of adopted spool are deleted, so entities are not lost if adoption breaks.
+     * Entities, which were already loaded but not acknowledged, are skipped by drainer.
+     * File of rejected records is kept in adopted spool.
+     *
+     * @param spoolDirectory Directory of spool to adopt.
+     * @return Count of adopted entities, -1 if spool could not be adopted.
+     */
+    public int adopt(Path spoolDirectory) {
+        if (!Files.isDirectory(spoolDirectory)) {
+            return 0;
+        }
+        int adopted = 0;
+        try (FileChannel otherLockChannel = FileChannel.open(spoolDirectory.resolve(LOCK_FILE),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+             FileLock otherLock = tryLock(otherLockChannel)) {
+            if (otherLock == null) {
+                logger.warn(String.format("Spool %s is still used by its service, it is not adopted", spoolDirectory));
+                return -1;
+            }
+            long[] ack = readAck(spoolDirectory);
+            List<Long> segments = listSegments(spoolDirectory);
+            for (long segment : segments) {
+                if (segment < ack[0]) {
+                    continue;
+                }
+                List<T> entities = new ArrayList<>();
+                readRecords(getSegmentFile(spoolDirectory, segment), segment == ack[0] ? ack[1] : 0,
+                        payload -> entities.add(codec.decode(payload)));
+                insertAll(entities);
+                adopted += entities.size();
+            }
+            for (long segment : segments) {
+                Files.deleteIfExists(getSegmentFile(spoolDirectory, segment));
+            }
+            Files.deleteIfExists(spoolDirectory.resolve(ACK_FILE));
+        } catch (IOException | RuntimeException e) {
+            logger.error(String.format("Could not adopt spool %s", spoolDirectory));
+            logger.error(e.getMessage(), e);
+            return -1;
+        }
+        try {
+            Files.deleteIfExists(spoolDirectory.resolve(LOCK_FILE));
+            Files.deleteIfExists(spoolDirectory);
+        } catch (DirectoryNotEmptyException e) {
+            logger.warn(String.format("Spool %s has rejected records, directory is kept", spoolDirectory));
+        } catch (IOException e) {
+            logger.warn(String.format("Could not delete adopted spool %s: %s", spoolDirectory, e.getMessage()));
+        }
+        logger.info(String.format("Spool %s is adopted by spool %s, %d entities", spoolDirectory, dir, adopted));
+        return adopted;
+    }
+
+    /**
+     * Get directory of spool.
+     *
+     * @return Directory.
+     */
+    public Path getDirectory() {
+        return dir;
+    }
+
+    /**
+     * Check if entity exist in spool or in db.
+     *
+     * @param id Identifier.
+     * @return Result of check.
+     */
+    @Override
+    public boolean exist(long id) {
+        return pending.contains(id) || dbService.exist(id);
+    }
+
+    /**
+     * Get identifiers of entities existing in spool or in db.
+     *
+     * @param ids Identifiers.
+     * @return Existing identifiers.
+     */
+    @Override
+    public Set<Long> existing(Collection<Long> ids) {
+        Set<Long> result = new HashSet<>();
+        List<Long> notSpooled = new ArrayList<>();
+        for (Long id : ids) {
+            if (pending.contains(id)) {
+                result.add(id);
+            } else {
+                notSpooled.add(id);
+            }
+        }
+        if (!notSpooled.isEmpty()) {
+            result.addAll(dbService.existing(notSpooled));
+        }
+        return result;
+    }
+
+    @Override
+    public long getNextId() {
+        return dbService.getNextId();
+    }
+
+    /**
+     * Get count of entities which are not loaded to db.
+     *
+     * @return Count of entities.
+     */
+    public int getPendingCount() {
+        return pending.size();
+    }
+
+    /**
+     * Stop drainer and close spool, entities which are not loaded are loaded after restart.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        LockSupport.unpark(drainer);
+        try {
+            drainer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        synchronized (this) {
+            try {
+                active.force(false);
+                active.close();
+                if (reader != null) {
+                    reader.close();
+                }
+                lock.release();
+                lockChannel.close();
+            } catch (IOException e) {
+                logger.error(String.format("Error while closing spool %s", dir));
+                logger.error(e.getMessage(), e);
+            }
+        }
+    }
+
+    /**
+     * Load spool to db by batches until spool is closed.
+     */
+    private void drain() {
+        while (!closed) {
+            List<SpooledEntity<T>> batch;
+            try {
+                batch = readBatch();
+            } catch (IOException e) {
+                logger.error(String.format("Error while reading spool %s", dir));
+                logger.error(e.getMessage(), e);
+                LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(retryDelay));
+                continue;
+            }
+            if (batch.isEmpty()) {
+                LockSupport.parkNanos(IDLE_PARK_NANOS);
+                continue;
+            }
+            while (!closed && !load(batch)) {
+                LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(retryDelay));
+            }
+        }
+    }
+
+    /**
+     * Load batch to db and acknowledge it.
+     *
+     * @param batch Batch of spooled entities.
+     * @return Result of load, false if db is not available.
+     */
+    private boolean load(List<SpooledEntity<T>> batch) {
+        List<Long> ids = batch.stream().map(spooled -> spooled.entity.getId()).collect(Collectors.toList());
+        try {
+            // Entities loaded before restart, but not acknowledged, are skipped
+            Set<Long> loaded = dbService.existing(ids);
+            List<SpooledEntity<T>> notLoaded = batch.stream().filter(spooled -> !loaded.contains(spooled.entity.getId()))
+                    .collect(Collectors.toList());
+            if (!notLoaded.isEmpty()) {
+                try {
+                    dbService.insertAll(notLoaded.stream().map(spooled -> spooled.entity).collect(Collectors.toList()));
+                } catch (RuntimeException e) {
+                    logger.warn(String.format("Batch of %d spooled entities failed, entities are loaded one by one: %s",
+                            notLoaded.size(), e.getMessage()));
+                    loadOneByOne(notLoaded);
+                }
+            }
+            writeAck(readSegment, readPosition);
+        } catch (RuntimeException | IOException e) {
+            logger.warn(String.format("Could not load spool %s to db, retry in %d ms: %s", dir, retryDelay, e.getMessage()));
+            return false;
+        }
+        pending.removeAll(ids);
+        deleteLoadedSegments();
+        return true;
+    }
+
+    /**
+     * Load entities one by one, entities which could not be loaded while db is available are rejected.
+     *
+     * @param batch Batch of spooled entities.
+     * @throws IOException Occurred when rejected entities could not be written.
+     * @throws RuntimeException Occurred when db is not available.
+     */
+    private void loadOneByOne(List<SpooledEntity<T>> batch) throws IOException {
+        List<SpooledEntity<T>> failed = new ArrayList<>();
+        for (SpooledEntity<T> spooled : batch) {
+            try {
+                dbService.insertAll(Collections.singletonList(spooled.entity));
+            } catch (RuntimeException e) {
+                failed.add(spooled);
+            }
+        }
+        if (failed.isEmpty()) {
+            return;
+        }
+        // Throws if db is not available, then whole batch is retried
+        Set<Long> loaded = dbService.existing(failed.stream().map(spooled -> spooled.entity.getId())
+                .collect(Collectors.toList()));
+        try (FileChannel rejected = FileChannel.open(dir.resolve(REJECTED_FILE), StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+            for (SpooledEntity<T> spooled : failed) {
+                if (loaded.contains(spooled.entity.getId())) {
+                    continue;
+                }
+                logger.error(String.format("Entity %d could not be loaded to db, it is moved to %s",
+                        spooled.entity.getId(), dir.resolve(REJECTED_FILE)));
+                ByteBuffer record = encode(spooled.payload);
+                while (record.hasRemaining()) {
+                    rejected.write(record);
+                }
+            }
+            rejected.force(false);
+        }
+    }
+
+    /**
+     * Read next batch of records after read position, position is moved to the end of batch.
+     *
+     * @return Batch, empty if there are no new records.
+     * @throws IOException
+     */
+    private List<SpooledEntity<T>> readBatch() throws IOException {
+        List<SpooledEntity<T>> batch = new ArrayList<>();
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        CRC32 crc = new CRC32();
+        while (batch.size() < batchSize) {
+            long currentSegment;
+            long limit;
+            synchronized (this) {
+                currentSegment = activeSegment;
+                limit = readSegment == activeSegment ? activeSize : -1;
+            }
+            if (reader == null) {
+                Path file = getSegmentFile(dir, readSegment);
+                if (!Files.exists(file)) {
+                    if (readSegment >= currentSegment) {
+                        return batch;
+                    }
+                    nextReadSegment();
+                    continue;
+                }
+                reader = FileChannel.open(file, StandardOpenOption.READ);
+            }
+            if (limit < 0) {
+                limit = reader.size();
+            }
+            if (readPosition + HEADER_SIZE > limit) {
+                if (readSegment >= currentSegment) {
+                    return batch;
+                }
+                nextReadSegment();
+                continue;
+            }
+            header.clear();
+            readFully(header, readPosition);
+            int length = header.getInt(0);
+            int checksum = header.getInt(4);
+            if (length <= 0 || length > MAX_RECORD_SIZE || readPosition + HEADER_SIZE + length > limit) {
+                if (!skipDamaged(currentSegment)) {
+                    return batch;
+                }
+                continue;
+            }
+            byte[] payload = new byte[length];
+            readFully(ByteBuffer.wrap(payload), readPosition + HEADER_SIZE);
+            crc.reset();
+            crc.update(payload);
+            if ((int) crc.getValue() != checksum) {
+                if (!skipDamaged(currentSegment)) {
+                    return batch;
+                }
+                continue;
+            }
+            batch.add(new SpooledEntity<>(codec.decode(payload), payload));
+            readPosition += HEADER_SIZE + length;
+        }
+        return batch;
+    }
+
+    /**
+     * Skip rest of damaged segment. Active segment is skipped only after it is rolled, as failed write rolls it.
+     *
+     * @param currentSegment Active segment.
+     * @return Result of skip, false if segment is active.
+     * @throws IOException
+     */
+    private boolean skipDamaged(long currentSegment) throws IOException {
+        if (readSegment >= currentSegment) {
+            return false;
+        }
+        logger.warn(String.format("Damaged record in segment %d of spool %s, rest of segment is skipped", readSegment, dir));
+        nextReadSegment();
+        return true;
+    }
+
+    /**
+     * Move read position to the start of next segment.
+     *
+     * @throws IOException
+     */
+    private void nextReadSegment() throws IOException {
+        if (reader != null) {
+            reader.close();
+            reader = null;
+        }
+        readSegment++;
+        readPosition = 0;
+    }
+
+    private void readFully(ByteBuffer buffer, long position) throws IOException {
+        long offset = position;
+        while (buffer.hasRemaining()) {
+            int read = reader.read(buffer, offset);
+            if (read < 0) {
+                throw new IOException(String.format("Unexpected end of segment %d of spool %s", readSegment, dir));
+            }
+            offset += read;
+        }
+    }
+
+    /**
+     * Read valid records of segment, reading stops at the first damaged record.
+     *
+     * @param segmentFile     Segment.
+     * @param from            Position of the first record.
+     * @param payloadConsumer Consumer of record payload.
+     * @throws IOException
+     */
+    private static void readRecords(Path segmentFile, long from, Consumer<byte[]> payloadConsumer) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        CRC32 crc = new CRC32();
+        try (FileChannel channel = FileChannel.open(segmentFile, StandardOpenOption.READ)) {
+            long size = channel.size();
+            long position = from;
+            while (position + HEADER_SIZE <= size) {
+                header.clear();
+                channel.read(header, position);
+                int length = header.getInt(0);
+                if (length <= 0 || length > MAX_RECORD_SIZE || position + HEADER_SIZE + length > size) {
+                    return;
+                }
+                ByteBuffer payload = ByteBuffer.allocate(length);
+                while (payload.hasRemaining()) {
+                    channel.read(payload, position + HEADER_SIZE + payload.position());
+                }
+                crc.reset();
+                crc.update(payload.array());
+                if ((int) crc.getValue() != header.getInt(4)) {
+                    return;
+                }
+                payloadConsumer.accept(payload.array());
+                position += HEADER_SIZE + length;
+            }
+        }
+    }
+
+    /**
+     * Force written records to disk. Records written by other threads before force are forced together,
+     * so threads waiting for them return without force.
+     *
+     * @param position Count of written records, which should be forced.
+     * @throws IOException
+     */
+    private void sync(long position) throws IOException {
+        if (synced >= position) {
+            return;
+        }
+        // Lock does not pin virtual thread to its carrier while it waits for force
+        syncLock.lock();
+        try {
+            if (synced >= position) {
+                return;
+            }
+            long target;
+            FileChannel channel;
+            synchronized (this) {
+                target = written;
+                channel = active;
+            }
+            try {
+                channel.force(false);
+            } catch (ClosedChannelException e) {
+                // Segment was rolled, records of rolled segment are forced by roll
+            }
+            synced = target;
+        } finally {
+            syncLock.unlock();
+        }
+    }
+
+    /**
+     * Append record to active segment, segment is rolled when it is full. Caller holds lock of this.
+     *
+     * @param record Record.
+     * @param id     Identifier of entity.
+     * @return Count of written records.
+     * @throws IOException
+     */
+    private long append(ByteBuffer record, long id) throws IOException {
+        if (activeSize >= segmentSize) {
+            roll();
+        }
+        int size = record.remaining();
+        try {
+            while (record.hasRemaining()) {
+                active.write(record);
+            }
+        } catch (IOException e) {
+            // Partly written record is left at the end of segment, next record starts new segment
+            activeSize = segmentSize;
+            throw e;
+        }
+        activeSize += size;
+        pending.add(id);
+        return ++written;
+    }
+
+    /**
+     * Start new segment.
+     *
+     * @throws IOException
+     */
+    private synchronized void roll() throws IOException {
+        active.force(false);
+        active.close();
+        openSegment(activeSegment + 1);
+    }
+
+    private synchronized void openSegment(long segment) throws IOException {
+        active = FileChannel.open(getSegmentFile(dir, segment), StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+        activeSegment = segment;
+        activeSize = 0;
+    }
+
+    /**
+     * Delete segments before acknowledged position.
+     */
+    private void deleteLoadedSegments() {
+        try {
+            for (long segment : listSegments(dir)) {
+                if (segment < readSegment) {
+                    Files.deleteIfExists(getSegmentFile(dir, segment));
+                }
+            }
+        } catch (IOException e) {
+            logger.warn(String.format("Could not delete loaded segments of spool %s: %s", dir, e.getMessage()));
+        }
+    }
+
+    /**
+     * Read acknowledged position.
+     *
+     * @param spoolDir Directory of spool.
+     * @return Segment and position in segment, first segment if nothing is acknowledged.
+     * @throws IOException
+     */
+    private static long[] readAck(Path spoolDir) throws IOException {
+        Path ackFile = spoolDir.resolve(ACK_FILE);
+        if (!Files.exists(ackFile)) {
+            List<Long> segments = listSegments(spoolDir);
+            return new long[]{segments.isEmpty() ? 0 : segments.get(0), 0};
+        }
+        ByteBuffer ack = ByteBuffer.wrap(Files.readAllBytes(ackFile));
+        return new long[]{ack.getLong(), ack.getLong()};
+    }
+
+    /**
+     * Write acknowledged position, file is replaced atomically.
+     *
+     * @param segment  Segment.
+     * @param position Position in segment.
+     * @throws IOException
+     */
+    private void writeAck(long segment, long position) throws IOException {
+        Path tmp = dir.resolve(ACK_FILE + ".tmp");
+        ByteBuffer ack = ByteBuffer.allocate(16).putLong(segment).putLong(position);
+        Files.write(tmp, ack.array(), StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                StandardOpenOption.WRITE, StandardOpenOption.DSYNC);
+        Files.move(tmp, dir.resolve(ACK_FILE), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    /**
+     * Get numbers of segments in ascending order.
+     *
+     * @param spoolDir Directory of spool.
+     * @return Numbers of segments.
+     * @throws IOException
+     */
+    private static List<Long> listSegments(Path spoolDir) throws IOException {
+        List<Long> numbers = new ArrayList<>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(spoolDir, SEGMENT_PREFIX + "*" + SEGMENT_SUFFIX)) {
+            for (Path file : files) {
+                String name = file.getFileName().toString();
+                try {
+                    numbers.add(Long.parseLong(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length())));
+                } catch (NumberFormatException e) {
+                    logger.warn(String.format("Unknown file %s in spool directory", file));
+                }
+            }
+        }
+        numbers.sort(null);
+        return numbers;
+    }
+
+    private static Path getSegmentFile(Path spoolDir, long segment) {
+        return spoolDir.resolve(String.format("%s%020d%s", SEGMENT_PREFIX, segment, SEGMENT_SUFFIX));
+    }
+
+    /**
+     * Try to lock spool.
+     *
+     * @param channel Channel of lock file.
+     * @return Lock, null if spool is locked by another process or by another service of this process.
+     * @throws IOException
+     */
+    private static FileLock tryLock(FileChannel channel) throws IOException {
+        try {
+            return channel.tryLock();
+        } catch (OverlappingFileLockException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Encode record.
+     *
+     * @param payload Encoded entity.
+     * @return Record ready to write.
+     */
+    private static ByteBuffer encode(byte[] payload) {
+        ByteBuffer record = ByteBuffer.allocate(HEADER_SIZE + payload.length);
+        CRC32 crc = new CRC32();
+        crc.update(payload);
+        record.putInt(payload.length).putInt((int) crc.getValue()).put(payload);
+        record.flip();
+        return record;
+    }
+
+    /**
+     * Entity read from spool.
+     *
+     * @param <T> Entity type.
+     */
+    private static class SpooledEntity<T> {
+        private final T entity;
+        private final byte[] payload;
+
+        SpooledEntity(T spooledEntity, byte[] spooledPayload) {
+            entity = spooledEntity;
+            payload = spooledPayload;
+        }
+    }
+}
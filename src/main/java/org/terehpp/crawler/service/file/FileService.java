@@ -8,7 +8,7 @@ import java.util.Optional;
 public interface FileService {
 
     /**
-     * Check if file is already open.
+     * Check if file is completely written by producer and could be processed.
      *
      * @param file File.
      * @return Result of check.
@@ -2,6 +2,7 @@ package org.terehpp.crawler.service.file;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
+import org.terehpp.crawler.component.stability.StabilityStrategy;
 
 import java.io.*;
 import java.nio.file.Paths;
@@ -11,21 +12,26 @@ import java.nio.file.Paths;
  */
 public class FileServiceImpl implements FileService {
     private final static Log logger = LogFactory.getLog(FileServiceImpl.class);
+    private final StabilityStrategy stability;
 
     /**
-     * Check if file is already open.
+     * Constructor.
+     *
+     * @param stabilityStrategy Strategy to detect if file is completely written.
+     */
+    public FileServiceImpl(StabilityStrategy stabilityStrategy) {
+        stability = stabilityStrategy;
+    }
+
+    /**
+     * Check if file is completely written by producer and could be processed.
      *
      * @param fileName File.
      * @return Result of check.
      */
     @Override
     public boolean isFileClosed(String fileName) {
-        synchronized (FileServiceImpl.class) {
-            File file = new File(fileName);
-            File renameFile = new File(fileName + "crawlerLock");
-            boolean result = file.renameTo(renameFile);
-            return result && renameFile.renameTo(file);
-        }
+        return stability.isStable(Paths.get(fileName));
     }
 
     /**
@@ -69,7 +75,11 @@ public class FileServiceImpl implements FileService {
             inStream.close();
             outStream.close();
 
-            return source.delete();
+            boolean deleted = source.delete();
+            if (deleted) {
+                stability.onProcessed(source.toPath());
+            }
+            return deleted;
 
         } catch (Exception e) {
             logger.error(e.getMessage(), e);
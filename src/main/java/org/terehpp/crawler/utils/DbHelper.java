@@ -4,20 +4,49 @@ import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.hibernate.Session;
 import org.hibernate.SessionFactory;
+import org.hibernate.StatelessSession;
 import org.hibernate.Transaction;
+import org.hibernate.cfg.AvailableSettings;
 import org.hibernate.cfg.Configuration;
+import org.hibernate.exception.ConstraintViolationException;
+import org.hibernate.exception.DataException;
+import org.postgresql.PGConnection;
 import org.terehpp.crawler.model.Entry;
 
+import javax.sql.DataSource;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.sql.Array;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.function.Function;
+
 /**
  * Db helper utility class.
  */
 public class DbHelper {
     private final static Log logger = LogFactory.getLog(DbHelper.class);
+    private final static int EXISTING_CHUNK_SIZE = 10000;
+    private final static String SQL_STATE_DATA_EXCEPTION = "22";
+    private final static String SQL_STATE_INTEGRITY_CONSTRAINT_VIOLATION = "23";
     private static SessionFactory sessionFactory;
+    private static DataSource dataSource;
     /**
-     * Each thread has it's own session.
+     * Sessions are borrowed for single operation and returned back cleared, so virtual threads do not open session each
+     * and sessions do not keep entities between operations.
      */
-    private static ThreadLocal<Session> session = new ThreadLocal<>();
+    private static final Queue<Session> idleSessions = new ConcurrentLinkedQueue<>();
 
     private DbHelper() {
     }
@@ -25,20 +54,14 @@ public class DbHelper {
     /**
      * Initialize session factory.
      *
-     * @param connectionString   Db connection string.
-     * @param login              Db login.
-     * @param password           Db password.
-     * @param connectionPoolSize Pool size.
+     * @param connectionPool Pool of db connections, it is closed with session factory.
      */
-    public static void initSessionFactory(String connectionString, String login, String password, int connectionPoolSize) {
+    public static void initSessionFactory(DataSource connectionPool) {
         Configuration configuration = new Configuration();
 
-        configuration.setProperty("hibernate.connection.driver_class", "org.postgresql.Driver");
-        configuration.setProperty("hibernate.connection.url", connectionString);
-        configuration.setProperty("hibernate.connection.username", login);
-        configuration.setProperty("hibernate.connection.password", password);
-        configuration.setProperty("hibernate.c3p0.max_size", Integer.toString(connectionPoolSize));
+        configuration.getProperties().put(AvailableSettings.DATASOURCE, connectionPool);
         configuration.addAnnotatedClass(Entry.class);
+        dataSource = connectionPool;
         sessionFactory = configuration.buildSessionFactory();
     }
 
@@ -46,33 +69,175 @@ public class DbHelper {
      * Close session factory.
      */
     public static void closeSessionFactory() {
+        Session idle;
+        while ((idle = idleSessions.poll()) != null) {
+            idle.close();
+        }
         if (sessionFactory != null) {
             sessionFactory.close();
         }
+        if (dataSource instanceof Closeable) {
+            try {
+                ((Closeable) dataSource).close();
+            } catch (IOException e) {
+                logger.error(e.getMessage(), e);
+            }
+        }
     }
 
     /**
-     * Save entity to db.
+     * Save entity to db by stateless session, saved entity is not cached.
      *
      * @param entity Enity to save.
      * @param <T>    Entity type.
      * @return Entity.
+     * @throws RuntimeException Occurred when entity was not saved, transaction is rolled back.
      */
     public static <T> T save(T entity) {
-        Transaction tx = getSession().getTransaction();
-        try {
-            tx.begin();
-            getSession().save(entity);
-            tx.commit();
-        } catch (Exception e) {
-            logger.error(e.getMessage(), e);
-            tx.rollback();
+        try (StatelessSession session = sessionFactory.openStatelessSession()) {
+            Transaction tx = session.getTransaction();
+            try {
+                tx.begin();
+                session.insert(entity);
+                tx.commit();
+            } catch (RuntimeException e) {
+                if (tx.isActive()) {
+                    tx.rollback();
+                }
+                throw e;
+            }
+            return entity;
+        }
+    }
+
+    /**
+     * Check if error is caused by rejected data, e.g. violated constraint or invalid value, so the same data will be
+     * rejected again. Other errors, e.g. lost connection or timeout of connection pool, are not data errors.
+     *
+     * @param e Error.
+     * @return Result of check.
+     */
+    public static boolean isDataError(Throwable e) {
+        for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+            if (cause instanceof ConstraintViolationException || cause instanceof DataException) {
+                return true;
+            }
+            if (cause instanceof SQLException) {
+                String sqlState = ((SQLException) cause).getSQLState();
+                if (sqlState != null && (sqlState.startsWith(SQL_STATE_DATA_EXCEPTION)
+                        || sqlState.startsWith(SQL_STATE_INTEGRITY_CONSTRAINT_VIOLATION))) {
+                    return true;
+                }
+            }
+            if (cause.getCause() == cause) {
+                break;
+            }
         }
-        return entity;
+        return false;
+    }
+
+    /**
+     * Save entities to db in one transaction, inserts are sent by JDBC batches.
+     *
+     * @param entities Entities to save.
+     * @param <T>      Entity type.
+     * @throws RuntimeException Occurred when entities were not saved, transaction is rolled back.
+     */
+    public static <T> void saveAll(Collection<T> entities) {
+        // Session lives for one batch, so saved entities are released with it
+        try (Session session = sessionFactory.openSession()) {
+            Transaction tx = session.getTransaction();
+            session.setJdbcBatchSize(entities.size());
+            try {
+                tx.begin();
+                for (T entity : entities) {
+                    session.save(entity);
+                }
+                tx.commit();
+            } catch (RuntimeException e) {
+                if (tx.isActive()) {
+                    tx.rollback();
+                }
+                throw e;
+            }
+        }
+    }
+
+    /**
+     * Load rows to table by COPY in one transaction, rows are streamed in CSV format.
+     *
+     * @param table   Table.
+     * @param columns Columns of rows.
+     * @param rows    Rows in CSV format.
+     * @return Count of loaded rows.
+     * @throws RuntimeException Occurred when rows were not loaded, transaction is rolled back.
+     */
+    public static long copyIn(String table, String columns, Reader rows) {
+        String copySql = String.format("copy %s (%s) from stdin with (format csv)", table, columns);
+        return inTransaction(session -> session.doReturningWork(connection -> {
+            try {
+                return connection.unwrap(PGConnection.class).getCopyAPI().copyIn(copySql, rows);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }));
+    }
+
+    /**
+     * Create sequence of table identifiers if it does not exist, sequence starts after maximum identifier of table.
+     * If sequence exists, its increment is kept, as blocks of other nodes are reserved by this increment.
+     *
+     * @param sequence  Sequence.
+     * @param table     Table.
+     * @param increment Increment of new sequence.
+     * @return Increment of sequence.
+     */
+    public static int initSequence(String sequence, String table, int increment) {
+        return inTransaction(session -> session.doReturningWork(connection -> {
+            try (PreparedStatement statement = connection.prepareStatement(
+                    "select increment_by from pg_sequences where sequencename = ?")) {
+                statement.setString(1, sequence);
+                try (ResultSet rows = statement.executeQuery()) {
+                    if (rows.next()) {
+                        return (int) rows.getLong(1);
+                    }
+                }
+            }
+            long start;
+            try (Statement statement = connection.createStatement();
+                 ResultSet rows = statement.executeQuery(
+                         String.format("select coalesce(max(id), 0) + 1 from %s", table))) {
+                rows.next();
+                start = rows.getLong(1);
+            }
+            try (Statement statement = connection.createStatement()) {
+                statement.execute(String.format("create sequence if not exists %s increment by %d start with %d",
+                        sequence, increment, start));
+            }
+            return increment;
+        }));
+    }
+
+    /**
+     * Get next value of sequence.
+     *
+     * @param sequence Sequence.
+     * @return Next value.
+     */
+    public static long nextSequenceValue(String sequence) {
+        return inTransaction(session -> session.doReturningWork(connection -> {
+            try (PreparedStatement statement = connection.prepareStatement("select nextval(?)")) {
+                statement.setString(1, sequence);
+                try (ResultSet rows = statement.executeQuery()) {
+                    rows.next();
+                    return rows.getLong(1);
+                }
+            }
+        }));
     }
 
     /**
-     * Check entity exist by id.
+     * Check entity exist by id, entity is always read from db.
      *
      * @param entityType Entity type.
      * @param id         Identifier.
@@ -80,19 +245,88 @@ public class DbHelper {
      * @return Result of check.
      */
     public static <T> boolean exist(Class<T> entityType, long id) {
-        return getSession().get(entityType, id) != null;
+        try (StatelessSession session = sessionFactory.openStatelessSession()) {
+            return session.get(entityType, id) != null;
+        }
     }
 
     /**
-     * Get session, if session was not init this method will do it.
+     * Get identifiers which exist in table. Identifiers are passed as array, one query per chunk of identifiers,
+     * so statement is the same for any count of identifiers.
      *
-     * @return Session for current thread.
+     * @param table Table.
+     * @param ids   Identifiers.
+     * @return Existing identifiers.
      */
-    private static Session getSession() {
-        if (session.get() == null) {
-            session.set(sessionFactory.openSession());
+    public static Set<Long> existing(String table, Collection<Long> ids) {
+        Set<Long> result = new HashSet<>();
+        if (ids.isEmpty()) {
+            return result;
+        }
+        List<Long> idList = new ArrayList<>(ids);
+        String query = String.format("select id from %s where id = any(?)", table);
+        return inTransaction(session -> session.doReturningWork(connection -> {
+            try (PreparedStatement statement = connection.prepareStatement(query)) {
+                for (int from = 0; from < idList.size(); from += EXISTING_CHUNK_SIZE) {
+                    List<Long> chunk = idList.subList(from, Math.min(idList.size(), from + EXISTING_CHUNK_SIZE));
+                    Array array = connection.createArrayOf("bigint", chunk.toArray());
+                    statement.setArray(1, array);
+                    try (ResultSet rows = statement.executeQuery()) {
+                        while (rows.next()) {
+                            result.add(rows.getLong(1));
+                        }
+                    }
+                    array.free();
+                }
+            }
+            return result;
+        }));
+    }
+
+    /**
+     * Execute operation in transaction of idle session. Connection of session is returned to pool when transaction
+     * is finished, so idle session does not keep connection, which is not in autocommit mode, idle in transaction.
+     *
+     * @param operation Operation.
+     * @param <R>       Result type.
+     * @return Result of operation.
+     * @throws RuntimeException Occurred when operation failed, transaction is rolled back.
+     */
+    private static <R> R inTransaction(Function<Session, R> operation) {
+        return withSession(session -> {
+            Transaction tx = session.getTransaction();
+            try {
+                tx.begin();
+                R result = operation.apply(session);
+                tx.commit();
+                return result;
+            } catch (RuntimeException e) {
+                if (tx.isActive()) {
+                    tx.rollback();
+                }
+                throw e;
+            }
+        });
+    }
+
+    /**
+     * Execute operation with idle session, if there is no idle session new one will be opened.
+     *
+     * @param operation Operation.
+     * @param <R>       Result type.
+     * @return Result of operation.
+     */
+    private static <R> R withSession(Function<Session, R> operation) {
+        Session session = idleSessions.poll();
+        if (session == null) {
+            session = sessionFactory.openSession();
+        }
+        try {
+            return operation.apply(session);
+        } finally {
+            session.clear();
+            idleSessions.offer(session);
         }
-        return session.get();
     }
 
     /**
@@ -102,6 +336,6 @@ public class DbHelper {
      * @return Result.
      */
     public static Object getSingleResult(String query) {
-        return getSession().createQuery(query).getSingleResult();
+        return inTransaction(session -> session.createQuery(query).getSingleResult());
     }
 }
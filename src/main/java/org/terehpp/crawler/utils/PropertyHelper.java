@@ -80,6 +80,47 @@ public class PropertyHelper {
         return res;
     }
 
+    /**
+     * Get positive int property, or default value if property is not specified.
+     *
+     * @param properties   Properties.
+     * @param key          Key of property.
+     * @param defaultValue Default value.
+     * @return Value.
+     * @throws PropertyHelperException
+     */
+    public static int getPositiveIntProperty(final Properties properties, String key, int defaultValue) throws PropertyHelperException {
+        if (StringUtils.isBlank(properties.getProperty(key))) {
+            return defaultValue;
+        }
+        return getPositiveIntProperty(properties, key);
+    }
+
+    /**
+     * Get enum property, or default value if property is not specified.
+     *
+     * @param properties   Properties.
+     * @param key          Key of property.
+     * @param type         Enum type.
+     * @param defaultValue Default value.
+     * @param <E>          Enum type.
+     * @return Value.
+     * @throws PropertyHelperException
+     */
+    public static <E extends Enum<E>> E getEnumProperty(final Properties properties, String key, Class<E> type, E defaultValue)
+            throws PropertyHelperException {
+        String property = properties.getProperty(key);
+        if (StringUtils.isBlank(property)) {
+            return defaultValue;
+        }
+        try {
+            return Enum.valueOf(type, property.trim().toUpperCase());
+        } catch (IllegalArgumentException e) {
+            logger.error(e.getMessage(), e);
+            throw new PropertyHelperException(String.format("Unknown value %s of property %s", property, key));
+        }
+    }
+
     /**
      * Get string property.
      *
@@ -96,6 +137,22 @@ public class PropertyHelper {
         return property;
     }
 
+    /**
+     * Get string property, or default value if property is not specified.
+     *
+     * @param properties   Properties.
+     * @param key          Key of property.
+     * @param defaultValue Default value.
+     * @return Value.
+     */
+    public static String getStrProperty(final Properties properties, String key, String defaultValue) {
+        String property = properties.getProperty(key);
+        if (StringUtils.isBlank(property)) {
+            return defaultValue;
+        }
+        return property.trim();
+    }
+
     /**
      * Get path from properties and check if it exist and needed rights exist.
      *
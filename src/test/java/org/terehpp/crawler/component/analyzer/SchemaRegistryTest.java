@@ -0,0 +1,61 @@
+package org.terehpp.crawler.component.analyzer;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.terehpp.crawler.model.Entry;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+public class SchemaRegistryTest {
+    @Test
+    public void sharedTest() throws Exception {
+        SchemaRegistry registry = new SchemaRegistry();
+        String xsd = getPathToFile("entry.xsd");
+        Assert.assertSame(registry.getContext(Entry.class), registry.getContext(Entry.class));
+        Assert.assertSame(registry.getSchema(xsd).get(), registry.getSchema(xsd).get());
+        Assert.assertEquals(false, registry.getSchema(null).isPresent());
+        Assert.assertEquals(0, registry.reloadChanged());
+    }
+
+    @Test
+    public void reloadTest() throws Exception {
+        Path xsd = Files.createTempFile("entry", ".xsd");
+        try {
+            String schema = new String(Files.readAllBytes(Paths.get(getPathToFile("entry.xsd"))), StandardCharsets.UTF_8);
+            Files.write(xsd, schema.getBytes(StandardCharsets.UTF_8));
+            SchemaRegistry registry = new SchemaRegistry();
+            XMLAnalyzerImpl<Entry> jaxb = new XMLAnalyzerImpl<>(Entry.class, xsd.toString(), registry);
+            StaxEntryAnalyzer stax = new StaxEntryAnalyzer(xsd.toString(), registry);
+            Assert.assertEquals(false, jaxb.analyze(getPathToFile("test.xml"), 1L).isError());
+            Assert.assertEquals(false, stax.analyze(getPathToFile("test.xml"), 1L).isError());
+
+            // Content of test.xml is longer than new limit
+            long modified = xsd.toFile().lastModified();
+            Files.write(xsd, schema.replace("<xsd:maxLength value=\"1024\"/>", "<xsd:maxLength value=\"4\"/>")
+                    .getBytes(StandardCharsets.UTF_8));
+            Assert.assertTrue(xsd.toFile().setLastModified(modified + 2000));
+            Assert.assertEquals(1, registry.reloadChanged());
+            Assert.assertEquals(true, jaxb.analyze(getPathToFile("test.xml"), 1L).isError());
+            Assert.assertEquals(true, stax.analyze(getPathToFile("test.xml"), 1L).isError());
+
+            // Broken schema is not used, previous schema is kept
+            Files.write(xsd, "<xsd:schema".getBytes(StandardCharsets.UTF_8));
+            Assert.assertTrue(xsd.toFile().setLastModified(modified + 4000));
+            Assert.assertEquals(0, registry.reloadChanged());
+            Assert.assertEquals(0, registry.reloadChanged());
+            Assert.assertEquals(true, jaxb.analyze(getPathToFile("test.xml"), 1L).isError());
+        } finally {
+            Files.delete(xsd);
+        }
+    }
+
+    private String getPathToFile(String fileName) {
+        ClassLoader classLoader = getClass().getClassLoader();
+        File file = new File(classLoader.getResource(fileName).getFile());
+        return file.getAbsolutePath();
+    }
+}
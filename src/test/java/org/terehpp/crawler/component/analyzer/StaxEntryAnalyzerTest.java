@@ -0,0 +1,160 @@
+package org.terehpp.crawler.component.analyzer;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.terehpp.crawler.model.Entry;
+import org.xml.sax.SAXException;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+public class StaxEntryAnalyzerTest {
+    private static StaxEntryAnalyzer analyzer;
+    private static StaxEntryAnalyzer validatingAnalyzer;
+
+    @Before
+    public void setUp() throws SAXException {
+        analyzer = new StaxEntryAnalyzer();
+        validatingAnalyzer = new StaxEntryAnalyzer(getPathToFile("entry.xsd"));
+    }
+
+    @Test
+    public void successTest() {
+        for (StaxEntryAnalyzer stax : new StaxEntryAnalyzer[]{analyzer, validatingAnalyzer}) {
+            AnalyzerResult<Entry> result = stax.analyze(getPathToFile("test.xml"), 1L);
+            Assert.assertEquals(false, result.isError());
+            assertSameAsJaxb(result.getEntity(), "test.xml");
+        }
+    }
+
+    @Test
+    public void failTest() {
+        for (StaxEntryAnalyzer stax : new StaxEntryAnalyzer[]{analyzer, validatingAnalyzer}) {
+            try {
+                AnalyzerResult<Entry> result = stax.analyze("fileNotFound.xml", 1L);
+                Assert.assertEquals(true, result.isError());
+
+                result = stax.analyze(getPathToFile("error.xml"), 1L);
+                Assert.assertEquals(true, result.isError());
+
+                result = stax.analyze(getPathToFile("invalidContent.xml"), 1L);
+                Assert.assertEquals(true, result.isError());
+
+                result = stax.analyze(getPathToFile("invalidDate.xml"), 1L);
+                Assert.assertEquals(true, result.isError());
+            } catch (Exception e) {
+                Assert.fail("Analyzer should not throw exceptions: " + e.getMessage());
+            }
+        }
+    }
+
+    @Test
+    public void structureTest() throws IOException {
+        String date = "<creationDate>2019-04-05 21:21:33</creationDate>";
+        Assert.assertEquals(true, analyze("<Entry><content>a</content>" + date + "<extra/></Entry>").isError());
+        Assert.assertEquals(true, analyze("<Entry>" + date + "<content>a</content></Entry>").isError());
+        Assert.assertEquals(true, analyze("<Entry><content>a</content></Entry>").isError());
+        Assert.assertEquals(true, analyze("<Other><content>a</content>" + date + "</Other>").isError());
+        Assert.assertEquals(true, analyze("<Entry><content><b>a</b></content>" + date + "</Entry>").isError());
+        // Streaming analyzer parses dates strictly, unlike JAXB analyzer
+        Assert.assertEquals(true, analyze("<Entry><content>a</content><creationDate>2017-02-30 10:00:00</creationDate>"
+                + "</Entry>").isError());
+        Assert.assertEquals(true, analyze("<Entry><content>a</content><creationDate>2017-01-01 24:00:00</creationDate>"
+                + "</Entry>").isError());
+
+        AnalyzerResult<Entry> result = analyze("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n<Entry>\n"
+                + "<content><![CDATA[a & b]]> &amp; c</content>" + date + "</Entry>\n<!-- end -->");
+        Assert.assertEquals(false, result.isError());
+        Assert.assertEquals("a & b & c", result.getEntity().getContent());
+    }
+
+    @Test
+    public void containerTest() throws IOException {
+        StringBuilder xml = new StringBuilder("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n<Entries>\n");
+        for (int i = 0; i < 1000; i++) {
+            if (i == 500) {
+                xml.append("<Entry><content>bad</content></Entry>\n");
+            } else {
+                xml.append("<Entry><content>").append(i).append("</content>")
+                        .append("<creationDate>2019-04-05 21:21:33</creationDate></Entry>\n");
+            }
+        }
+        xml.append("</Entries>\n<!-- end -->");
+        Path file = Files.createTempFile("entries", ".xml");
+        try {
+            Files.write(file, xml.toString().getBytes(StandardCharsets.UTF_8));
+            Assert.assertEquals(true, analyzer.isContainer(file.toString()));
+            Assert.assertEquals(false, analyzer.isContainer(getPathToFile("test.xml")));
+
+            try (ContainerReader<Entry> reader = analyzer.open(file.toString(), 0)) {
+                for (int i = 0; i < 1000; i++) {
+                    AnalyzerResult<Entry> result = reader.next();
+                    Assert.assertEquals(i == 500, result.isError());
+                    if (i != 500) {
+                        Assert.assertEquals(String.valueOf(i), result.getEntity().getContent());
+                    }
+                    Assert.assertEquals(i + 1, reader.getOffset());
+                }
+                Assert.assertNull(reader.next());
+            }
+
+            // Reading is continued from offset without mapping of skipped entries
+            try (ContainerReader<Entry> reader = analyzer.open(file.toString(), 998)) {
+                Assert.assertEquals("998", reader.next().getEntity().getContent());
+                Assert.assertEquals("999", reader.next().getEntity().getContent());
+                Assert.assertNull(reader.next());
+                Assert.assertEquals(1000, reader.getOffset());
+            }
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    @Test
+    public void malformedContainerTest() throws IOException {
+        Path file = Files.createTempFile("entries", ".xml");
+        try {
+            Files.write(file, ("<Entries><Entry><content>a</content><creationDate>2019-04-05 21:21:33</creationDate>"
+                    + "</Entry><Entry><content>b</con").getBytes(StandardCharsets.UTF_8));
+            try (ContainerReader<Entry> reader = analyzer.open(file.toString(), 0)) {
+                Assert.assertEquals("a", reader.next().getEntity().getContent());
+                try {
+                    reader.next();
+                    Assert.fail("Malformed container should not be read");
+                } catch (IOException e) {
+                    Assert.assertEquals(2, reader.getOffset());
+                }
+            }
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    private AnalyzerResult<Entry> analyze(String xml) throws IOException {
+        Path file = Files.createTempFile("entry", ".xml");
+        try {
+            Files.write(file, xml.getBytes(StandardCharsets.UTF_8));
+            return analyzer.analyze(file.toString(), 1L);
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    private void assertSameAsJaxb(Entry entry, String fileName) {
+        Entry expected = new XMLAnalyzerImpl<>(Entry.class, getPathToFile("entry.xsd"))
+                .analyze(getPathToFile(fileName), 1L).getEntity();
+        Assert.assertEquals(expected.getId(), entry.getId());
+        Assert.assertEquals(expected.getContent(), entry.getContent());
+        Assert.assertEquals(expected.getCreationDate(), entry.getCreationDate());
+    }
+
+    private String getPathToFile(String fileName) {
+        ClassLoader classLoader = getClass().getClassLoader();
+        File file = new File(classLoader.getResource(fileName).getFile());
+        return file.getAbsolutePath();
+    }
+}
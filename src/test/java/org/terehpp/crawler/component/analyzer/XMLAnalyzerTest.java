@@ -6,6 +6,11 @@ import org.junit.Test;
 import org.terehpp.crawler.model.Entry;
 
 import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.text.SimpleDateFormat;
 
 public class XMLAnalyzerTest {
     private static XMLAnalyzerImpl<Entry> analyzer;
@@ -40,6 +45,30 @@ public class XMLAnalyzerTest {
         }
     }
 
+    @Test
+    public void lenientDateTest() throws Exception {
+        // Out of range fields roll over, as dates were always parsed by JAXB analyzer
+        SimpleDateFormat format = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss");
+        AnalyzerResult<Entry> result = analyze("2017-02-30 10:00:00");
+        Assert.assertEquals(false, result.isError());
+        Assert.assertEquals(format.parse("2017-03-02 10:00:00"), result.getEntity().getCreationDate());
+
+        result = analyze("2017-01-01 24:00:00");
+        Assert.assertEquals(false, result.isError());
+        Assert.assertEquals(format.parse("2017-01-02 00:00:00"), result.getEntity().getCreationDate());
+    }
+
+    private AnalyzerResult<Entry> analyze(String date) throws IOException {
+        Path file = Files.createTempFile("entry", ".xml");
+        try {
+            Files.write(file, ("<Entry><content>a</content><creationDate>" + date + "</creationDate></Entry>")
+                    .getBytes(StandardCharsets.UTF_8));
+            return analyzer.analyze(file.toString(), 1L);
+        } finally {
+            Files.delete(file);
+        }
+    }
+
     private String getPathToFile(String fileName) {
         ClassLoader classLoader = getClass().getClassLoader();
         File file = new File(classLoader.getResource(fileName).getFile());
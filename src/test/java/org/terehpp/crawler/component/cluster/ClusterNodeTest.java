@@ -0,0 +1,169 @@
+package org.terehpp.crawler.component.cluster;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.terehpp.crawler.component.stability.RenameStabilityStrategy;
+import org.terehpp.crawler.component.transaction.TransactionManagerImpl;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class ClusterNodeTest {
+    private final static long LEASE_TIMEOUT = 500;
+    private final static long HEARTBEAT = 50;
+    private Path monitorDir;
+    private Path claimDir;
+    private Path txDir;
+    private final List<ClusterNode> nodes = new ArrayList<>();
+    private final List<String> recovered = new CopyOnWriteArrayList<>();
+    private final List<String> takenOver = new CopyOnWriteArrayList<>();
+
+    @Before
+    public void setUp() throws IOException {
+        Path root = Files.createTempDirectory("cluster");
+        monitorDir = Files.createDirectory(root.resolve("monitor"));
+        claimDir = Files.createDirectory(root.resolve("claim"));
+        txDir = Files.createDirectory(root.resolve("tx"));
+    }
+
+    @After
+    public void tearDown() {
+        nodes.forEach(ClusterNode::close);
+    }
+
+    @Test
+    public void claimRaceTest() throws Exception {
+        List<Path> files = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            // Files with the same name in different subdirectories
+            files.add(write(monitorDir.resolve("d" + (i % 10)).resolve("entry" + (i / 10) + ".xml"), "entry " + i));
+        }
+        write(monitorDir.resolve("partial.xml.part"), "partial");
+        ClusterNode first = startNode("first");
+        ClusterNode second = startNode("second");
+
+        AtomicInteger claimedCount = new AtomicInteger();
+        CountDownLatch start = new CountDownLatch(1);
+        List<Thread> threads = new ArrayList<>();
+        for (ClusterNode node : new ClusterNode[]{first, second}) {
+            Thread thread = new Thread(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                for (Path file : files) {
+                    if (node.claim(file).getFile().isPresent()) {
+                        claimedCount.incrementAndGet();
+                    }
+                }
+            });
+            thread.start();
+            threads.add(thread);
+        }
+        start.countDown();
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        Assert.assertEquals(100, claimedCount.get());
+        // File which is not completely written is reported as open, so it is checked again
+        FileClaim partial = first.claim(monitorDir.resolve("partial.xml.part"));
+        Assert.assertEquals(false, partial.getFile().isPresent());
+        Assert.assertEquals(true, partial.isOpen());
+        Assert.assertEquals(true, Files.exists(monitorDir.resolve("partial.xml.part")));
+
+        // Every file is claimed once and keeps its relative path and content
+        for (int i = 0; i < 100; i++) {
+            Path relative = monitorDir.relativize(files.get(i));
+            Path firstClaimed = claimDir.resolve("first").resolve(relative);
+            Path secondClaimed = claimDir.resolve("second").resolve(relative);
+            Assert.assertTrue(Files.exists(firstClaimed) ^ Files.exists(secondClaimed));
+            Path claimed = Files.exists(firstClaimed) ? firstClaimed : secondClaimed;
+            Assert.assertEquals("entry " + i, new String(Files.readAllBytes(claimed), StandardCharsets.UTF_8));
+        }
+    }
+
+    @Test
+    public void takeoverTest() throws Exception {
+        ClusterNode dead = startNode("dead");
+        Path file = write(monitorDir.resolve("sub").resolve("entry.xml"), "entry");
+        Optional<Path> claimed = dead.claim(file).getFile();
+        Assert.assertTrue(claimed.isPresent());
+        Files.write(txDir.resolve("dead").resolve("log"), "OPEN INSERT 1 file\n".getBytes(StandardCharsets.UTF_8));
+        dead.close();
+
+        startNode("alive");
+        waitFor(() -> Files.exists(file));
+        Assert.assertEquals(false, Files.exists(claimed.get()));
+        Assert.assertEquals(false, Files.exists(claimDir.resolve("dead")));
+        Assert.assertEquals(1, recovered.size());
+        Assert.assertEquals(false, Files.exists(txDir.resolve("dead").resolve("log")));
+        // Resources of dead node are taken over before its transactions are recovered
+        Assert.assertEquals(Collections.singletonList("dead:0"), takenOver);
+    }
+
+    @Test
+    public void leaseReacquireTest() throws Exception {
+        // Slow node has rare heartbeat, so its lease looks expired for another node
+        ClusterNode slow = startNode("slow", 20 * LEASE_TIMEOUT, 10 * HEARTBEAT);
+        startNode("alive");
+        Path slowLease = claimDir.resolve("slow.lease");
+        Files.setLastModifiedTime(slowLease, FileTime.fromMillis(System.currentTimeMillis() - 10 * LEASE_TIMEOUT));
+        waitFor(() -> !Files.exists(slowLease));
+        // Lease is taken again after takeover, node claims files again
+        waitFor(() -> Files.exists(slowLease));
+        Assert.assertEquals(true, slow.claim(write(monitorDir.resolve("after.xml"), "after")).getFile().isPresent());
+        Assert.assertEquals(true, Files.exists(claimDir.resolve("slow").resolve("after.xml")));
+    }
+
+    private ClusterNode startNode(String id) throws IOException {
+        return startNode(id, LEASE_TIMEOUT, HEARTBEAT);
+    }
+
+    private ClusterNode startNode(String id, long leaseTimeout, long heartbeat) throws IOException {
+        TransactionManagerImpl tx = new TransactionManagerImpl(ClusterNode.getTransactionDir(txDir.toString(), id));
+        ClusterNode node = new ClusterNode(id, claimDir.toString(), monitorDir.toString(), txDir.toString(), tx,
+                new RenameStabilityStrategy(".part"), leaseTimeout, heartbeat);
+        nodes.add(node);
+        node.onTakeover(deadNodeId -> takenOver.add(deadNodeId + ":" + recovered.size()));
+        node.start(txFiles -> {
+            recovered.addAll(txFiles);
+            return CompletableFuture.completedFuture(null);
+        });
+        return node;
+    }
+
+    private static Path write(Path file, String content) {
+        try {
+            Files.createDirectories(file.getParent());
+            return Files.write(file, content.getBytes(StandardCharsets.UTF_8));
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static void waitFor(Condition condition) throws Exception {
+        long deadline = System.currentTimeMillis() + 10 * LEASE_TIMEOUT;
+        while (!condition.test()) {
+            Assert.assertTrue("Condition is not met in time", System.currentTimeMillis() < deadline);
+            Thread.sleep(HEARTBEAT);
+        }
+    }
+
+    private interface Condition {
+        boolean test() throws Exception;
+    }
+}
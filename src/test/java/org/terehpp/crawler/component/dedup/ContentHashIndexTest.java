@@ -0,0 +1,72 @@
+package org.terehpp.crawler.component.dedup;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+public class ContentHashIndexTest {
+    private Path indexDir;
+
+    @Before
+    public void setUp() throws IOException {
+        indexDir = Files.createTempDirectory("dedup-index");
+    }
+
+    @Test
+    public void addTest() throws IOException {
+        ContentHashIndex index = new ContentHashIndex(indexDir, 2, 100, 10);
+        ContentHash hash = new ContentHash(1, 2);
+        Assert.assertFalse(index.contains(hash));
+        Assert.assertTrue(index.add(hash));
+        Assert.assertFalse(index.add(hash));
+        Assert.assertTrue(index.contains(hash));
+        Assert.assertFalse(index.contains(new ContentHash(2, 1)));
+        Assert.assertEquals(1, index.size());
+    }
+
+    @Test
+    public void zeroHashTest() throws IOException {
+        ContentHashIndex index = new ContentHashIndex(indexDir, 1, 100, 10);
+        Assert.assertTrue(index.add(new ContentHash(0, 0)));
+        Assert.assertTrue(index.contains(new ContentHash(0, 0)));
+    }
+
+    @Test
+    public void growTest() throws IOException {
+        ContentHashIndex index = new ContentHashIndex(indexDir, 1, 10, 10);
+        for (int i = 1; i <= 5000; i++) {
+            Assert.assertTrue(index.add(new ContentHash(i, i * 31L)));
+        }
+        Assert.assertEquals(5000, index.size());
+        for (int i = 1; i <= 5000; i++) {
+            Assert.assertTrue(index.contains(new ContentHash(i, i * 31L)));
+        }
+    }
+
+    @Test
+    public void reopenTest() throws IOException {
+        ContentHashIndex index = new ContentHashIndex(indexDir, 4, 100, 10);
+        for (int i = 1; i <= 2000; i++) {
+            index.add(new ContentHash(i, -i));
+        }
+        index.close();
+        ContentHashIndex reopened = new ContentHashIndex(indexDir, 4, 100, 10);
+        Assert.assertEquals(2000, reopened.size());
+        Assert.assertTrue(reopened.contains(new ContentHash(1000, -1000)));
+        Assert.assertFalse(reopened.contains(new ContentHash(3000, -3000)));
+    }
+
+    @Test
+    public void bloomRebuildTest() throws IOException {
+        ContentHashIndex index = new ContentHashIndex(indexDir, 1, 100, 10);
+        index.add(new ContentHash(7, 8));
+        index.close();
+        Files.delete(indexDir.resolve("bloom"));
+        ContentHashIndex reopened = new ContentHashIndex(indexDir, 1, 100, 10);
+        Assert.assertTrue(reopened.contains(new ContentHash(7, 8)));
+    }
+}
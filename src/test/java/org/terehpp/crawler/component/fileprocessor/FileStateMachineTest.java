@@ -0,0 +1,158 @@
+package org.terehpp.crawler.component.fileprocessor;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.terehpp.crawler.component.analyzer.AnalyzerResult;
+import org.terehpp.crawler.component.stability.RenameStabilityStrategy;
+import org.terehpp.crawler.component.transaction.TransactionManagerImpl;
+import org.terehpp.crawler.model.Entry;
+import org.terehpp.crawler.service.db.BatchingDbService;
+import org.terehpp.crawler.service.db.DbService;
+import org.terehpp.crawler.service.file.FileServiceImpl;
+import org.terehpp.crawler.utils.DbHelper;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.SQLException;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+public class FileStateMachineTest {
+    private final static List<FileStateMachineCommand> COMMANDS = Arrays.asList(FileStateMachineCommand.ANALYZE,
+            FileStateMachineCommand.INSERT, FileStateMachineCommand.MOVE);
+    private final static String BAD_CONTENT = "bad";
+    private final static String DOWN_CONTENT = "down";
+    private final Set<Long> stored = ConcurrentHashMap.newKeySet();
+    private final AtomicLong ids = new AtomicLong();
+    private Path root;
+    private Path monitorDir;
+    private Path successDir;
+    private Path failDir;
+    private Path txDir;
+    private BatchingDbService<Entry> batchingService;
+
+    @Before
+    public void setUp() throws IOException {
+        root = Files.createTempDirectory("state");
+        monitorDir = Files.createDirectories(root.resolve("monitor"));
+        successDir = Files.createDirectories(root.resolve("success"));
+        failDir = Files.createDirectories(root.resolve("fail"));
+        txDir = Files.createDirectories(root.resolve("tx"));
+        DbService<Entry> dbService = new DbService<Entry>() {
+            @Override
+            public Entry insert(Entry entity) {
+                throw new UnsupportedOperationException();
+            }
+
+            @Override
+            public void insertAll(Collection<Entry> entities) {
+                if (entities.stream().anyMatch(entity -> BAD_CONTENT.equals(entity.getContent()))) {
+                    throw new IllegalStateException(new SQLException("Unique violation", "23505"));
+                }
+                if (entities.stream().anyMatch(entity -> DOWN_CONTENT.equals(entity.getContent()))) {
+                    throw new IllegalStateException(new SQLException("Connection refused", "08001"));
+                }
+                entities.forEach(entity -> stored.add(entity.getId()));
+            }
+
+            @Override
+            public boolean exist(long id) {
+                return stored.contains(id);
+            }
+
+            @Override
+            public Set<Long> existing(Collection<Long> entityIds) {
+                Set<Long> existing = new HashSet<>(entityIds);
+                existing.retainAll(stored);
+                return existing;
+            }
+
+            @Override
+            public long getNextId() {
+                return ids.incrementAndGet();
+            }
+        };
+        batchingService = new BatchingDbService<>(dbService, 10, 10);
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        batchingService.close();
+        try (Stream<Path> paths = Files.walk(root)) {
+            paths.sorted(Comparator.reverseOrder()).map(Path::toFile).forEach(File::delete);
+        }
+    }
+
+    @Test
+    public void insertTest() throws IOException {
+        Path file = Files.write(monitorDir.resolve("good.xml"), "good".getBytes());
+        FileStateMachine machine = createMachine();
+        Assert.assertEquals(FileOutcome.SUCCESS, init(machine, file).execute());
+        Assert.assertEquals(1, stored.size());
+        Assert.assertEquals(true, Files.exists(successDir.resolve("good.xml")));
+    }
+
+    @Test
+    public void rejectedInsertTest() throws IOException {
+        Path file = Files.write(monitorDir.resolve("bad.xml"), BAD_CONTENT.getBytes());
+        FileStateMachine machine = createMachine();
+        // Rejected entity fails its file, it is not left for processing again
+        Assert.assertEquals(FileOutcome.FAILED, init(machine, file).execute());
+        Assert.assertEquals(0, stored.size());
+        Assert.assertEquals(false, Files.exists(file));
+        Assert.assertEquals(true, Files.exists(failDir.resolve("bad.xml")));
+        try (Stream<Path> logs = Files.list(txDir)) {
+            Assert.assertEquals(0, logs.count());
+        }
+
+        Path good = Files.write(monitorDir.resolve("good.xml"), "good".getBytes());
+        Assert.assertEquals(FileOutcome.SUCCESS, init(createMachine(), good).execute());
+        Assert.assertEquals(1, stored.size());
+    }
+
+    @Test
+    public void unavailableDbTest() throws IOException {
+        Path file = Files.write(monitorDir.resolve("down.xml"), DOWN_CONTENT.getBytes());
+        FileStateMachine machine = createMachine();
+        try {
+            init(machine, file).execute();
+            Assert.fail("Error of unavailable db is not thrown");
+        } catch (IllegalStateException e) {
+            Assert.assertEquals(false, DbHelper.isDataError(e));
+        }
+        // File and its transaction log stay, so file is processed again
+        Assert.assertEquals(true, Files.exists(file));
+        Assert.assertEquals(false, Files.exists(failDir.resolve("down.xml")));
+        try (Stream<Path> logs = Files.list(txDir)) {
+            Assert.assertEquals(1, logs.count());
+        }
+    }
+
+    private FileState init(FileStateMachine machine, Path file) {
+        return machine.init(new FileData(file.toString(), 0, null, null), COMMANDS);
+    }
+
+    private FileStateMachine createMachine() {
+        return new FileStateMachine(successDir.toString(), failDir.toString(), (file, id) -> {
+            try {
+                String content = new String(Files.readAllBytes(new File(file).toPath()));
+                return new AnalyzerResult<>(false, null, new Entry(id, content, new Date()));
+            } catch (IOException e) {
+                return new AnalyzerResult<>(true, e.getMessage(), null);
+            }
+        }, batchingService, new FileServiceImpl(new RenameStabilityStrategy(".part")),
+                new TransactionManagerImpl(txDir.toString()));
+    }
+}
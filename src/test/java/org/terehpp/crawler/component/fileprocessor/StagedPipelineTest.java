@@ -0,0 +1,178 @@
+package org.terehpp.crawler.component.fileprocessor;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongPredicate;
+
+public class StagedPipelineTest {
+    private final static List<FileStateMachineCommand> COMMANDS = Arrays.asList(FileStateMachineCommand.ANALYZE,
+            FileStateMachineCommand.INSERT);
+
+    @Test
+    public void executeTest() throws Exception {
+        StagedPipeline pipeline = new StagedPipeline(COMMANDS, threads(2, 1), 4);
+        try {
+            List<TestState> states = new ArrayList<>();
+            List<CompletableFuture<FileOutcome>> results = new ArrayList<>();
+            for (int i = 0; i < 10; i++) {
+                TestState state = new TestState(0, false);
+                states.add(state);
+                results.add(pipeline.execute(state));
+            }
+            for (int i = 0; i < 10; i++) {
+                Assert.assertEquals(FileOutcome.SUCCESS, results.get(i).get(5, TimeUnit.SECONDS));
+                Assert.assertEquals(2, states.get(i).threads.size());
+                Assert.assertEquals(true, states.get(i).threads.get(0).startsWith("stage-analyze-"));
+                Assert.assertEquals(true, states.get(i).threads.get(1).startsWith("stage-insert-"));
+                Assert.assertEquals(true, states.get(i).daemon);
+            }
+            for (PipelineStage stage : pipeline.getStages()) {
+                Assert.assertEquals(10, stage.getProcessed());
+            }
+            Assert.assertEquals(3, pipeline.getThreadCount());
+
+            TestState skipped = new TestState(0, false);
+            skipped.skipped = true;
+            Assert.assertEquals(FileOutcome.SKIPPED_MISSING, pipeline.execute(skipped).get());
+            Assert.assertEquals(0, skipped.threads.size());
+        } finally {
+            pipeline.close();
+        }
+    }
+
+    @Test
+    public void serviceTimeTest() throws Exception {
+        StagedPipeline pipeline = new StagedPipeline(COMMANDS, threads(1, 1), 1);
+        try {
+            List<CompletableFuture<FileOutcome>> results = new ArrayList<>();
+            for (int i = 0; i < 4; i++) {
+                results.add(pipeline.execute(new TestState(100, false)));
+            }
+            for (CompletableFuture<FileOutcome> result : results) {
+                Assert.assertEquals(FileOutcome.SUCCESS, result.get(5, TimeUnit.SECONDS));
+            }
+            Map<FileStateMachineCommand, PipelineStage> stages = new EnumMap<>(FileStateMachineCommand.class);
+            pipeline.getStages().forEach(stage -> stages.put(stage.getCommand(), stage));
+            // Analyze waits for free place in queue of insert, this wait is not service time of analyze
+            Assert.assertEquals(true, stages.get(FileStateMachineCommand.ANALYZE).getAverageServiceTime()
+                    < TimeUnit.MILLISECONDS.toNanos(50));
+            Assert.assertEquals(true, stages.get(FileStateMachineCommand.INSERT).getAverageServiceTime()
+                    >= TimeUnit.MILLISECONDS.toNanos(100));
+        } finally {
+            pipeline.close();
+        }
+    }
+
+    @Test
+    public void errorTest() throws Exception {
+        StagedPipeline pipeline = new StagedPipeline(COMMANDS, threads(1, 1), 4);
+        try {
+            TestState failed = new TestState(0, true);
+            try {
+                pipeline.execute(failed).get(5, TimeUnit.SECONDS);
+                Assert.fail();
+            } catch (ExecutionException e) {
+                Assert.assertEquals(IllegalStateException.class, e.getCause().getClass());
+            }
+            // Failed state machine is not handed over
+            Assert.assertEquals(1, failed.threads.size());
+            Assert.assertEquals(FileOutcome.SUCCESS, pipeline.execute(new TestState(0, false)).get(5, TimeUnit.SECONDS));
+        } finally {
+            pipeline.close();
+        }
+        try {
+            pipeline.execute(new TestState(0, false)).get(5, TimeUnit.SECONDS);
+            Assert.fail();
+        } catch (ExecutionException e) {
+            Assert.assertEquals(true, e.getCause().getMessage().contains("shut down"));
+        }
+    }
+
+    private static Map<FileStateMachineCommand, Integer> threads(int analyze, int insert) {
+        Map<FileStateMachineCommand, Integer> threads = new EnumMap<>(FileStateMachineCommand.class);
+        threads.put(FileStateMachineCommand.ANALYZE, analyze);
+        threads.put(FileStateMachineCommand.INSERT, insert);
+        return threads;
+    }
+
+    /**
+     * State machine, which records threads executing its commands.
+     */
+    private static class TestState implements FileState {
+        private final List<String> threads = Collections.synchronizedList(new ArrayList<>());
+        private final long insertMillis;
+        private final boolean failAnalyze;
+        private volatile boolean daemon = true;
+        private volatile boolean skipped;
+        private int next;
+
+        TestState(long insertDelay, boolean fail) {
+            insertMillis = insertDelay;
+            failAnalyze = fail;
+        }
+
+        @Override
+        public FileState init(FileData initState, List<FileStateMachineCommand> comands) {
+            return this;
+        }
+
+        @Override
+        public void abort() {
+        }
+
+        @Override
+        public FileOutcome execute() {
+            return FileOutcome.SUCCESS;
+        }
+
+        @Override
+        public Optional<FileOutcome> begin() {
+            return skipped ? Optional.of(FileOutcome.SKIPPED_MISSING) : Optional.empty();
+        }
+
+        @Override
+        public Optional<FileStateMachineCommand> nextCommand() {
+            return next < COMMANDS.size() ? Optional.of(COMMANDS.get(next)) : Optional.empty();
+        }
+
+        @Override
+        public void executeCommand() {
+            Thread thread = Thread.currentThread();
+            threads.add(thread.getName());
+            daemon &= thread.isDaemon();
+            FileStateMachineCommand command = COMMANDS.get(next++);
+            if (command == FileStateMachineCommand.ANALYZE && failAnalyze) {
+                throw new IllegalStateException("Analyze failed");
+            }
+            if (command == FileStateMachineCommand.INSERT && insertMillis > 0) {
+                try {
+                    Thread.sleep(insertMillis);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }
+
+        @Override
+        public FileOutcome getOutcome() {
+            return FileOutcome.SUCCESS;
+        }
+
+        @Override
+        public Optional<FileState> restore(String transactionFile, List<FileStateMachineCommand> machineCommands,
+                                           LongPredicate inserted) {
+            return Optional.empty();
+        }
+    }
+}
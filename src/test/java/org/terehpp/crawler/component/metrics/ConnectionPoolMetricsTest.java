@@ -0,0 +1,72 @@
+package org.terehpp.crawler.component.metrics;
+
+import com.zaxxer.hikari.HikariConfig;
+import com.zaxxer.hikari.HikariDataSource;
+import com.zaxxer.hikari.metrics.IMetricsTracker;
+import com.zaxxer.hikari.metrics.PoolStats;
+import org.junit.Assert;
+import org.junit.Test;
+import org.terehpp.crawler.service.db.BlockIdAllocator;
+import org.terehpp.crawler.service.db.EntryService;
+import org.terehpp.crawler.utils.DbHelper;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Arrays;
+
+public class ConnectionPoolMetricsTest {
+
+    @Test
+    public void trackerTest() {
+        ConnectionPoolMetrics metrics = new ConnectionPoolMetrics();
+        Assert.assertEquals(0, metrics.getActiveConnections());
+        IMetricsTracker tracker = metrics.create("test", new PoolStats(0) {
+            @Override
+            protected void update() {
+                totalConnections = 10;
+                activeConnections = 7;
+                idleConnections = 3;
+                pendingThreads = 2;
+            }
+        });
+        tracker.recordConnectionAcquiredNanos(2000000);
+        tracker.recordConnectionTimeout();
+        Assert.assertEquals(1, metrics.getAcquireLatency().getCount());
+        Assert.assertEquals(0, metrics.getAcquireLatency().getInFlight());
+        Assert.assertTrue(metrics.getAcquireLatency().getMax() >= 2000);
+        Assert.assertEquals(1, metrics.getTimeouts());
+        Assert.assertEquals(7, metrics.getActiveConnections());
+        Assert.assertEquals(3, metrics.getIdleConnections());
+        Assert.assertEquals(2, metrics.getPendingThreads());
+    }
+
+    @Test
+    public void connectionsReturnedTest() throws SQLException, InterruptedException {
+        ConnectionPoolMetrics metrics = new ConnectionPoolMetrics();
+        HikariConfig config = new HikariConfig();
+        config.setJdbcUrl("jdbc:h2:mem:pool;DB_CLOSE_DELAY=-1");
+        config.setMaximumPoolSize(2);
+        config.setAutoCommit(false);
+        config.setMetricsTrackerFactory(metrics);
+        HikariDataSource dataSource = new HikariDataSource(config);
+        try (Connection connection = dataSource.getConnection(); Statement statement = connection.createStatement()) {
+            statement.execute("create table Entry (id bigint primary key, content varchar(255), creationDate timestamp)");
+            statement.execute("create sequence entry_id_seq increment by 50");
+            statement.execute("insert into Entry (id) values (1)");
+            connection.commit();
+        }
+        DbHelper.initSessionFactory(dataSource);
+        try {
+            EntryService service = new EntryService(new BlockIdAllocator(
+                    () -> DbHelper.nextSequenceValue("entry_id_seq"), 50));
+            Assert.assertEquals(1, service.existing(Arrays.asList(1L, 2L)).size());
+            Assert.assertEquals(true, service.getNextId() > 0);
+            // Stats of pool are refreshed once per second
+            Thread.sleep(1100);
+            Assert.assertEquals(0, metrics.getActiveConnections());
+        } finally {
+            DbHelper.closeSessionFactory();
+        }
+    }
+}
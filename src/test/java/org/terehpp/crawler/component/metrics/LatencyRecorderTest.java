@@ -0,0 +1,50 @@
+package org.terehpp.crawler.component.metrics;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class LatencyRecorderTest {
+    private LatencyRecorder recorder;
+
+    @Before
+    public void setUp() {
+        recorder = new LatencyRecorder();
+    }
+
+    @Test
+    public void recordTest() {
+        long start = recorder.start();
+        Assert.assertEquals(1, recorder.getInFlight());
+        recorder.record(start - 1000000);
+        Assert.assertEquals(0, recorder.getInFlight());
+        Assert.assertEquals(1, recorder.getCount());
+        Assert.assertTrue(recorder.getP50() >= 1000);
+        Assert.assertTrue(recorder.getMax() >= recorder.getP999());
+    }
+
+    @Test
+    public void percentileTest() {
+        for (int i = 1; i <= 1000; i++) {
+            recorder.record(System.nanoTime() - i * 1000L);
+        }
+        Assert.assertEquals(1000, recorder.getCount());
+        Assert.assertTrue(recorder.getP50() >= 500 && recorder.getP50() < 520);
+        Assert.assertTrue(recorder.getP99() >= 990);
+    }
+
+    @Test
+    public void cancelTest() {
+        recorder.start();
+        recorder.cancel();
+        Assert.assertEquals(0, recorder.getInFlight());
+        Assert.assertEquals(0, recorder.getCount());
+    }
+
+    @Test
+    public void resetTest() {
+        recorder.record(recorder.start());
+        recorder.reset();
+        Assert.assertEquals(0, recorder.getCount());
+    }
+}
@@ -0,0 +1,112 @@
+package org.terehpp.crawler.component.monitor;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+public class ConcurrencyLimiterTest {
+    private final static long WINDOW = TimeUnit.SECONDS.toNanos(1);
+    private final static long LATENCY = TimeUnit.MILLISECONDS.toNanos(1);
+    private final AtomicLong clock = new AtomicLong();
+
+    @Test
+    public void fixedTest() throws InterruptedException {
+        ConcurrencyLimiter limiter = new ConcurrencyLimiter(1, 5, false, WINDOW, clock::get);
+        window(limiter, 5, LATENCY, true);
+        Assert.assertEquals(5, limiter.getLimit());
+        Assert.assertEquals(0, limiter.getInFlight());
+    }
+
+    @Test
+    public void backoffTest() throws InterruptedException {
+        ConcurrencyLimiter limiter = new ConcurrencyLimiter(10, 20, true, WINDOW, clock::get);
+        window(limiter, 10, LATENCY, false);
+        Assert.assertEquals(20, limiter.getLimit());
+        window(limiter, 10, LATENCY, true);
+        Assert.assertEquals(18, limiter.getLimit());
+        // Latency grew more than tolerance allows
+        window(limiter, 10, LATENCY * 3, false);
+        Assert.assertEquals(16, limiter.getLimit());
+        for (int i = 0; i < 10; i++) {
+            window(limiter, 10, LATENCY, true);
+        }
+        Assert.assertEquals(10, limiter.getLimit());
+    }
+
+    @Test
+    public void throughputPlateauTest() throws InterruptedException {
+        ConcurrencyLimiter limiter = new ConcurrencyLimiter(1, 20, true, WINDOW, clock::get);
+        window(limiter, 10, LATENCY, true);
+        Assert.assertEquals(18, limiter.getLimit());
+        window(limiter, 10, LATENCY, false);
+        Assert.assertEquals(19, limiter.getLimit());
+        // Throughput did not grow, increase is reverted and limit is kept
+        window(limiter, 10, LATENCY, false);
+        Assert.assertEquals(18, limiter.getLimit());
+        for (int i = 0; i < 5; i++) {
+            window(limiter, 10, LATENCY, false);
+            Assert.assertEquals(18, limiter.getLimit());
+        }
+    }
+
+    @Test
+    public void throughputGrowthTest() throws InterruptedException {
+        ConcurrencyLimiter limiter = new ConcurrencyLimiter(1, 20, true, WINDOW, clock::get);
+        window(limiter, 10, LATENCY, true);
+        window(limiter, 10, LATENCY, false);
+        Assert.assertEquals(19, limiter.getLimit());
+        window(limiter, 15, LATENCY, false);
+        Assert.assertEquals(20, limiter.getLimit());
+        Assert.assertEquals(15, limiter.getThroughput(), 0.01);
+    }
+
+    @Test
+    public void reducedPermitsTest() throws InterruptedException {
+        ConcurrencyLimiter limiter = new ConcurrencyLimiter(1, 20, true, WINDOW, clock::get);
+        window(limiter, 10, LATENCY, true);
+        Assert.assertEquals(18, limiter.getLimit());
+        for (int i = 0; i < 18; i++) {
+            limiter.acquire();
+        }
+        Thread waiting = new Thread(() -> {
+            try {
+                limiter.acquire();
+                limiter.release();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        waiting.start();
+        waiting.join(200);
+        Assert.assertEquals(true, waiting.isAlive());
+        limiter.release();
+        waiting.join(5000);
+        Assert.assertEquals(false, waiting.isAlive());
+        Assert.assertEquals(17, limiter.getInFlight());
+    }
+
+    /**
+     * Process window of files, all permits are taken at once, so limit is reached.
+     *
+     * @param limiter    Limiter.
+     * @param throughput Files per second.
+     * @param latency    Latency of each file.
+     * @param error      Files fail.
+     */
+    private void window(ConcurrencyLimiter limiter, double throughput, long latency, boolean error)
+            throws InterruptedException {
+        int files = limiter.getLimit();
+        for (int i = 0; i < files; i++) {
+            limiter.acquire();
+        }
+        long start = clock.get();
+        for (int i = 0; i < files; i++) {
+            if (i == files - 1) {
+                clock.set(start + (long) (files * WINDOW / throughput));
+            }
+            limiter.release(latency, error);
+        }
+    }
+}
@@ -0,0 +1,39 @@
+package org.terehpp.crawler.component.monitor;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+public class DirectoryWalkerTest {
+    @Test
+    public void parallelWalkTest() throws IOException {
+        Path root = Files.createTempDirectory("walk");
+        for (int i = 0; i < 5; i++) {
+            Path dir = Files.createDirectories(root.resolve("d" + i).resolve("sub"));
+            Files.write(root.resolve("d" + i).resolve("f"), new byte[]{1});
+            Files.write(dir.resolve("f"), new byte[]{1});
+        }
+        Files.write(root.resolve("f"), new byte[]{1});
+        // Link cycle and link to file
+        Files.createSymbolicLink(root.resolve("d0").resolve("sub").resolve("cycle"), root);
+        Files.createSymbolicLink(root.resolve("link"), root.resolve("f"));
+
+        Set<Path> serial = walk(new DirectoryWalker(1, Integer.MAX_VALUE), root);
+        Set<Path> parallel = walk(new DirectoryWalker(4, Integer.MAX_VALUE), root);
+        Assert.assertEquals(13, serial.size());
+        Assert.assertEquals(serial, parallel);
+
+        Assert.assertEquals(walk(new DirectoryWalker(1, 2), root), walk(new DirectoryWalker(4, 2), root));
+    }
+
+    private Set<Path> walk(DirectoryWalker walker, Path root) throws IOException {
+        Set<Path> files = ConcurrentHashMap.newKeySet();
+        walker.walk(root, new FileVisitor(files::add, new FileClaimRegistry(), file -> false));
+        return files;
+    }
+}
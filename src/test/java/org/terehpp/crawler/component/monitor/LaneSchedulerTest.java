@@ -0,0 +1,61 @@
+package org.terehpp.crawler.component.monitor;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+public class LaneSchedulerTest {
+    private LaneScheduler scheduler;
+
+    @Before
+    public void setUp() {
+        scheduler = new LaneScheduler(3, 100, 20);
+    }
+
+    @Test
+    public void oldestFirstTest() throws InterruptedException {
+        scheduler.offer(Paths.get("new"), new FileIdentity(null, 1, 300));
+        scheduler.offer(Paths.get("old"), new FileIdentity(null, 1, 100));
+        Assert.assertEquals(Paths.get("old"), scheduler.take(Lane.SMALL, false));
+        Assert.assertEquals(Paths.get("new"), scheduler.take(Lane.SMALL, false));
+    }
+
+    @Test
+    public void laneTest() throws InterruptedException {
+        scheduler.offer(Paths.get("large"), new FileIdentity(null, 100, 100));
+        scheduler.offer(Paths.get("small"), new FileIdentity(null, 99, 200));
+        Assert.assertEquals(1, scheduler.size(Lane.LARGE));
+        Assert.assertEquals(1, scheduler.size(Lane.SMALL));
+        Assert.assertEquals(Paths.get("small"), scheduler.take(Lane.SMALL, false));
+        Assert.assertEquals(Paths.get("large"), scheduler.take(Lane.LARGE, true));
+    }
+
+    @Test
+    public void stealTest() throws InterruptedException {
+        scheduler.offer(Paths.get("small"), new FileIdentity(null, 1, 100));
+        Path file = scheduler.take(Lane.LARGE, true);
+        Assert.assertEquals(Paths.get("small"), file);
+        Assert.assertEquals(0, scheduler.size());
+    }
+
+    @Test
+    public void capacityTest() {
+        for (int i = 0; i < 3; i++) {
+            Assert.assertTrue(scheduler.offer(Paths.get("file" + i), new FileIdentity(null, 1, i)));
+        }
+        Assert.assertFalse(scheduler.offer(Paths.get("file3"), new FileIdentity(null, 1, 3)));
+        Assert.assertEquals(3, scheduler.size());
+    }
+
+    @Test
+    public void workerCountTest() {
+        Assert.assertEquals(1, scheduler.getWorkerCount(Lane.LARGE, 1));
+        Assert.assertEquals(0, scheduler.getWorkerCount(Lane.SMALL, 1));
+        Assert.assertEquals(1, scheduler.getWorkerCount(Lane.LARGE, 5));
+        Assert.assertEquals(4, scheduler.getWorkerCount(Lane.SMALL, 5));
+        Assert.assertEquals(2, scheduler.getWorkerCount(Lane.LARGE, 10));
+    }
+}
@@ -0,0 +1,83 @@
+package org.terehpp.crawler.component.stability;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+
+public class StabilityStrategyTest {
+    @Test
+    public void renameTest() {
+        RenameStabilityStrategy strategy = new RenameStabilityStrategy(".part");
+        Path dir = Path.of("dir");
+        Assert.assertEquals(true, strategy.isStable(dir.resolve("entry.xml")));
+        Assert.assertEquals(false, strategy.isStable(dir.resolve("entry.xml.part")));
+        Assert.assertEquals(true, strategy.isControlFile(dir.resolve("entry.xml.part")));
+    }
+
+    @Test
+    public void markerTest() throws IOException {
+        Path dir = Files.createTempDirectory("stability");
+        Path file = Files.write(dir.resolve("entry.xml"), new byte[]{1});
+        MarkerStabilityStrategy strategy = new MarkerStabilityStrategy(".done");
+        Assert.assertEquals(false, strategy.isStable(file));
+        Files.write(dir.resolve("entry.xml.done"), new byte[0]);
+        Assert.assertEquals(true, strategy.isStable(file));
+        strategy.onProcessed(file);
+        Assert.assertEquals(false, Files.exists(dir.resolve("entry.xml.done")));
+    }
+
+    @Test
+    public void lockTest() throws IOException {
+        Path file = Files.write(Files.createTempFile("stability", ".xml"), new byte[]{1});
+        LockStabilityStrategy strategy = new LockStabilityStrategy();
+        Assert.assertEquals(true, strategy.isStable(file));
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE);
+             FileLock lock = channel.lock()) {
+            Assert.assertEquals(true, lock.isValid());
+            Assert.assertEquals(false, strategy.isStable(file));
+        }
+        Assert.assertEquals(true, strategy.isStable(file));
+
+        // Read-only file is stable too
+        Assert.assertTrue(file.toFile().setWritable(false));
+        Assert.assertEquals(true, strategy.isStable(file));
+        Assert.assertEquals(false, strategy.isStable(file.resolveSibling("missing.xml")));
+    }
+
+    @Test
+    public void quiescenceTest() throws IOException {
+        Path dir = Files.createTempDirectory("stability");
+        Path file = Files.write(dir.resolve("entry.xml"), new byte[]{1});
+        QuiescenceStabilityStrategy strategy = new QuiescenceStabilityStrategy(60000);
+        Assert.assertEquals(false, strategy.isStable(file));
+
+        Files.setLastModifiedTime(file, FileTime.fromMillis(System.currentTimeMillis() - 120000));
+        Assert.assertEquals(true, strategy.isStable(file));
+        Assert.assertEquals(0, strategy.getObservedCount());
+
+        // Growing file is not stable, even if it was not modified during quiet period
+        Files.write(file, new byte[]{1, 2});
+        Assert.assertEquals(false, strategy.isStable(file));
+        Files.setLastModifiedTime(file, FileTime.fromMillis(System.currentTimeMillis() - 120000));
+        Files.write(file, new byte[]{1, 2, 3});
+        Files.setLastModifiedTime(file, FileTime.fromMillis(System.currentTimeMillis() - 120000));
+        Assert.assertEquals(false, strategy.isStable(file));
+        Assert.assertEquals(true, strategy.isStable(file));
+
+        // Vanished files are not observed any more
+        for (int i = 0; i < 2000; i++) {
+            Path vanished = Files.write(dir.resolve("vanished" + i), new byte[]{1});
+            Assert.assertEquals(false, strategy.isStable(vanished));
+            Files.delete(vanished);
+        }
+        Assert.assertTrue(strategy.getObservedCount() < 1100);
+        Assert.assertEquals(false, strategy.isStable(dir.resolve("vanished1999")));
+    }
+}
@@ -0,0 +1,128 @@
+package org.terehpp.crawler.component.transaction;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+
+public class WalTransactionManagerTest {
+    private Path walDir;
+    private WalTransactionManager wal;
+
+    @Before
+    public void setUp() throws IOException {
+        walDir = Files.createTempDirectory("wal");
+        wal = open(walDir);
+    }
+
+    @After
+    public void tearDown() {
+        wal.close();
+    }
+
+    @Test
+    public void restoreTest() throws IOException {
+        wal.execInTransaction("/data/a.xml", "INSERT 1 /data/a.xml", (Void) -> true);
+        wal.execInTransaction("/data/b.xml", "INSERT 2 /data/b.xml", (Void) -> true);
+        wal.removeLog("/data/b.xml");
+        wal.close();
+        wal = open(walDir);
+        Assert.assertEquals(1, wal.getTransactionFiles().size());
+        Optional<RestoredState> state = wal.restore("/data/a.xml");
+        Assert.assertTrue(state.isPresent());
+        Assert.assertEquals(TransactionState.CLOSE, state.get().getTransactionState());
+        Assert.assertEquals("INSERT 1 /data/a.xml", state.get().getAction());
+        Assert.assertFalse(wal.restore("/data/b.xml").isPresent());
+    }
+
+    @Test
+    public void openTransactionTest() throws IOException {
+        try {
+            wal.execInTransaction("/data/a.xml", "INSERT 1 /data/a.xml", (Void) -> {
+                throw new IllegalStateException();
+            });
+            Assert.fail();
+        } catch (IllegalStateException e) {
+            // Transaction stays open
+        }
+        wal.close();
+        wal = open(walDir);
+        Assert.assertEquals(TransactionState.OPEN, wal.restore("/data/a.xml").get().getTransactionState());
+    }
+
+    @Test
+    public void segmentDeleteTest() throws IOException {
+        for (int i = 0; i < 100; i++) {
+            String file = "/data/" + i + ".xml";
+            wal.execInTransaction(file, "INSERT " + i + " " + file, (Void) -> true);
+            wal.removeLog(file);
+        }
+        Assert.assertEquals(1, getSegments(walDir).size());
+        Assert.assertTrue(wal.getTransactionFiles().isEmpty());
+    }
+
+    @Test
+    public void compactTest() throws IOException {
+        wal.execInTransaction("/data/stuck.xml", "INSERT 0 /data/stuck.xml", (Void) -> true);
+        for (int i = 1; i < 100; i++) {
+            String file = "/data/" + i + ".xml";
+            wal.execInTransaction(file, "INSERT " + i + " " + file, (Void) -> true);
+            wal.removeLog(file);
+        }
+        Assert.assertTrue(getSegments(walDir).size() <= 3);
+        wal.close();
+        wal = open(walDir);
+        Assert.assertEquals(1, wal.getTransactionFiles().size());
+        Assert.assertTrue(wal.restore("/data/stuck.xml").isPresent());
+    }
+
+    @Test
+    public void damagedTailTest() throws IOException {
+        wal.execInTransaction("/data/a.xml", "INSERT 1 /data/a.xml", (Void) -> true);
+        wal.execInTransaction("/data/b.xml", "INSERT 2 /data/b.xml", (Void) -> true);
+        wal.close();
+        Path segment = getSegments(walDir).get(0);
+        try (RandomAccessFile file = new RandomAccessFile(segment.toFile(), "rw")) {
+            file.setLength(file.length() - 3);
+        }
+        wal = open(walDir);
+        Assert.assertEquals(TransactionState.CLOSE, wal.restore("/data/a.xml").get().getTransactionState());
+        Assert.assertEquals(TransactionState.OPEN, wal.restore("/data/b.xml").get().getTransactionState());
+    }
+
+    @Test
+    public void adoptTest() throws IOException {
+        Path otherDir = Files.createTempDirectory("wal-other");
+        WalTransactionManager other = open(otherDir);
+        other.execInTransaction("/data/c.xml", "INSERT 3 /data/c.xml", (Void) -> true);
+        other.execInTransaction("/data/d.xml", "INSERT 4 /data/d.xml", (Void) -> true);
+        other.removeLog("/data/d.xml");
+        other.close();
+        List<String> adopted = wal.adoptTransactions(otherDir.toString());
+        Assert.assertEquals(1, adopted.size());
+        Assert.assertEquals("/data/c.xml", adopted.get(0));
+        Assert.assertTrue(wal.restore("/data/c.xml").isPresent());
+        Assert.assertTrue(getSegments(otherDir).isEmpty());
+    }
+
+    private static WalTransactionManager open(Path dir) throws IOException {
+        return new WalTransactionManager(dir.toString(), 256, FsyncPolicy.ALWAYS, 1, 1000);
+    }
+
+    private static List<Path> getSegments(Path dir) throws IOException {
+        List<Path> segments = new ArrayList<>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(dir)) {
+            files.forEach(segments::add);
+        }
+        return segments;
+    }
+}
@@ -0,0 +1,127 @@
+package org.terehpp.crawler.service.db;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+public class BatchingDbServiceTest {
+    private final static long BAD_ID = 13;
+    private final static long DOWN_ID = 1013;
+    private final List<Integer> batchSizes = Collections.synchronizedList(new ArrayList<>());
+    private final Set<Long> stored = ConcurrentHashMap.newKeySet();
+    private BatchingDbService<Long> batchingService;
+    private ExecutorService executor;
+
+    @Before
+    public void setUp() {
+        DbService<Long> dbService = new DbService<Long>() {
+            @Override
+            public Long insert(Long entity) {
+                throw new UnsupportedOperationException();
+            }
+
+            @Override
+            public void insertAll(Collection<Long> entities) {
+                batchSizes.add(entities.size());
+                if (entities.contains(BAD_ID)) {
+                    throw new IllegalStateException(new SQLException("Unique violation", "23505"));
+                }
+                if (entities.contains(DOWN_ID)) {
+                    throw new IllegalStateException(new SQLException("Connection refused", "08001"));
+                }
+                stored.addAll(entities);
+            }
+
+            @Override
+            public boolean exist(long id) {
+                return stored.contains(id);
+            }
+
+            @Override
+            public Set<Long> existing(Collection<Long> ids) {
+                return new HashSet<>(ids);
+            }
+
+            @Override
+            public long getNextId() {
+                return 0;
+            }
+        };
+        batchingService = new BatchingDbService<>(dbService, 10, 50);
+        executor = Executors.newFixedThreadPool(40);
+    }
+
+    @After
+    public void tearDown() {
+        executor.shutdownNow();
+        batchingService.close();
+    }
+
+    @Test
+    public void batchTest() throws Exception {
+        Assert.assertEquals(0, insertConcurrently(100, 129));
+        Assert.assertEquals(30, stored.size());
+        Assert.assertTrue(batchSizes.size() < 30);
+        Assert.assertTrue(batchSizes.stream().allMatch(size -> size <= 10));
+    }
+
+    @Test
+    public void failedBatchTest() throws Exception {
+        Assert.assertEquals(1, insertConcurrently(1, 40));
+        Assert.assertEquals(39, stored.size());
+        Assert.assertFalse(stored.contains(BAD_ID));
+    }
+
+    @Test
+    public void unavailableDbTest() throws Exception {
+        int failed = insertConcurrently(DOWN_ID - 9, DOWN_ID);
+        Assert.assertEquals(true, failed > 0);
+        Assert.assertEquals(10 - failed, stored.size());
+        // Failed batch is not written again one by one, each entity is written once
+        Assert.assertEquals(10, batchSizes.stream().mapToInt(Integer::intValue).sum());
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void closedTest() {
+        batchingService.close();
+        batchingService.insert(1L);
+    }
+
+    /**
+     * Insert entities from concurrent threads.
+     *
+     * @param from First identifier.
+     * @param to   Last identifier.
+     * @return Count of failed inserts.
+     */
+    private int insertConcurrently(long from, long to) throws InterruptedException {
+        List<Future<Long>> inserts = new ArrayList<>();
+        for (long i = from; i <= to; i++) {
+            long id = i;
+            inserts.add(executor.submit(() -> batchingService.insert(id)));
+        }
+        int failed = 0;
+        for (Future<Long> insert : inserts) {
+            try {
+                insert.get();
+            } catch (ExecutionException e) {
+                failed++;
+            }
+        }
+        return failed;
+    }
+}
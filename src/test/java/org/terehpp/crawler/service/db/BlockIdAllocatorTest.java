@@ -0,0 +1,54 @@
+package org.terehpp.crawler.service.db;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+public class BlockIdAllocatorTest {
+
+    @Test
+    public void blockTest() {
+        AtomicInteger reserved = new AtomicInteger();
+        BlockIdAllocator allocator = new BlockIdAllocator(() -> reserved.incrementAndGet() == 1 ? 1 : 101, 50);
+        for (long i = 1; i <= 50; i++) {
+            Assert.assertEquals(i, allocator.next());
+        }
+        Assert.assertEquals(1, reserved.get());
+        Assert.assertEquals(101, allocator.next());
+        Assert.assertEquals(2, reserved.get());
+    }
+
+    @Test
+    public void nodesTest() throws InterruptedException {
+        // Shared sequence of several nodes
+        AtomicLong sequence = new AtomicLong(1 - 10);
+        List<BlockIdAllocator> nodes = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            nodes.add(new BlockIdAllocator(() -> sequence.addAndGet(10), 10));
+        }
+        Set<Long> ids = new HashSet<>();
+        List<Thread> threads = new ArrayList<>();
+        for (BlockIdAllocator node : nodes) {
+            Thread thread = new Thread(() -> {
+                for (int i = 0; i < 1000; i++) {
+                    long id = node.next();
+                    synchronized (ids) {
+                        ids.add(id);
+                    }
+                }
+            });
+            threads.add(thread);
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        Assert.assertEquals(3000, ids.size());
+    }
+}
@@ -0,0 +1,33 @@
+package org.terehpp.crawler.service.db;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.terehpp.crawler.model.Entry;
+
+import java.sql.Timestamp;
+
+public class CopyEntryServiceTest {
+
+    @Test
+    public void rowTest() {
+        Timestamp date = Timestamp.valueOf("2014-01-01 00:00:00.0");
+        StringBuilder rows = new StringBuilder();
+        CopyEntryService.appendRow(rows, new Entry(1L, "content", date));
+        Assert.assertEquals("1,\"content\",2014-01-01 00:00:00.0\n", rows.toString());
+    }
+
+    @Test
+    public void escapeTest() {
+        Timestamp date = Timestamp.valueOf("2014-01-01 12:30:15.5");
+        StringBuilder rows = new StringBuilder();
+        CopyEntryService.appendRow(rows, new Entry(2L, "a \"b\",\nc", date));
+        Assert.assertEquals("2,\"a \"\"b\"\",\nc\",2014-01-01 12:30:15.5\n", rows.toString());
+    }
+
+    @Test
+    public void nullTest() {
+        StringBuilder rows = new StringBuilder();
+        CopyEntryService.appendRow(rows, new Entry(3L, null, null));
+        Assert.assertEquals("3,,\n", rows.toString());
+    }
+}
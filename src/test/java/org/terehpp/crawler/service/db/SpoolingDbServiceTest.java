@@ -0,0 +1,222 @@
+package org.terehpp.crawler.service.db;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.terehpp.crawler.model.Entry;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+public class SpoolingDbServiceTest {
+    private final static long BAD_ID = 13;
+    private final Map<Long, Entry> db = new ConcurrentHashMap<>();
+    private volatile boolean available = true;
+    private Path spoolDir;
+    private SpoolingDbService<Entry> spool;
+
+    @Before
+    public void setUp() throws IOException {
+        spoolDir = Files.createTempDirectory("spool");
+        spool = open();
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        spool.close();
+        try (Stream<Path> files = Files.walk(spoolDir)) {
+            files.sorted(Comparator.reverseOrder()).forEach(file -> file.toFile().delete());
+        }
+    }
+
+    @Test
+    public void drainTest() throws InterruptedException {
+        for (long i = 100; i < 300; i++) {
+            spool.insert(new Entry(i, "content " + i, new Date(i)));
+        }
+        Assert.assertTrue(spool.exist(299));
+        waitDrained();
+        Assert.assertEquals(200, db.size());
+        Assert.assertEquals("content 150", db.get(150L).getContent());
+        Assert.assertEquals(new Date(150), db.get(150L).getCreationDate());
+    }
+
+    @Test
+    public void unavailableTest() throws InterruptedException {
+        available = false;
+        for (long i = 100; i < 110; i++) {
+            spool.insert(new Entry(i, "content", new Date()));
+        }
+        Thread.sleep(100);
+        Assert.assertTrue(db.isEmpty());
+        Assert.assertTrue(spool.exist(105));
+        Assert.assertEquals(2, spool.existing(Stream.of(105L, 109L).collect(Collectors.toList())).size());
+        available = true;
+        waitDrained();
+        Assert.assertEquals(10, db.size());
+    }
+
+    @Test
+    public void restartTest() throws IOException, InterruptedException {
+        available = false;
+        for (long i = 100; i < 110; i++) {
+            spool.insert(new Entry(i, "content", new Date()));
+        }
+        spool.close();
+        // Entry was loaded before crash, but not acknowledged
+        db.put(100L, new Entry(100L, "content", new Date()));
+        available = true;
+        spool = open();
+        Assert.assertTrue(spool.exist(109));
+        waitDrained();
+        Assert.assertEquals(10, db.size());
+        spool.close();
+        spool = open();
+        Assert.assertEquals(0, spool.getPendingCount());
+    }
+
+    @Test
+    public void rejectTest() throws InterruptedException {
+        for (long i = 10; i < 20; i++) {
+            spool.insert(new Entry(i, "content", new Date()));
+        }
+        waitDrained();
+        Assert.assertEquals(9, db.size());
+        Assert.assertFalse(db.containsKey(BAD_ID));
+        Assert.assertTrue(Files.exists(spoolDir.resolve("rejected.log")));
+    }
+
+    @Test
+    public void rollTest() throws IOException, InterruptedException {
+        spool.close();
+        spool = new SpoolingDbService<>(spoolDir.toString(), createDbService(), new EntryCodec(), 256, 7, 10);
+        for (long i = 100; i < 200; i++) {
+            spool.insert(new Entry(i, null, null));
+        }
+        waitDrained();
+        Assert.assertEquals(100, db.size());
+        Assert.assertNull(db.get(100L).getContent());
+        try (Stream<Path> files = Files.list(spoolDir)) {
+            Assert.assertTrue(files.filter(file -> file.getFileName().toString().startsWith("spool-")).count() <= 2);
+        }
+    }
+
+    @Test
+    public void insertAllTest() throws InterruptedException {
+        available = false;
+        List<Entry> entries = new ArrayList<>();
+        for (long i = 100; i < 120; i++) {
+            entries.add(new Entry(i, "content", new Date()));
+        }
+        // Entities are spooled, db is not needed
+        spool.insertAll(entries);
+        Assert.assertEquals(20, spool.getPendingCount());
+        available = true;
+        waitDrained();
+        Assert.assertEquals(20, db.size());
+    }
+
+    @Test(expected = IOException.class)
+    public void lockedTest() throws IOException {
+        open();
+    }
+
+    @Test
+    public void adoptTest() throws IOException, InterruptedException {
+        Path deadDir = Files.createTempDirectory("spool-dead");
+        try {
+            available = false;
+            SpoolingDbService<Entry> dead = new SpoolingDbService<>(deadDir.toString(), createDbService(),
+                    new EntryCodec(), 256, 50, 10);
+            for (long i = 100; i < 120; i++) {
+                dead.insert(new Entry(i, "content", new Date()));
+            }
+            // Spool used by its service is not adopted
+            Assert.assertEquals(-1, spool.adopt(deadDir));
+            dead.close();
+            // Entry was loaded before crash, but not acknowledged
+            db.put(100L, new Entry(100L, "content", new Date()));
+
+            Assert.assertEquals(20, spool.adopt(deadDir));
+            Assert.assertEquals(false, Files.exists(deadDir));
+            Assert.assertTrue(spool.exist(119));
+            available = true;
+            waitDrained();
+            Assert.assertEquals(20, db.size());
+            Assert.assertEquals(0, spool.adopt(deadDir));
+        } finally {
+            if (Files.exists(deadDir)) {
+                try (Stream<Path> files = Files.walk(deadDir)) {
+                    files.sorted(Comparator.reverseOrder()).forEach(file -> file.toFile().delete());
+                }
+            }
+        }
+    }
+
+    private SpoolingDbService<Entry> open() throws IOException {
+        return new SpoolingDbService<>(spoolDir.toString(), createDbService(), new EntryCodec(), 1024 * 1024, 50, 10);
+    }
+
+    private void waitDrained() throws InterruptedException {
+        for (int i = 0; i < 500 && spool.getPendingCount() > 0; i++) {
+            Thread.sleep(10);
+        }
+        Assert.assertEquals(0, spool.getPendingCount());
+    }
+
+    private DbService<Entry> createDbService() {
+        return new DbService<Entry>() {
+            @Override
+            public Entry insert(Entry entity) {
+                throw new UnsupportedOperationException();
+            }
+
+            @Override
+            public void insertAll(Collection<Entry> entities) {
+                checkAvailable();
+                for (Entry entity : entities) {
+                    if (entity.getId() == BAD_ID || db.containsKey(entity.getId())) {
+                        throw new IllegalStateException("Constraint violation");
+                    }
+                }
+                entities.forEach(entity -> db.put(entity.getId(), entity));
+            }
+
+            @Override
+            public boolean exist(long id) {
+                checkAvailable();
+                return db.containsKey(id);
+            }
+
+            @Override
+            public Set<Long> existing(Collection<Long> ids) {
+                checkAvailable();
+                return ids.stream().filter(db::containsKey).collect(Collectors.toCollection(HashSet::new));
+            }
+
+            @Override
+            public long getNextId() {
+                return 0;
+            }
+        };
+    }
+
+    private void checkAvailable() {
+        if (!available) {
+            throw new IllegalStateException("Db is not available");
+        }
+    }
+}